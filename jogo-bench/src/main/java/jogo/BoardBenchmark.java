@@ -0,0 +1,75 @@
+package jogo;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Win detection and the full-board check, the two questions GameRoom asks
+ * the board after every move. playGame replays whole pre-shuffled games the
+ * way applyMove does (place, then isFull unless the move won), so its score
+ * (per game, reset included) covers every board state from empty to
+ * finished.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardBenchmark {
+    private static final int GAMES = 64;
+    
+    // size:winLength
+    @Param({"3:3", "7:4", "15:5"})
+    public String spec;
+    
+    private Board board;
+    // Cell order of each game, row * size + col
+    private int[][] games;
+    private int next;
+    
+    @Setup
+    public void setUp() {
+        String[] parts = spec.split(":");
+        board = new BoardSpec(Integer.parseInt(parts[0]), Integer.parseInt(parts[1])).newBoard();
+        int cells = board.size() * board.size();
+        Random random = new Random(42);
+        games = new int[GAMES][cells];
+        for (int[] game : games) {
+            for (int i = 0; i < cells; i++) {
+                int j = random.nextInt(i + 1);
+                game[i] = game[j];
+                game[j] = i;
+            }
+        }
+        // A board half full, left in place for the isFull benchmark
+        for (int i = 0; i < cells / 2; i++) {
+            int cell = games[0][i];
+            board.place(cell / board.size(), cell % board.size(), i % 2 == 0 ? 'X' : 'O');
+        }
+    }
+    
+    @Benchmark
+    public boolean isFull() {
+        return board.isFull();
+    }
+    
+    @Benchmark
+    public int playGame() {
+        int[] game = games[next];
+        next = (next + 1) % GAMES;
+        int n = board.size();
+        board.reset();
+        char player = 'X';
+        for (int i = 0; i < game.length; i++) {
+            int row = game[i] / n;
+            int col = game[i] % n;
+            if (board.place(row, col, player) || board.isFull()) {
+                return i;
+            }
+            player = player == 'X' ? 'O' : 'X';
+        }
+        return game.length;
+    }
+}
\ No newline at end of file
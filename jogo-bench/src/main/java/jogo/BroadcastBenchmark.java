@@ -0,0 +1,81 @@
+package jogo;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Room fan-out: one chat message broadcast to a room with two players and
+ * clients - 2 spectators. The clients are ordinary blocking-transport
+ * handlers whose writer threads drain into a socket that discards
+ * everything, so the score is what the room thread pays per broadcast
+ * (encoding once, copying into every outbound queue and waking each writer)
+ * while the writers compete for the CPU as they would on a live server.
+ *
+ * Queues that fill up drop the message instead of coalescing, so a writer
+ * falling behind does not add snapshot resends to the measured path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BroadcastBenchmark {
+    @Param({"2", "16", "128", "1024"})
+    public int clients;
+    
+    private Servidor server;
+    private ScheduledExecutorService scheduler;
+    private GameRoom room;
+    private List<ClientHandler> handlers;
+    
+    @Setup
+    public void setUp() throws IOException {
+        server = new Servidor(0, 1, BoardSpec.CLASSIC, 64 * 1024, OverflowPolicy.DROP, 0, 0, 0);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        room = new GameRoom(1, BoardSpec.CLASSIC, scheduler, new TimerWheel(100, 16), 0, server.getMetrics(), null);
+        handlers = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            ClientHandler handler = new ClientHandler(new NullSocket(), server, i + 1);
+            Thread writer = new Thread(handler::runWriter, "writer-" + (i + 1));
+            writer.setDaemon(true);
+            writer.start();
+            handlers.add(handler);
+            if (i < 2) {
+                room.addPlayer(handler);
+            } else {
+                room.addSpectator(handler);
+            }
+        }
+    }
+    
+    @TearDown
+    public void tearDown() {
+        for (ClientHandler handler : handlers) {
+            handler.markDisconnected();
+        }
+        scheduler.shutdownNow();
+        server.stopServer();
+    }
+    
+    @Benchmark
+    public void broadcastChat() {
+        room.broadcastText(MessageType.CHAT, "Jogador 1: Boa sorte a todos!");
+    }
+    
+    // Connected socket stand-in: nothing to read, and writes go nowhere
+    private static final class NullSocket extends Socket {
+        @Override
+        public InputStream getInputStream() {
+            return InputStream.nullInputStream();
+        }
+        
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,152 @@
+package jogo;
+
+import java.nio.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+/**
+ * Both wire protocols on the server's hot paths: decoding the commands a
+ * client sends most (JOGADA and CHAT) and encoding the ESTADO snapshot that
+ * sendBoardState broadcasts, on its own and through the room's SharedFrame,
+ * which encodes it once for each protocol a receiver asks for.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtocolBenchmark {
+    @Param({"texto", "binario"})
+    public String protocol;
+    
+    private WireProtocol wire;
+    private ByteBuffer move;
+    private ByteBuffer chat;
+    private Handler handler;
+    
+    // Only the snapshot benchmarks take a board, so only they run once per size
+    @State(Scope.Thread)
+    public static class Snapshot {
+        @Param({"3", "15"})
+        public int size;
+        
+        private Board board;
+        private ByteBuffer out;
+        private SharedFrame frame;
+        
+        @Setup
+        public void setUp() {
+            board = new BoardSpec(size, Math.min(size, 5)).newBoard();
+            // Mid-game position: roughly a third of the cells taken
+            for (int i = 0; i < size * size; i += 3) {
+                board.place(i / size, i % size, i % 2 == 0 ? 'X' : 'O');
+            }
+            out = ByteBuffer.allocate(WireProtocol.snapshotCapacity(board));
+            frame = new SharedFrame(WireProtocol.snapshotCapacity(board));
+        }
+    }
+    
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        wire = protocol.equals("binario") ? BinaryProtocol.INSTANCE : TextProtocol.INSTANCE;
+        move = ByteBuffer.allocate(64);
+        wire.writeJogada(move, 1, 2);
+        move.flip();
+        chat = ByteBuffer.allocate(256);
+        wire.writeChat(chat, "Boa jogada! Agora quero ver você sair dessa.");
+        chat.flip();
+        handler = new Handler(blackhole);
+    }
+    
+    @Benchmark
+    public boolean decodeMove() {
+        move.rewind();
+        return wire.decodeCommand(move, handler);
+    }
+    
+    @Benchmark
+    public boolean decodeChat() {
+        chat.rewind();
+        return wire.decodeCommand(chat, handler);
+    }
+    
+    @Benchmark
+    public ByteBuffer encodeSnapshot(Snapshot snapshot) {
+        snapshot.out.clear();
+        wire.writeSnapshot(snapshot.out, 7, snapshot.board);
+        return snapshot.out;
+    }
+    
+    @Benchmark
+    public ByteBuffer encodeSharedSnapshot(Snapshot snapshot) {
+        snapshot.frame.encodeSnapshot(7, snapshot.board);
+        return snapshot.frame.encodedFor(wire);
+    }
+    
+    // Hands every decoded field to the blackhole so the decoding cannot be optimised away
+    private static final class Handler implements CommandHandler {
+        private final Blackhole blackhole;
+        
+        Handler(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+        
+        @Override
+        public void onMove(int row, int col) {
+            blackhole.consume(row);
+            blackhole.consume(col);
+        }
+        
+        @Override
+        public void onChat(String text) {
+            blackhole.consume(text);
+        }
+        
+        @Override
+        public void onBoardRequest(int size, int winLength) {
+            blackhole.consume(size);
+            blackhole.consume(winLength);
+        }
+        
+        @Override
+        public void onResync() {
+        }
+        
+        @Override
+        public void onWatch(int roomId) {
+            blackhole.consume(roomId);
+        }
+        
+        @Override
+        public void onPing(int token) {
+            blackhole.consume(token);
+        }
+        
+        @Override
+        public void onPong(int token) {
+            blackhole.consume(token);
+        }
+        
+        @Override
+        public void onResume(String token, int lastSeq) {
+            blackhole.consume(token);
+            blackhole.consume(lastSeq);
+        }
+        
+        @Override
+        public void onBinaryRequest() {
+        }
+        
+        @Override
+        public void onInvalid(String reason) {
+            throw new IllegalStateException(reason);
+        }
+        
+        @Override
+        public void onUnknown(String command) {
+            throw new IllegalStateException(command);
+        }
+    }
+}
\ No newline at end of file
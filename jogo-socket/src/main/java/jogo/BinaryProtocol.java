@@ -0,0 +1,302 @@
+package jogo;
+
+import java.nio.*;
+import java.nio.charset.*;
+
+/**
+ * Compact framing negotiated with BINARIO. Every frame is a big-endian
+ * unsigned 16-bit length (counting the opcode and payload), a one-byte
+ * opcode and the payload. Numbers are fixed width, so moves and turns are
+ * decoded with absolute reads straight off the buffer and nothing is
+ * allocated except for chat and other free-text payloads.
+ *
+ * Payloads, server to client:
+ *   ID_JOGADOR, TURNO   int32 player id
+ *   PING, PONG          int32 token
+ *   SIMBOLO             uint8 symbol
+ *   MOVIMENTO           int32 player, uint8 row, uint8 col, uint8 symbol, int32 seq
+ *   ESTADO              int32 seq, uint8 size, size*size uint8 cells ('X', 'O', '-')
+ *   everything else     UTF-8 text
+ *
+ * Client to server:
+ *   JOGADA              uint8 row, uint8 col
+ *   CHAT                UTF-8 text
+ *   TABULEIRO           uint8 size, uint8 win length
+ *   RESYNC              nothing
+ *   ASSISTIR            int32 room id, 0 for any match in progress
+ *   PING, PONG          int32 token
+ *   RETOMAR             int32 last seq (-1 for none), UTF-8 session token
+ */
+final class BinaryProtocol implements WireProtocol {
+    static final BinaryProtocol INSTANCE = new BinaryProtocol();
+    
+    static final byte OP_JOGADA = 0x21;
+    static final byte OP_CHAT = 0x22;
+    static final byte OP_TABULEIRO = 0x23;
+    static final byte OP_RESYNC = 0x24;
+    static final byte OP_ASSISTIR = 0x25;
+    static final byte OP_PING = 0x26;
+    static final byte OP_PONG = 0x27;
+    static final byte OP_RETOMAR = 0x28;
+    
+    private static final int HEADER_SIZE = 2;
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+    
+    private BinaryProtocol() {
+    }
+    
+    private static void putHeader(ByteBuffer out, int payloadLength, byte opcode) {
+        out.putShort((short) (payloadLength + 1));
+        out.put(opcode);
+    }
+    
+    /**
+     * Returns the frame length (opcode plus payload) if a whole frame is
+     * buffered, or -1 if it has not fully arrived.
+     */
+    private static int completeFrame(ByteBuffer in) {
+        if (in.remaining() < HEADER_SIZE) return -1;
+        int length = in.getShort(in.position()) & 0xFFFF;
+        if (in.remaining() < HEADER_SIZE + length) return -1;
+        return length;
+    }
+    
+    private static String text(ByteBuffer in, int start, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = in.get(start + i);
+        }
+        return new String(bytes, CHARSET);
+    }
+    
+    @Override
+    public void writeInt(ByteBuffer out, MessageType type, int value) {
+        putHeader(out, 4, type.opcode);
+        out.putInt(value);
+    }
+    
+    @Override
+    public void writeSymbol(ByteBuffer out, char symbol) {
+        putHeader(out, 1, MessageType.SIMBOLO.opcode);
+        out.put((byte) symbol);
+    }
+    
+    @Override
+    public void writeMove(ByteBuffer out, int playerId, int row, int col, char symbol, int seq) {
+        putHeader(out, 11, MessageType.MOVIMENTO.opcode);
+        out.putInt(playerId);
+        out.put((byte) row);
+        out.put((byte) col);
+        out.put((byte) symbol);
+        out.putInt(seq);
+    }
+    
+    @Override
+    public void writeSnapshot(ByteBuffer out, int seq, Board board) {
+        int size = board.size();
+        putHeader(out, 5 + size * size, MessageType.ESTADO.opcode);
+        out.putInt(seq);
+        out.put((byte) size);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                out.put((byte) board.cellAt(i, j));
+            }
+        }
+    }
+    
+    @Override
+    public void writeText(ByteBuffer out, MessageType type, String text) {
+        byte[] bytes = text.getBytes(CHARSET);
+        putHeader(out, bytes.length, type.opcode);
+        out.put(bytes);
+    }
+    
+    @Override
+    public boolean decodeEvent(ByteBuffer in, EventHandler handler) {
+        int length = completeFrame(in);
+        if (length < 0) return false;
+        
+        int start = in.position() + HEADER_SIZE;
+        int payload = start + 1;
+        int payloadLength = length - 1;
+        MessageType type = length > 0 ? MessageType.fromOpcode(in.get(start)) : null;
+        
+        if (type == null) {
+            handler.onUnknown("opcode desconhecido");
+        } else if (!fits(type, in, payload, payloadLength)) {
+            // Read past it, never into the next frame
+            handler.onUnknown("quadro " + type + " curto demais");
+        } else {
+            switch (type) {
+                case ID_JOGADOR:
+                    handler.onPlayerId(in.getInt(payload));
+                    break;
+                case TURNO:
+                    handler.onTurn(in.getInt(payload));
+                    break;
+                case PING:
+                    handler.onPing(in.getInt(payload));
+                    break;
+                case PONG:
+                    handler.onPong(in.getInt(payload));
+                    break;
+                case SIMBOLO:
+                    handler.onSymbol((char) in.get(payload));
+                    break;
+                case MOVIMENTO:
+                    handler.onMove(in.getInt(payload), in.get(payload + 4) & 0xFF, in.get(payload + 5) & 0xFF,
+                            (char) in.get(payload + 6), in.getInt(payload + 7));
+                    break;
+                case ESTADO:
+                    int size = in.get(payload + 4) & 0xFF;
+                    char[][] cells = new char[size][size];
+                    for (int i = 0; i < size; i++) {
+                        for (int j = 0; j < size; j++) {
+                            cells[i][j] = (char) in.get(payload + 5 + i * size + j);
+                        }
+                    }
+                    handler.onSnapshot(in.getInt(payload), cells);
+                    break;
+                default:
+                    handler.onText(type, text(in, payload, payloadLength));
+                    break;
+            }
+        }
+        in.position(start + length);
+        return true;
+    }
+    
+    /**
+     * Whether a frame's payload is long enough for the fields its type
+     * is read with; a peer may send anything.
+     */
+    private static boolean fits(MessageType type, ByteBuffer in, int payload, int payloadLength) {
+        switch (type) {
+            case ID_JOGADOR:
+            case TURNO:
+            case PING:
+            case PONG:
+                return payloadLength >= 4;
+            case SIMBOLO:
+                return payloadLength >= 1;
+            case MOVIMENTO:
+                return payloadLength >= 11;
+            case ESTADO:
+                if (payloadLength < 5) return false;
+                int size = in.get(payload + 4) & 0xFF;
+                return size > 0 && payloadLength >= 5 + size * size;
+            default:
+                return true;
+        }
+    }
+    
+    @Override
+    public void writeJogada(ByteBuffer out, int row, int col) {
+        putHeader(out, 2, OP_JOGADA);
+        out.put((byte) row);
+        out.put((byte) col);
+    }
+    
+    @Override
+    public void writeChat(ByteBuffer out, String text) {
+        byte[] bytes = text.getBytes(CHARSET);
+        putHeader(out, bytes.length, OP_CHAT);
+        out.put(bytes);
+    }
+    
+    @Override
+    public void writeBoardRequest(ByteBuffer out, int size, int winLength) {
+        putHeader(out, 2, OP_TABULEIRO);
+        out.put((byte) size);
+        out.put((byte) winLength);
+    }
+    
+    @Override
+    public void writeResync(ByteBuffer out) {
+        putHeader(out, 0, OP_RESYNC);
+    }
+    
+    @Override
+    public void writeWatch(ByteBuffer out, int roomId) {
+        putHeader(out, 4, OP_ASSISTIR);
+        out.putInt(roomId);
+    }
+    
+    @Override
+    public void writePing(ByteBuffer out, int token) {
+        putHeader(out, 4, OP_PING);
+        out.putInt(token);
+    }
+    
+    @Override
+    public void writePong(ByteBuffer out, int token) {
+        putHeader(out, 4, OP_PONG);
+        out.putInt(token);
+    }
+    
+    @Override
+    public void writeResume(ByteBuffer out, String token, int lastSeq) {
+        byte[] bytes = token.getBytes(CHARSET);
+        putHeader(out, 4 + bytes.length, OP_RETOMAR);
+        out.putInt(lastSeq);
+        out.put(bytes);
+    }
+    
+    @Override
+    public boolean decodeCommand(ByteBuffer in, CommandHandler handler) {
+        int length = completeFrame(in);
+        if (length < 0) return false;
+        
+        int start = in.position() + HEADER_SIZE;
+        int payload = start + 1;
+        byte opcode = length > 0 ? in.get(start) : 0;
+        
+        switch (opcode) {
+            case OP_JOGADA:
+                if (length >= 3) {
+                    handler.onMove(in.get(payload) & 0xFF, in.get(payload + 1) & 0xFF);
+                } else {
+                    handler.onInvalid("Formato de jogada inválido!");
+                }
+                break;
+            case OP_TABULEIRO:
+                if (length >= 3) {
+                    handler.onBoardRequest(in.get(payload) & 0xFF, in.get(payload + 1) & 0xFF);
+                } else {
+                    handler.onInvalid("Formato de tabuleiro inválido!");
+                }
+                break;
+            case OP_RESYNC:
+                handler.onResync();
+                break;
+            case OP_ASSISTIR:
+                if (length >= 5) {
+                    handler.onWatch(in.getInt(payload));
+                } else {
+                    handler.onInvalid("Número de sala inválido!");
+                }
+                break;
+            case OP_PING:
+                handler.onPing(length >= 5 ? in.getInt(payload) : 0);
+                break;
+            case OP_PONG:
+                handler.onPong(length >= 5 ? in.getInt(payload) : 0);
+                break;
+            case OP_CHAT:
+                handler.onChat(text(in, payload, length - 1));
+                break;
+            case OP_RETOMAR:
+                if (length >= 5) {
+                    handler.onResume(text(in, payload + 4, length - 5), in.getInt(payload));
+                } else {
+                    handler.onInvalid("Informe o token da sessão!");
+                }
+                break;
+            default:
+                handler.onUnknown("0x" + Integer.toHexString(opcode & 0xFF));
+                break;
+        }
+        in.position(start + length);
+        return true;
+    }
+}
\ No newline at end of file
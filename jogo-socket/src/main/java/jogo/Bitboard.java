@@ -0,0 +1,84 @@
+package jogo;
+
+/**
+ * Tic-tac-toe state packed into a single int. Bits 0-8 hold the cells taken
+ * by X, bits 9-17 the cells taken by O and bits 18-21 the number of moves
+ * played. Cell i is row i / 3, column i % 3.
+ */
+final class Bitboard {
+    public static final int SIZE = 3;
+    public static final int CELLS = SIZE * SIZE;
+    public static final int EMPTY = 0;
+    
+    private static final int CELL_MASK = (1 << CELLS) - 1;
+    private static final int O_SHIFT = CELLS;
+    private static final int MOVES_SHIFT = 2 * CELLS;
+    private static final int MOVES_UNIT = 1 << MOVES_SHIFT;
+    
+    private static final int[] LINES = {
+        0b000000111, 0b000111000, 0b111000000, // rows
+        0b001001001, 0b010010010, 0b100100100, // columns
+        0b100010001, 0b001010100               // diagonals
+    };
+    
+    // WINNING[mask] tells whether a player holding exactly these cells has three in a row
+    private static final boolean[] WINNING = new boolean[1 << CELLS];
+    
+    static {
+        for (int mask = 0; mask < WINNING.length; mask++) {
+            for (int line : LINES) {
+                if ((mask & line) == line) {
+                    WINNING[mask] = true;
+                    break;
+                }
+            }
+        }
+    }
+    
+    private Bitboard() {
+    }
+    
+    public static int cellIndex(int row, int col) {
+        return row * SIZE + col;
+    }
+    
+    public static boolean inBounds(int row, int col) {
+        return row >= 0 && row < SIZE && col >= 0 && col < SIZE;
+    }
+    
+    public static int cellsOf(int state, char player) {
+        return player == 'X' ? state & CELL_MASK : (state >>> O_SHIFT) & CELL_MASK;
+    }
+    
+    public static boolean isFree(int state, int cell) {
+        int taken = (state | (state >>> O_SHIFT)) & CELL_MASK;
+        return (taken & (1 << cell)) == 0;
+    }
+    
+    /**
+     * Returns the state after the player takes the cell. The caller must have
+     * checked that the cell is free.
+     */
+    public static int place(int state, int cell, char player) {
+        int bit = player == 'X' ? 1 << cell : 1 << (cell + O_SHIFT);
+        return (state | bit) + MOVES_UNIT;
+    }
+    
+    public static boolean isWin(int state, char player) {
+        return WINNING[cellsOf(state, player)];
+    }
+    
+    public static int moves(int state) {
+        return state >>> MOVES_SHIFT;
+    }
+    
+    public static boolean isFull(int state) {
+        return moves(state) == CELLS;
+    }
+    
+    public static char cellAt(int state, int cell) {
+        if ((state & (1 << cell)) != 0) return 'X';
+        if ((state & (1 << (cell + O_SHIFT))) != 0) return 'O';
+        return '-';
+    }
+}
\ No newline at end of file
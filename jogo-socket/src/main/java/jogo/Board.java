@@ -0,0 +1,30 @@
+package jogo;
+
+/**
+ * Game rules for one room. Implementations decide how the cells are stored;
+ * the room only asks whether a move is legal and what it caused.
+ */
+interface Board {
+    int size();
+    
+    int winLength();
+    
+    /**
+     * Whether the cell is inside the board and still empty.
+     */
+    boolean canPlace(int row, int col);
+    
+    /**
+     * Puts the player's symbol on a cell that passed canPlace and returns
+     * true if that move completed a winning line.
+     */
+    boolean place(int row, int col, char player);
+    
+    boolean isFull();
+    
+    int moves();
+    
+    char cellAt(int row, int col);
+    
+    void reset();
+}
\ No newline at end of file
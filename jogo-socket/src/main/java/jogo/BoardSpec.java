@@ -0,0 +1,63 @@
+package jogo;
+
+/**
+ * Board size and how many symbols in a row win. Players are only matched
+ * with others asking for the same spec.
+ */
+final class BoardSpec {
+    public static final int MIN_SIZE = 3;
+    public static final int MAX_SIZE = 25;
+    public static final BoardSpec CLASSIC = new BoardSpec(3, 3);
+    
+    private final int size;
+    private final int winLength;
+    
+    public BoardSpec(int size, int winLength) {
+        if (size < MIN_SIZE || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Tamanho do tabuleiro deve estar entre " + MIN_SIZE + " e " + MAX_SIZE);
+        }
+        if (winLength < MIN_SIZE || winLength > size) {
+            throw new IllegalArgumentException("Sequência para vencer deve estar entre " + MIN_SIZE + " e " + size);
+        }
+        this.size = size;
+        this.winLength = winLength;
+    }
+    
+    public int getSize() {
+        return size;
+    }
+    
+    public int getWinLength() {
+        return winLength;
+    }
+    
+    public boolean isClassic() {
+        return size == Bitboard.SIZE && winLength == Bitboard.SIZE;
+    }
+    
+    /**
+     * The classic game keeps using the packed bitboard; anything else gets a
+     * grid with incremental win detection.
+     */
+    public Board newBoard() {
+        return isClassic() ? new ClassicBoard() : new GridBoard(size, winLength);
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof BoardSpec)) return false;
+        BoardSpec spec = (BoardSpec) other;
+        return size == spec.size && winLength == spec.winLength;
+    }
+    
+    @Override
+    public int hashCode() {
+        return size * 31 + winLength;
+    }
+    
+    @Override
+    public String toString() {
+        return size + "x" + size + ", " + winLength + " em linha";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,174 @@
+package jogo;
+
+import java.nio.*;
+import java.util.concurrent.*;
+
+/**
+ * A server-side opponent for a player nobody came to play with. It takes
+ * the room's second seat like any ClientHandler, but has no connection, and
+ * of everything the room sends it only TURNO matters. When the turn is its
+ * own, it copies the board and asks the shared Solver for a move on the
+ * server's bot pool: never on the thread that delivered the TURNO, which
+ * holds the room lock and may be an I/O thread. The move then goes through
+ * processMove like any client's. If the pool's queue is full the bot tries
+ * again shortly from the scheduler.
+ *
+ * Bots are numbered from FIRST_ID up, far from any player's ID, so a room
+ * recovered after a restart can tell which of its seats was a bot's.
+ */
+final class BotPlayer extends ClientHandler {
+    static final int FIRST_ID = 1 << 30;
+    private static final long RETRY_MILLIS = 100;
+    
+    private final Solver solver;
+    private final Executor pool;
+    private final ScheduledExecutorService scheduler;
+    private final Metrics metrics;
+    private final EventHandler events = new TurnListener();
+    
+    public BotPlayer(Servidor server, int playerId, Solver solver, Executor pool, ScheduledExecutorService scheduler) {
+        super(server, playerId);
+        this.solver = solver;
+        this.pool = pool;
+        this.scheduler = scheduler;
+        this.metrics = server.getMetrics();
+    }
+    
+    static boolean isBotId(int playerId) {
+        return playerId >= FIRST_ID;
+    }
+    
+    @Override
+    boolean isBot() {
+        return true;
+    }
+    
+    /**
+     * Reads TURNO off the room's frame, from the binary encoding since it
+     * decodes without allocating; every other event is dropped.
+     */
+    @Override
+    public boolean sendFrame(SharedFrame frame) {
+        if (frame.type() == MessageType.TURNO) {
+            ByteBuffer encoded = frame.encodedFor(BinaryProtocol.INSTANCE);
+            int start = encoded.position();
+            BinaryProtocol.INSTANCE.decodeEvent(encoded, events);
+            encoded.position(start);
+        }
+        return true;
+    }
+    
+    private void think() {
+        try {
+            pool.execute(this::play);
+        } catch (RejectedExecutionException e) {
+            try {
+                scheduler.schedule(this::think, RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException stopped) {
+                // The server is shutting down
+            }
+        }
+    }
+    
+    // Runs on the bot pool
+    private void play() {
+        GameRoom room = getRoom();
+        if (room == null) return;
+        int size = room.getSpec().getSize();
+        byte[] cells = new byte[size * size];
+        // The match may have ended or paused since the TURNO
+        if (!room.copyBoardForTurn(getSymbol(), cells)) return;
+        
+        long start = System.nanoTime();
+        int cell = solver.bestMove(room.getSpec(), cells, getSymbol());
+        metrics.botMoveChosen(System.nanoTime() - start);
+        if (cell < 0) return;
+        WriteBatch batch = WriteBatch.begin();
+        try {
+            room.processMove(getPlayerId(), cell / size, cell % size);
+        } finally {
+            batch.end();
+        }
+    }
+    
+    // Nothing else the room sends a player means anything to a bot
+    
+    @Override
+    public boolean sendPlayerId(int id) {
+        return true;
+    }
+    
+    @Override
+    public boolean sendTurn(int currentPlayerId) {
+        return true;
+    }
+    
+    @Override
+    public boolean sendSymbol(char symbol) {
+        return true;
+    }
+    
+    @Override
+    public boolean sendSnapshot(int seq, Board board) {
+        return true;
+    }
+    
+    @Override
+    public boolean sendText(MessageType type, String text) {
+        return true;
+    }
+    
+    @Override
+    int getQueuedBytes() {
+        return 0;
+    }
+    
+    @Override
+    public void disconnect() {
+    }
+    
+    @Override
+    void abort() {
+    }
+    
+    private final class TurnListener implements EventHandler {
+        @Override
+        public void onTurn(int playerId) {
+            if (playerId == getPlayerId()) {
+                think();
+            }
+        }
+        
+        @Override
+        public void onPlayerId(int playerId) {
+        }
+        
+        @Override
+        public void onSymbol(char symbol) {
+        }
+        
+        @Override
+        public void onSnapshot(int seq, char[][] cells) {
+        }
+        
+        @Override
+        public void onMove(int playerId, int row, int col, char symbol, int seq) {
+        }
+        
+        @Override
+        public void onPing(int token) {
+        }
+        
+        @Override
+        public void onPong(int token) {
+        }
+        
+        @Override
+        public void onText(MessageType type, String text) {
+        }
+        
+        @Override
+        public void onUnknown(String message) {
+        }
+    }
+}
\ No newline at end of file
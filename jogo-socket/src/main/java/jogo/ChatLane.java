@@ -0,0 +1,125 @@
+package jogo;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Fans chat out on a thread of its own, so that a burst of chat never holds
+ * up the threads that read and apply moves. A CHAT only queues its line
+ * here; the lane takes the lines in batches, each inside one WriteBatch, so
+ * a receiver that gets several lines of a burst gets them in one write.
+ *
+ * A room line is added to the room's history and the receivers are copied
+ * under the room lock, but the line is encoded into the lane's own
+ * SharedFrame and sent after the lock is released: however many spectators
+ * a room has, a move waits on its chat no longer than that copy.
+ *
+ * The queue is bounded; past MAX_PENDING lines new ones are dropped.
+ */
+final class ChatLane implements Runnable {
+    // Lines queued and not yet sent; past this new ones are dropped
+    private static final int MAX_PENDING = 64 * 1024;
+    // Lines sent per WriteBatch before the lane lets go of its thread
+    private static final int MAX_BATCH = 256;
+    private static final int FRAME_BUFFER_SIZE = 256;
+    
+    private final Servidor server;
+    private final Metrics metrics;
+    private final ExecutorService executor;
+    private final ConcurrentLinkedQueue<Line> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    // Set while a run() is queued or running; whoever sets it submits one
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    // Only touched by the lane's thread
+    private final SharedFrame frame = new SharedFrame(FRAME_BUFFER_SIZE);
+    private final ArrayList<ClientHandler> receivers = new ArrayList<>();
+    
+    ChatLane(Servidor server, Metrics metrics) {
+        this.server = server;
+        this.metrics = metrics;
+        executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "chat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Queues a line for the players and spectators of a room, or for the
+     * lobby (see Servidor.lobbyReceivers) when room is null. Returns false
+     * if it was dropped because the lane is full or stopped.
+     */
+    boolean post(GameRoom room, String text) {
+        if (pendingCount.incrementAndGet() > MAX_PENDING) {
+            pendingCount.decrementAndGet();
+            metrics.chatDropped();
+            return false;
+        }
+        pending.add(new Line(room, text));
+        schedule();
+        return true;
+    }
+    
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) return;
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            // Stopped; whatever is left is never sent
+        }
+    }
+    
+    @Override
+    public void run() {
+        WriteBatch batch = WriteBatch.begin();
+        try {
+            for (int i = 0; i < MAX_BATCH; i++) {
+                Line line = pending.poll();
+                if (line == null) break;
+                pendingCount.decrementAndGet();
+                deliver(line);
+            }
+        } finally {
+            batch.end();
+            scheduled.set(false);
+        }
+        // More than one batch, or a line queued after the last poll but before the flag was cleared
+        if (!pending.isEmpty()) {
+            schedule();
+        }
+    }
+    
+    private void deliver(Line line) {
+        if (line.room == null) {
+            server.lobbyReceivers(receivers);
+        } else if (!line.room.recordChat(line.text, receivers)) {
+            // Closed meanwhile
+            return;
+        }
+        long start = System.nanoTime();
+        frame.encodeText(MessageType.CHAT, line.text);
+        for (int i = 0; i < receivers.size(); i++) {
+            receivers.get(i).sendFrame(frame);
+        }
+        metrics.fanOut(System.nanoTime() - start);
+        metrics.messagesSent(MessageType.CHAT, receivers.size());
+        // Not kept around once they disconnect
+        receivers.clear();
+    }
+    
+    void stop() {
+        executor.shutdownNow();
+    }
+    
+    private static final class Line {
+        // null for the lobby
+        final GameRoom room;
+        final String text;
+        
+        Line(GameRoom room, String text) {
+            this.room = room;
+            this.text = text;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,53 @@
+package jogo;
+
+/**
+ * The 3x3 game on top of Bitboard: the whole state is still one int.
+ */
+final class ClassicBoard implements Board {
+    private int state;
+    
+    public ClassicBoard() {
+        state = Bitboard.EMPTY;
+    }
+    
+    @Override
+    public int size() {
+        return Bitboard.SIZE;
+    }
+    
+    @Override
+    public int winLength() {
+        return Bitboard.SIZE;
+    }
+    
+    @Override
+    public boolean canPlace(int row, int col) {
+        return Bitboard.inBounds(row, col) && Bitboard.isFree(state, Bitboard.cellIndex(row, col));
+    }
+    
+    @Override
+    public boolean place(int row, int col, char player) {
+        state = Bitboard.place(state, Bitboard.cellIndex(row, col), player);
+        return Bitboard.isWin(state, player);
+    }
+    
+    @Override
+    public boolean isFull() {
+        return Bitboard.isFull(state);
+    }
+    
+    @Override
+    public int moves() {
+        return Bitboard.moves(state);
+    }
+    
+    @Override
+    public char cellAt(int row, int col) {
+        return Bitboard.cellAt(state, Bitboard.cellIndex(row, col));
+    }
+    
+    @Override
+    public void reset() {
+        state = Bitboard.EMPTY;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,746 @@
+package jogo;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * One connected player. Inbound bytes, from either transport, are decoded by
+ * the connection's current WireProtocol into the CommandHandler callbacks;
+ * outbound messages are encoded with the same protocol.
+ *
+ * Sending never touches the socket: a message is encoded and copied into a
+ * bounded outbound queue, which the NIO event loop or, on the blocking
+ * transports, this client's own writer thread drains. A room can therefore
+ * update its state and notify everyone without waiting on a slow reader.
+ *
+ * The server's TimerWheel checks every connection for silence: one that has
+ * sent nothing for a while gets a PING, and one that stays quiet past the
+ * idle timeout is dropped, which also frees a blocked reader thread. Only a
+ * client that has shown it speaks the heartbeat (a PONG or a PING of its
+ * own) is ever dropped; older clients never answer and are just pinged.
+ *
+ * CHAT goes through a token bucket per connection: a player may send a
+ * burst of CHAT_BURST lines and then one per the server's chat interval.
+ * Lines over that are dropped, so they never reach the ChatLane or anyone's
+ * socket, and a client that keeps sending them is dropped as well.
+ */
+class ClientHandler implements Runnable, CommandHandler, TimerWheel.Timed {
+    private static final int READ_BUFFER_SIZE = 512;
+    // Big enough for every fixed-size message and most text; larger ones get a buffer of their own
+    private static final int ENCODE_BUFFER_SIZE = 256;
+    // How long a kicked client gets to take its last message before the socket is just closed
+    private static final long KICK_GRACE_NANOS = TimeUnit.SECONDS.toNanos(2);
+    // Chat lines a quiet player may send in a row before the rate applies
+    private static final int CHAT_BURST = 5;
+    // Chat lines refused in a row before the client is taken for a flood and dropped
+    private static final int CHAT_REFUSED_LIMIT = 50;
+    
+    private Socket socket;
+    private InputStream input;
+    private OutputStream output;
+    private NioServer.Connection connection;
+    private Servidor server;
+    // Replaced by the old ID when the player takes back its seat with RETOMAR
+    private volatile int playerId;
+    private char symbol;
+    private volatile GameRoom room;
+    // Room followed as a spectator; never set together with room
+    private volatile GameRoom watching;
+    private volatile boolean connected = true;
+    // Set by disconnect(): the writer closes the socket once the queue is empty
+    private volatile boolean closing;
+    private volatile BoardSpec boardSpec;
+    private final AtomicInteger queueGeneration = new AtomicInteger();
+    // Guards the protocol switch, the encode buffer and the outbound queue
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile WireProtocol protocol = TextProtocol.INSTANCE;
+    // Every outgoing message is encoded here, under writeLock, and copied into the queue before the lock is released
+    private final ByteBuffer encodeBuffer = ByteBuffer.allocate(ENCODE_BUFFER_SIZE);
+    // Blocking transports only; the NIO connection keeps its own
+    private OutboundQueue outbound;
+    private volatile Thread writerThread;
+    private final OverflowPolicy overflowPolicy;
+    private final Metrics metrics;
+    private final AtomicBoolean coalescing = new AtomicBoolean();
+    // Guarded by writeLock; set while some thread's WriteBatch owes this connection a flush
+    private boolean flushScheduled;
+    private final long pingIntervalNanos;
+    private final long idleTimeoutNanos;
+    // Time each chat line adds to the bucket; 0 for no limit
+    private final long chatIntervalNanos;
+    // System.nanoTime() of the last bytes received
+    private volatile long lastReceived = System.nanoTime();
+    // Set by the first PING or PONG from the client; until then silence is not held against it
+    private volatile boolean heartbeat;
+    // The chat bucket as the time at which it is empty again; only the reading thread touches these
+    private long chatBusyUntil = System.nanoTime();
+    private int chatRefused;
+    // The rest is only touched by the timer wheel's thread
+    private int pingToken;
+    private boolean kicked;
+    
+    public ClientHandler(Socket socket, Servidor server, int playerId) throws IOException {
+        this.socket = socket;
+        this.server = server;
+        this.playerId = playerId;
+        this.boardSpec = server.getDefaultSpec();
+        this.overflowPolicy = server.getOverflowPolicy();
+        this.metrics = server.getMetrics();
+        this.pingIntervalNanos = TimeUnit.MILLISECONDS.toNanos(server.getPingIntervalMillis());
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(server.getIdleTimeoutMillis());
+        this.chatIntervalNanos = server.getChatIntervalNanos();
+        this.outbound = new OutboundQueue(server.getOutboundLimit());
+        // Output is already coalesced per WriteBatch; Nagle would only add a round trip of delay
+        socket.setTcpNoDelay(true);
+        // Streams are opened up front so the room can talk to us before run() starts
+        this.input = socket.getInputStream();
+        this.output = socket.getOutputStream();
+    }
+    
+    /**
+     * Handler for a connection owned by the NIO transport. There is no thread
+     * to run; the event loop feeds bytes to processInput instead.
+     */
+    public ClientHandler(NioServer.Connection connection, Servidor server, int playerId) {
+        this.connection = connection;
+        this.server = server;
+        this.playerId = playerId;
+        this.boardSpec = server.getDefaultSpec();
+        this.overflowPolicy = server.getOverflowPolicy();
+        this.metrics = server.getMetrics();
+        this.pingIntervalNanos = TimeUnit.MILLISECONDS.toNanos(server.getPingIntervalMillis());
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(server.getIdleTimeoutMillis());
+        this.chatIntervalNanos = server.getChatIntervalNanos();
+    }
+    
+    /**
+     * Handler with no connection at all, for BotPlayer, which overrides
+     * every send.
+     */
+    ClientHandler(Servidor server, int playerId) {
+        this.server = server;
+        this.playerId = playerId;
+        this.boardSpec = server.getDefaultSpec();
+        this.overflowPolicy = server.getOverflowPolicy();
+        this.metrics = server.getMetrics();
+        this.pingIntervalNanos = 0;
+        this.idleTimeoutNanos = 0;
+        this.chatIntervalNanos = 0;
+    }
+    
+    public void setSymbol(char symbol) {
+        this.symbol = symbol;
+    }
+    
+    public char getSymbol() {
+        return symbol;
+    }
+    
+    public int getPlayerId() {
+        return playerId;
+    }
+    
+    /**
+     * Takes on the ID of the player whose seat this connection is taking
+     * back, and tells the client.
+     */
+    void resumeAs(int id) {
+        playerId = id;
+        sendPlayerId(id);
+    }
+    
+    public void setRoom(GameRoom room) {
+        this.room = room;
+        server.lobbyChanged(this);
+    }
+    
+    public GameRoom getRoom() {
+        return room;
+    }
+    
+    public void setWatching(GameRoom watching) {
+        this.watching = watching;
+        server.lobbyChanged(this);
+    }
+    
+    public GameRoom getWatching() {
+        return watching;
+    }
+    
+    // A BotPlayer, which is never queued, held or counted as a connection
+    boolean isBot() {
+        return false;
+    }
+    
+    public boolean isConnected() {
+        return connected;
+    }
+    
+    public BoardSpec getBoardSpec() {
+        return boardSpec;
+    }
+    
+    /**
+     * Every time the player is (re)queued the generation moves on, which
+     * turns any older ticket still sitting in the matchmaker stale.
+     */
+    int nextQueueGeneration() {
+        return queueGeneration.incrementAndGet();
+    }
+    
+    int getQueueGeneration() {
+        return queueGeneration.get();
+    }
+    
+    // Bytes waiting in the outbound queue, for the stats port
+    int getQueuedBytes() {
+        if (connection != null) {
+            return connection.queuedBytes();
+        }
+        writeLock.lock();
+        try {
+            return outbound.size();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    void markDisconnected() {
+        connected = false;
+        // Let the writer see it and exit
+        LockSupport.unpark(writerThread);
+    }
+    
+    /**
+     * Drops the connection from the server side once whatever is already
+     * queued has been sent. The normal disconnect path (removeClient) runs
+     * once the transport notices the socket is closed.
+     */
+    public void disconnect() {
+        if (connection != null) {
+            connection.closeAfterFlush();
+            return;
+        }
+        closing = true;
+        LockSupport.unpark(writerThread);
+    }
+    
+    // Drops the connection right away, discarding anything still queued
+    void abort() {
+        if (connection != null) {
+            connection.abort();
+            return;
+        }
+        closeSocket();
+    }
+    
+    private void closeSocket() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar conexão com o cliente: " + e.getMessage());
+        }
+    }
+    
+    @Override
+    public void run() {
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            while (true) {
+                int read = input.read(buffer.array(), buffer.position(), buffer.remaining());
+                if (read < 0) break;
+                metrics.bytesReceived(read);
+                buffer.position(buffer.position() + read);
+                
+                buffer.flip();
+                WriteBatch batch = WriteBatch.begin();
+                try {
+                    processInput(buffer);
+                } finally {
+                    batch.end();
+                }
+                buffer.compact();
+                
+                buffer = WireProtocol.ensureSpace(buffer);
+                if (buffer == null) {
+                    System.out.println("Jogador " + playerId + " enviou uma mensagem longa demais");
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Jogador " + playerId + " desconectado: " + e.getMessage());
+        } finally {
+            closeConnection();
+        }
+    }
+    
+    /**
+     * Writer for the blocking transports, run on its own thread next to
+     * run(): drains the outbound queue onto the socket, parking while there
+     * is nothing to send. It is the only thread that ever blocks writing to
+     * this client.
+     */
+    public void runWriter() {
+        writerThread = Thread.currentThread();
+        try {
+            while (true) {
+                ByteBuffer chunk;
+                int offset = 0;
+                int length = 0;
+                writeLock.lock();
+                try {
+                    chunk = outbound.peek();
+                    if (chunk != null) {
+                        offset = chunk.arrayOffset() + chunk.position();
+                        length = chunk.remaining();
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+                
+                if (chunk == null) {
+                    if (!connected) return;
+                    // Everything went out; finish what disconnect() asked for
+                    if (closing) break;
+                    LockSupport.park(this);
+                    continue;
+                }
+                
+                // Senders may append to the chunk meanwhile, but only past these bytes
+                output.write(chunk.array(), offset, length);
+                metrics.bytesSent(length);
+                
+                writeLock.lock();
+                try {
+                    chunk.position(chunk.position() + length);
+                    outbound.written(length);
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        } catch (IOException e) {
+            // The reader notices the closed socket and runs the disconnect path
+        }
+        closeSocket();
+    }
+    
+    /**
+     * Decodes every complete message in the buffer (which must be ready for
+     * reading) and leaves any partial one in place. The protocol is read
+     * again for each message, so bytes following a BINARIO request are
+     * already decoded as binary frames.
+     */
+    void processInput(ByteBuffer buffer) {
+        lastReceived = System.nanoTime();
+        while (connected && protocol.decodeCommand(buffer, this)) {
+            // Keep going until only a partial message is left
+        }
+    }
+    
+    @Override
+    public void onMove(int row, int col) {
+        metrics.commandReceived(Metrics.Command.JOGADA);
+        GameRoom room = this.room;
+        if (room != null) {
+            room.processMove(playerId, row, col);
+        } else if (watching != null) {
+            sendText(MessageType.RESULTADO, "Você está assistindo; espectadores não jogam.");
+        }
+    }
+    
+    @Override
+    public void onChat(String text) {
+        metrics.commandReceived(Metrics.Command.CHAT);
+        GameRoom room = this.room;
+        if (room == null && watching != null) {
+            sendText(MessageType.RESULTADO, "Você está assistindo; o chat é só dos jogadores.");
+        } else if (!takeChatToken()) {
+            metrics.chatLimited();
+        } else if (room != null) {
+            server.getChatLane().post(room, playerId + ": " + text);
+        } else {
+            // Still looking for an opponent: talk to everybody else who is
+            server.lobbyChat(playerId, text);
+        }
+    }
+    
+    /**
+     * The token bucket, kept as the one time at which it would be empty:
+     * each line pushes that CHAT_BURST intervals at most past now. The first
+     * line refused in a row gets a warning and the next ones are dropped
+     * quietly, up to CHAT_REFUSED_LIMIT, when the client is disconnected.
+     */
+    private boolean takeChatToken() {
+        if (chatIntervalNanos == 0) return true;
+        long now = System.nanoTime();
+        long busyUntil = Math.max(chatBusyUntil - now, 0) + chatIntervalNanos;
+        if (busyUntil > CHAT_BURST * chatIntervalNanos) {
+            if (++chatRefused == 1) {
+                sendText(MessageType.RESULTADO, "Mensagens demais no chat; espere um pouco antes de enviar outra.");
+            } else if (chatRefused == CHAT_REFUSED_LIMIT) {
+                System.out.println("Jogador " + playerId + " inundou o chat; desconectando");
+                sendText(MessageType.RESULTADO, "Conexão encerrada por excesso de mensagens no chat.");
+                disconnect();
+            }
+            return false;
+        }
+        chatBusyUntil = now + busyUntil;
+        chatRefused = 0;
+        return true;
+    }
+    
+    @Override
+    public void onBoardRequest(int size, int winLength) {
+        metrics.commandReceived(Metrics.Command.TABULEIRO);
+        try {
+            boardSpec = new BoardSpec(size, winLength);
+        } catch (IllegalArgumentException e) {
+            sendText(MessageType.RESULTADO, e.getMessage());
+            return;
+        }
+        
+        // A spectator asking for a board wants to play again
+        server.stopWatching(this);
+        GameRoom room = this.room;
+        if (room != null && !room.getSpec().equals(boardSpec) && room.isUntouched()) {
+            // Paired before the request arrived; nothing was played yet, so start over
+            server.leaveRoom(this);
+            room = null;
+        }
+        if (room == null) {
+            // Still waiting: look for an opponent who wants the same board
+            server.getMatchmaker().enqueue(this);
+        } else if (!room.getSpec().equals(boardSpec)) {
+            sendText(MessageType.RESULTADO, "Tabuleiro " + boardSpec + " será usado ao procurar um novo oponente.");
+        }
+    }
+    
+    @Override
+    public void onResync() {
+        metrics.commandReceived(Metrics.Command.RESYNC);
+        GameRoom room = this.room;
+        if (room == null) {
+            room = watching;
+        }
+        if (room != null) {
+            room.sendSnapshot(this);
+        }
+    }
+    
+    @Override
+    public void onWatch(int roomId) {
+        metrics.commandReceived(Metrics.Command.ASSISTIR);
+        if (room != null) {
+            sendText(MessageType.RESULTADO, "Você está em uma partida e não pode assistir outra.");
+            return;
+        }
+        server.watchRoom(this, roomId);
+    }
+    
+    @Override
+    public void onPing(int token) {
+        metrics.commandReceived(Metrics.Command.PING);
+        heartbeat = true;
+        sendInt(MessageType.PONG, token);
+    }
+    
+    @Override
+    public void onPong(int token) {
+        metrics.commandReceived(Metrics.Command.PONG);
+        // Receiving it already counted as activity
+        heartbeat = true;
+    }
+    
+    /**
+     * Idle check, run by the server's timer wheel. Pings a client that has
+     * been quiet for the ping interval and drops one that stays quiet past
+     * the idle timeout, if it speaks the heartbeat; one that does not is
+     * pinged again every interval instead. A dropped client first gets the
+     * chance to receive why; if its socket is still open after a grace
+     * period, it is closed.
+     */
+    @Override
+    public long expire(long now) {
+        if (!connected) return TimerWheel.DONE;
+        if (kicked) {
+            abort();
+            return TimerWheel.DONE;
+        }
+        
+        long last = lastReceived;
+        long idle = now - last;
+        if (idle >= idleTimeoutNanos && heartbeat) {
+            System.out.println("Jogador " + playerId + " sem resposta há " + TimeUnit.NANOSECONDS.toSeconds(idle) + " s; desconectando");
+            sendText(MessageType.TEMPO_ESGOTADO, "Conexão encerrada por inatividade.");
+            disconnect();
+            kicked = true;
+            return now + KICK_GRACE_NANOS;
+        }
+        if (pingIntervalNanos > 0 && idle >= pingIntervalNanos) {
+            sendInt(MessageType.PING, ++pingToken);
+            // One that never answered is pinged again rather than dropped
+            return heartbeat ? last + idleTimeoutNanos : now + pingIntervalNanos;
+        }
+        if (idle >= idleTimeoutNanos) {
+            // Not speaking the heartbeat and not pinged: look again in a while
+            return now + idleTimeoutNanos;
+        }
+        return last + (pingIntervalNanos > 0 ? Math.min(pingIntervalNanos, idleTimeoutNanos) : idleTimeoutNanos);
+    }
+    
+    @Override
+    public void onResume(String token, int lastSeq) {
+        metrics.commandReceived(Metrics.Command.RETOMAR);
+        server.resumeSession(this, token, lastSeq);
+    }
+    
+    @Override
+    public void onBinaryRequest() {
+        metrics.commandReceived(Metrics.Command.BINARIO);
+        writeLock.lock();
+        try {
+            // The answer still goes out as text; everything after it is binary
+            if (protocol != BinaryProtocol.INSTANCE) {
+                sendText(MessageType.BINARIO, "OK");
+                protocol = BinaryProtocol.INSTANCE;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    @Override
+    public void onInvalid(String reason) {
+        metrics.commandReceived(Metrics.Command.INVALIDO);
+        sendText(MessageType.RESULTADO, reason);
+    }
+    
+    @Override
+    public void onUnknown(String command) {
+        metrics.commandReceived(Metrics.Command.DESCONHECIDO);
+        sendText(MessageType.RESULTADO, "Comando desconhecido: " + command);
+    }
+    
+    public boolean sendPlayerId(int id) {
+        return sendInt(MessageType.ID_JOGADOR, id);
+    }
+    
+    public boolean sendTurn(int currentPlayerId) {
+        return sendInt(MessageType.TURNO, currentPlayerId);
+    }
+    
+    private boolean sendInt(MessageType type, int value) {
+        metrics.messagesSent(type, 1);
+        writeLock.lock();
+        try {
+            ByteBuffer buffer = encodeBuffer(32);
+            protocol.writeInt(buffer, type, value);
+            if (enqueue(buffer)) return connected;
+        } finally {
+            writeLock.unlock();
+        }
+        return overflow();
+    }
+    
+    public boolean sendSymbol(char symbol) {
+        metrics.messagesSent(MessageType.SIMBOLO, 1);
+        writeLock.lock();
+        try {
+            ByteBuffer buffer = encodeBuffer(32);
+            protocol.writeSymbol(buffer, symbol);
+            if (enqueue(buffer)) return connected;
+        } finally {
+            writeLock.unlock();
+        }
+        return overflow();
+    }
+    
+    public boolean sendSnapshot(int seq, Board board) {
+        metrics.messagesSent(MessageType.ESTADO, 1);
+        writeLock.lock();
+        try {
+            ByteBuffer buffer = encodeBuffer(WireProtocol.snapshotCapacity(board));
+            protocol.writeSnapshot(buffer, seq, board);
+            if (enqueue(buffer)) return connected;
+        } finally {
+            writeLock.unlock();
+        }
+        return overflow();
+    }
+    
+    public boolean sendText(MessageType type, String text) {
+        metrics.messagesSent(type, 1);
+        writeLock.lock();
+        try {
+            ByteBuffer buffer = encodeBuffer(WireProtocol.textCapacity(text));
+            protocol.writeText(buffer, type, text);
+            if (enqueue(buffer)) return connected;
+        } finally {
+            writeLock.unlock();
+        }
+        return overflow();
+    }
+    
+    /**
+     * Sends the event a room just encoded, already in this connection's
+     * protocol, so nothing is encoded here. On NIO the bytes usually go
+     * straight from the shared frame to the socket. The room counts these
+     * messages for all its receivers at once.
+     */
+    public boolean sendFrame(SharedFrame frame) {
+        writeLock.lock();
+        try {
+            ByteBuffer encoded = frame.encodedFor(protocol);
+            int start = encoded.position();
+            boolean queued = offer(encoded);
+            // Rewind for whoever the frame goes to next
+            encoded.position(start);
+            if (queued) return connected;
+        } finally {
+            writeLock.unlock();
+        }
+        return overflow();
+    }
+    
+    /**
+     * Returns an empty buffer that can hold capacity bytes: the reusable
+     * one when it is big enough, otherwise a one-off. Called with writeLock
+     * held.
+     */
+    private ByteBuffer encodeBuffer(int capacity) {
+        if (capacity > encodeBuffer.capacity()) {
+            return ByteBuffer.allocate(capacity);
+        }
+        encodeBuffer.clear();
+        return encodeBuffer;
+    }
+    
+    // Called with writeLock held, with a buffer that was just written to
+    private boolean enqueue(ByteBuffer buffer) {
+        buffer.flip();
+        return offer(buffer);
+    }
+    
+    /**
+     * Copies a message, ready for reading, into the outbound queue. Returns
+     * false if the queue is full. Called with writeLock held; the buffer is
+     * free for reuse once this returns. Inside a WriteBatch the message only
+     * waits in the queue, and the batch flushes it with whatever else this
+     * turn sends here.
+     */
+    private boolean offer(ByteBuffer buffer) {
+        WriteBatch batch = WriteBatch.current();
+        if (connection != null) {
+            if (batch == null) {
+                return connection.send(buffer);
+            }
+            if (!connection.queue(buffer)) {
+                return false;
+            }
+        } else {
+            boolean wasEmpty = outbound.isEmpty();
+            if (!outbound.offer(buffer)) {
+                return false;
+            }
+            if (batch == null) {
+                if (wasEmpty) {
+                    LockSupport.unpark(writerThread);
+                }
+                return true;
+            }
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            batch.add(this);
+        }
+        return true;
+    }
+    
+    /**
+     * Sends what a WriteBatch held back: one write on NIO, one wake-up of
+     * the writer thread otherwise.
+     */
+    void flush() {
+        writeLock.lock();
+        try {
+            flushScheduled = false;
+            if (connection != null) {
+                connection.flush();
+            } else if (!outbound.isEmpty()) {
+                LockSupport.unpark(writerThread);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Applies the overflow policy after a message did not fit in the queue.
+     * Called without writeLock held, since coalescing goes through the room
+     * lock, which is always taken before writeLock. Returns whether the
+     * client is still around.
+     */
+    private boolean overflow() {
+        metrics.outboundOverflow();
+        switch (overflowPolicy) {
+            case DISCONNECT:
+                System.out.println("Jogador " + playerId + " não acompanha as mensagens; desconectando");
+                abort();
+                return false;
+            case COALESCE:
+                // A snapshot that overflows again, or a send made while holding writeLock, just drops
+                if (!writeLock.isHeldByCurrentThread() && coalescing.compareAndSet(false, true)) {
+                    try {
+                        coalesce();
+                    } finally {
+                        coalescing.set(false);
+                    }
+                }
+                return connected;
+            default:
+                return connected;
+        }
+    }
+    
+    private void coalesce() {
+        writeLock.lock();
+        try {
+            if (connection != null) {
+                connection.clearQueued();
+            } else {
+                outbound.clear();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        GameRoom room = this.room;
+        if (room == null) {
+            room = watching;
+        }
+        if (room != null) {
+            room.resendState(this);
+        }
+    }
+    
+    /**
+     * Called by the NIO transport once its channel is closed.
+     */
+    void connectionClosed() {
+        server.removeClient(this);
+    }
+    
+    private void closeConnection() {
+        try {
+            server.removeClient(this);
+            if (input != null) input.close();
+            if (output != null) output.close();
+            if (socket != null) socket.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar conexão com o cliente: " + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,703 @@
+package jogo;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.util.Scanner;
+import java.util.concurrent.*;
+
+/**
+ * Interactive client: moves and chat are typed at the keyboard and
+ * everything the server sends is printed. The load generator runs the same
+ * client headless, with a bot picking the moves instead.
+ */
+public class Cliente {
+    private static final String SERVER_ADDRESS = "localhost";
+    private static final int SERVER_PORT = 12345;
+    
+    private static final int READ_BUFFER_SIZE = 512;
+    // Silence after which we PING the server, and again after which we give up on it
+    private static final int HEARTBEAT_MILLIS = (int) TimeUnit.SECONDS.toMillis(30);
+    // Headless listener threads only read and decode, so thousands of them can do with small stacks
+    private static final long BOT_STACK_SIZE = 256 * 1024;
+    // Pauses between reconnect attempts double from the first to the last; we give up after
+    // the longest the server keeps a seat, which is after it restarts
+    private static final long RECONNECT_FIRST_PAUSE_MILLIS = 250;
+    private static final long RECONNECT_MAX_PAUSE_MILLIS = 4000;
+    private static final long RECONNECT_GIVE_UP_MILLIS = Servidor.RECOVERY_WINDOW_MILLIS;
+    
+    private Socket socket;
+    private InputStream in;
+    private OutputStream out;
+    // What the server sends us is decoded with inbound; it flips to binary once BINARIO|OK arrives
+    private volatile WireProtocol inbound = TextProtocol.INSTANCE;
+    // What we send; guarded by this
+    private WireProtocol outbound = TextProtocol.INSTANCE;
+    private boolean binary;
+    private Scanner scanner;
+    private char playerSymbol;
+    private int playerId;
+    private char[][] board;
+    private boolean myTurn;
+    // Sequence number of the last board update applied; -1 until the first snapshot
+    private int lastSeq = -1;
+    private int requestedSize;
+    private int requestedWinLength;
+    // Following a match as a spectator instead of playing
+    private volatile boolean watching;
+    private int watchRoomId;
+    // Issued by the server with SESSAO; RETOMAR with it takes our seat back from a new connection
+    private volatile String sessionToken;
+    // Token of an earlier connection whose seat we ask for as soon as we connect
+    private String resumeToken;
+    // Set once the user typed 'sair', so a closed connection is not taken for a dropped one
+    private volatile boolean quitting;
+    // Set when running headless; the load generator then times the moves the bot plays
+    private GeradorCarga load;
+    // Headless only: a move was sent and the server has not echoed it back yet
+    private volatile boolean moveInFlight;
+    private volatile long moveSentAt;
+    
+    public Cliente() {
+        scanner = new Scanner(System.in);
+        initializeBoard(3);
+    }
+    
+    /**
+     * @param requestedSize      board size to ask the server for, 0 for the server default
+     * @param requestedWinLength symbols in a row needed to win, 0 for the server default
+     */
+    public Cliente(int requestedSize, int requestedWinLength) {
+        this();
+        this.requestedSize = requestedSize;
+        this.requestedWinLength = requestedWinLength;
+    }
+    
+    /**
+     * @param binary ask the server for the compact binary protocol
+     */
+    public Cliente(int requestedSize, int requestedWinLength, boolean binary) {
+        this(requestedSize, requestedWinLength);
+        this.binary = binary;
+    }
+    
+    /**
+     * Joins as a spectator instead of a player.
+     *
+     * @param watchRoomId room to watch, 0 for any match in progress
+     */
+    public Cliente(boolean binary, int watchRoomId) {
+        this(0, 0, binary);
+        this.watching = true;
+        this.watchRoomId = watchRoomId;
+    }
+    
+    /**
+     * Asks for the seat of an earlier connection as soon as it connects.
+     *
+     * @param resumeToken the token that connection got with SESSAO
+     */
+    public Cliente(boolean binary, String resumeToken) {
+        this(0, 0, binary);
+        this.resumeToken = resumeToken;
+    }
+    
+    /**
+     * Headless player for the load generator: nothing is read from the
+     * keyboard or printed, and a random free cell is played whenever it is
+     * our turn.
+     */
+    Cliente(int requestedSize, int requestedWinLength, boolean binary, GeradorCarga load) {
+        initializeBoard(3);
+        this.requestedSize = requestedSize;
+        this.requestedWinLength = requestedWinLength;
+        this.binary = binary;
+        this.load = load;
+    }
+    
+    private void initializeBoard(int size) {
+        board = new char[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                board[i][j] = '-';
+            }
+        }
+    }
+    
+    public void connectToServer() {
+        try {
+            connect();
+            System.out.println("Conectado ao servidor!");
+            
+            // Start listening thread
+            Thread listenerThread = new Thread(new ServerListener());
+            listenerThread.start();
+            
+            // Start input loop
+            inputLoop();
+            
+        } catch (IOException e) {
+            System.err.println("Erro ao conectar ao servidor: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Headless start: connects and leaves the rest to the listener thread,
+     * which plays whenever it is our turn.
+     */
+    void startHeadless(String name) throws IOException {
+        connect();
+        Thread listenerThread = new Thread(null, new ServerListener(), name, BOT_STACK_SIZE);
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+    
+    // Opens the socket and sends whatever was asked for on the command line
+    private void connect() throws IOException {
+        Socket connection = new Socket(SERVER_ADDRESS, SERVER_PORT);
+        // Reads give up after a quiet spell so a vanished server is noticed
+        connection.setSoTimeout(HEARTBEAT_MILLIS);
+        synchronized (this) {
+            socket = connection;
+            in = connection.getInputStream();
+            out = connection.getOutputStream();
+            // A new connection starts out in text either way
+            inbound = TextProtocol.INSTANCE;
+            outbound = TextProtocol.INSTANCE;
+        }
+        
+        if (binary) {
+            requestBinary();
+        }
+        if (resumeToken != null) {
+            ByteBuffer buffer = ByteBuffer.allocate(64);
+            synchronized (this) {
+                outbound.writeResume(buffer, resumeToken, lastSeq);
+                send(buffer);
+            }
+        } else if (watching) {
+            watch(watchRoomId);
+        } else if (requestedSize > 0) {
+            int winLength = requestedWinLength > 0 ? requestedWinLength : Math.min(requestedSize, 5);
+            ByteBuffer buffer = ByteBuffer.allocate(32);
+            synchronized (this) {
+                outbound.writeBoardRequest(buffer, requestedSize, winLength);
+                send(buffer);
+            }
+        }
+    }
+    
+    private void inputLoop() {
+        System.out.println("Digite suas jogadas no formato: linha,coluna (começando em 0)");
+        System.out.println("Ou digite 'chat:mensagem' para enviar uma mensagem no chat");
+        System.out.println("Ou 'assistir' (ou 'assistir:sala') para acompanhar uma partida como espectador");
+        System.out.println("Digite 'sair' para sair do jogo");
+        
+        String input;
+        while (true) {
+            System.out.print("> ");
+            input = scanner.nextLine();
+            
+            if ("sair".equalsIgnoreCase(input)) {
+                break;
+            } else if ("assistir".equalsIgnoreCase(input) || input.startsWith("assistir:")) {
+                try {
+                    watch(input.length() > 9 ? Integer.parseInt(input.substring(9).trim()) : 0);
+                } catch (NumberFormatException e) {
+                    System.out.println("Número de sala inválido. Use: assistir:sala (ex: assistir:3)");
+                }
+            } else if (input.startsWith("chat:")) {
+                sendChat(input.substring(5));
+            } else {
+                // Try to parse as a move
+                String[] parts = input.split(",");
+                if (parts.length == 2) {
+                    try {
+                        int row = Integer.parseInt(parts[0].trim());
+                        int col = Integer.parseInt(parts[1].trim());
+                        
+                        if (watching) {
+                            System.out.println("Você está assistindo; espectadores não jogam.");
+                        } else if (!myTurn) {
+                            System.out.println("Aguarde sua vez!");
+                        } else {
+                            sendMove(row, col);
+                        }
+                    } catch (NumberFormatException e) {
+                        System.out.println("Formato inválido. Use: linha,coluna (ex: 1,2)");
+                    }
+                } else {
+                    System.out.println("Comando inválido. Use 'linha,coluna', 'chat:mensagem' ou 'sair'");
+                }
+            }
+        }
+        
+        quitting = true;
+        disconnect();
+    }
+    
+    void sendChat(String message) {
+        ByteBuffer buffer = ByteBuffer.allocate(WireProtocol.textCapacity(message));
+        synchronized (this) {
+            outbound.writeChat(buffer, message);
+            send(buffer);
+        }
+    }
+    
+    private void sendMove(int row, int col) {
+        ByteBuffer buffer = ByteBuffer.allocate(32);
+        synchronized (this) {
+            outbound.writeJogada(buffer, row, col);
+            send(buffer);
+        }
+    }
+    
+    /**
+     * Headless play: once it is our turn and the board is known, picks a
+     * random free cell and hands it to the load generator, which sends it
+     * right away or after its think time.
+     */
+    private void playIfMyTurn() {
+        if (load == null || watching || !myTurn || lastSeq < 0 || moveInFlight) return;
+        int size = board.length;
+        int free = 0;
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (board[i][j] == '-') free++;
+            }
+        }
+        if (free == 0) return;
+        int pick = ThreadLocalRandom.current().nextInt(free);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (board[i][j] == '-' && pick-- == 0) {
+                    moveInFlight = true;
+                    load.play(this, i, j);
+                    return;
+                }
+            }
+        }
+    }
+    
+    // Called by the load generator when it actually sends the bot's move
+    void sendTimedMove(int row, int col) {
+        moveSentAt = System.nanoTime();
+        sendMove(row, col);
+    }
+    
+    // Our own MOVIMENTO came back: the move is in, and the turn passes on
+    private void moveAcknowledged() {
+        if (!moveInFlight) return;
+        moveInFlight = false;
+        myTurn = false;
+        load.moveAcknowledged(System.nanoTime() - moveSentAt);
+    }
+    
+    // Match ended or was interrupted; a move still in flight will get no answer
+    private void matchOver() {
+        myTurn = false;
+        moveInFlight = false;
+    }
+    
+    private void watch(int roomId) {
+        watching = true;
+        myTurn = false;
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        synchronized (this) {
+            outbound.writeWatch(buffer, roomId);
+            send(buffer);
+        }
+    }
+    
+    /**
+     * Asks for binary frames. The request itself is a text line; everything
+     * we send after it is already binary, while the server's replies switch
+     * over once its BINARIO|OK arrives.
+     */
+    private synchronized void requestBinary() {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        TextProtocol.INSTANCE.writeBinaryRequest(buffer);
+        outbound = BinaryProtocol.INSTANCE;
+        send(buffer);
+    }
+    
+    // Called while holding this, with a buffer that was just written to
+    private void send(ByteBuffer buffer) {
+        buffer.flip();
+        try {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } catch (IOException e) {
+            // Headless, the listener notices the broken connection and it is counted there
+            warn("Erro ao enviar para o servidor: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Rebuilds the board from an ESTADO snapshot; the number of rows tells
+     * the board size, so any size the server picked is shown.
+     */
+    private void updateBoard(int seq, char[][] cells) {
+        lastSeq = seq;
+        if (board.length != cells.length) {
+            initializeBoard(cells.length);
+        }
+        for (int i = 0; i < cells.length; i++) {
+            for (int j = 0; j < cells[i].length && j < board.length; j++) {
+                board[i][j] = cells[i][j];
+            }
+        }
+        printBoard();
+    }
+    
+    /**
+     * Applies a single move. If one was missed on the way, the local board
+     * can no longer be trusted and a fresh snapshot is requested instead.
+     */
+    private void applyMove(int row, int col, char symbol, int seq) {
+        if (lastSeq < 0 || seq != lastSeq + 1 || row >= board.length || col >= board.length) {
+            ByteBuffer buffer = ByteBuffer.allocate(16);
+            synchronized (this) {
+                outbound.writeResync(buffer);
+                send(buffer);
+            }
+            return;
+        }
+        board[row][col] = symbol;
+        lastSeq = seq;
+        printBoard();
+    }
+    
+    private void printBoard() {
+        if (load != null) return;
+        int size = board.length;
+        // Beyond 3x3 it gets hard to count cells, so label rows and columns
+        boolean labels = size > 3;
+        System.out.println("\n--- Tabuleiro ---");
+        if (labels) {
+            System.out.print("   ");
+            for (int j = 0; j < size; j++) {
+                System.out.print(String.format("%-3d", j));
+            }
+            System.out.println();
+        }
+        for (int i = 0; i < size; i++) {
+            if (labels) {
+                System.out.print(String.format("%2d ", i));
+            }
+            for (int j = 0; j < size; j++) {
+                System.out.print(board[i][j] + (labels ? "  " : " "));
+            }
+            System.out.println();
+        }
+        System.out.println("-----------------\n");
+    }
+    
+    // Console output of the interactive client; a headless one stays quiet
+    private void show(String text) {
+        if (load == null) {
+            System.out.println(text);
+        }
+    }
+    
+    private void warn(String text) {
+        if (load == null) {
+            System.err.println(text);
+        }
+    }
+    
+    private void disconnect() {
+        closeSocket();
+        if (scanner != null) scanner.close();
+        if (load != null) {
+            load.disconnected();
+        } else {
+            System.out.println("Desconectado do servidor.");
+        }
+    }
+    
+    private void closeSocket() {
+        try {
+            if (in != null) in.close();
+            if (out != null) out.close();
+            if (socket != null) socket.close();
+        } catch (IOException e) {
+            warn("Erro ao desconectar: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * After the connection drops, connects again and asks for our seat back
+     * with the session token, retrying with a growing pause for as long as
+     * the server keeps seats. Returns false if there is no seat to go back
+     * to (we quit, never played, or are a bot or a spectator) or the server
+     * could not be reached in time. Runs on the listener thread.
+     */
+    private boolean reconnect() {
+        if (quitting || load != null || watching || sessionToken == null || playerSymbol == 0) {
+            return false;
+        }
+        show("Conexão perdida. Tentando voltar para a partida...");
+        closeSocket();
+        resumeToken = sessionToken;
+        long giveUp = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RECONNECT_GIVE_UP_MILLIS);
+        long pause = RECONNECT_FIRST_PAUSE_MILLIS;
+        while (!quitting && System.nanoTime() - giveUp < 0) {
+            try {
+                Thread.sleep(pause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            pause = Math.min(pause * 2, RECONNECT_MAX_PAUSE_MILLIS);
+            try {
+                connect();
+                show("Reconectado.");
+                return true;
+            } catch (IOException e) {
+                // Not back yet; try again after a longer pause
+            }
+        }
+        warn("Não foi possível reconectar ao servidor.");
+        return false;
+    }
+    
+    private class ServerListener implements Runnable, EventHandler {
+        @Override
+        public void run() {
+            try {
+                do {
+                    listen();
+                } while (reconnect());
+            } finally {
+                disconnect();
+            }
+        }
+        
+        // Reads and handles what the server sends until the connection is lost
+        private void listen() {
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+                int pingToken = 0;
+                boolean pinged = false;
+                while (true) {
+                    int read;
+                    try {
+                        read = in.read(buffer.array(), buffer.position(), buffer.remaining());
+                    } catch (SocketTimeoutException e) {
+                        if (pinged) {
+                            warn("O servidor não responde; desconectando.");
+                            break;
+                        }
+                        // Quiet for a while: make sure the server is still there
+                        ByteBuffer ping = ByteBuffer.allocate(16);
+                        synchronized (Cliente.this) {
+                            outbound.writePing(ping, ++pingToken);
+                            send(ping);
+                        }
+                        pinged = true;
+                        continue;
+                    }
+                    if (read < 0) break;
+                    pinged = false;
+                    buffer.position(buffer.position() + read);
+                    
+                    // The protocol is looked up per message, so frames after BINARIO|OK decode as binary
+                    buffer.flip();
+                    while (inbound.decodeEvent(buffer, this)) {
+                        // Keep going until only a partial message is left
+                    }
+                    buffer.compact();
+                    
+                    buffer = WireProtocol.ensureSpace(buffer);
+                    if (buffer == null) {
+                        warn("Mensagem do servidor longa demais");
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                if (!quitting) {
+                    warn("Erro na conexão com o servidor: " + e.getMessage());
+                }
+            }
+        }
+        
+        @Override
+        public void onSymbol(char symbol) {
+            playerSymbol = symbol;
+            show("Você é o jogador " + playerSymbol);
+        }
+        
+        @Override
+        public void onPlayerId(int id) {
+            playerId = id;
+            show("Seu ID de jogador: " + playerId);
+        }
+        
+        @Override
+        public void onSnapshot(int seq, char[][] cells) {
+            updateBoard(seq, cells);
+            playIfMyTurn();
+        }
+        
+        @Override
+        public void onTurn(int currentPlayerId) {
+            if (watching) {
+                show("Vez do jogador " + currentPlayerId + ".");
+                return;
+            }
+            myTurn = (currentPlayerId == playerId);
+            if (myTurn) {
+                show("Sua vez! Faça sua jogada.");
+            } else {
+                show("Aguardando o outro jogador...");
+            }
+            playIfMyTurn();
+        }
+        
+        @Override
+        public void onPing(int token) {
+            ByteBuffer buffer = ByteBuffer.allocate(16);
+            synchronized (Cliente.this) {
+                outbound.writePong(buffer, token);
+                send(buffer);
+            }
+        }
+        
+        @Override
+        public void onPong(int token) {
+            // Receiving it is all that matters; the read loop already saw traffic
+        }
+        
+        @Override
+        public void onMove(int movePlayerId, int row, int col, char symbol, int seq) {
+            show("Jogador " + movePlayerId + " (" + symbol + ") jogou na posição (" + row + "," + col + ")");
+            if (seq >= 0) {
+                applyMove(row, col, symbol, seq);
+            }
+            if (load != null && movePlayerId == playerId) {
+                moveAcknowledged();
+            }
+        }
+        
+        @Override
+        public void onText(MessageType type, String text) {
+            switch (type) {
+                case JOGO_INICIADO:
+                    show(text);
+                    if (watching) break;
+                    if (load != null) {
+                        // The board of the last match is stale until the new snapshot, which follows
+                        matchOver();
+                        lastSeq = -1;
+                    }
+                    myTurn = (playerSymbol == 'X');
+                    if (myTurn) {
+                        show("Sua vez! Faça sua jogada.");
+                    } else {
+                        show("Aguarde o outro jogador.");
+                    }
+                    break;
+                    
+                case RESULTADO:
+                    show("Resultado: " + text);
+                    if (load != null && moveInFlight) {
+                        // Our move was turned down; get the board again before trying another
+                        moveInFlight = false;
+                        load.moveRejected();
+                        ByteBuffer buffer = ByteBuffer.allocate(16);
+                        synchronized (Cliente.this) {
+                            outbound.writeResync(buffer);
+                            send(buffer);
+                        }
+                    }
+                    break;
+                    
+                case CHAT:
+                    show("[Chat] " + text);
+                    break;
+                    
+                case FIM_JOGO:
+                    show("=== FIM DE JOGO ===");
+                    show(text);
+                    show("====================");
+                    if (load != null) {
+                        matchOver();
+                        load.gameOver();
+                    }
+                    break;
+                    
+                case JOGADOR_SAIU:
+                    show("Aviso: " + text);
+                    matchOver();
+                    break;
+                    
+                case AGUARDANDO:
+                    matchOver();
+                    show(text);
+                    break;
+                    
+                case TEMPO_ESGOTADO:
+                    show("Aviso: " + text);
+                    if (load == null) System.exit(0);
+                    break;
+                    
+                case SERVIDOR_CHEIO:
+                    show("Erro: " + text);
+                    if (load == null) System.exit(0);
+                    break;
+                    
+                case SESSAO:
+                    // Once we have resumed a seat the token we care about is the one we resumed with
+                    if (resumeToken == null && !text.equals(sessionToken)) {
+                        show("Se a conexão cair o cliente volta sozinho; de outro terminal, use: java jogo.Cliente --retomar " + text);
+                    }
+                    sessionToken = text;
+                    break;
+                    
+                case BINARIO:
+                    inbound = BinaryProtocol.INSTANCE;
+                    show("Protocolo binário ativado.");
+                    break;
+                    
+                default:
+                    show("Mensagem do servidor: " + type + "|" + text);
+                    break;
+            }
+        }
+        
+        @Override
+        public void onUnknown(String message) {
+            show("Mensagem do servidor: " + message);
+        }
+    }
+    
+    public static void main(String[] args) {
+        // Optional: java Cliente [--binario] <tamanho> [sequencia] asks for a bigger board, e.g. 15 5;
+        // java Cliente [--binario] --assistir [sala] watches a match instead;
+        // java Cliente [--binario] --retomar <token> takes back the seat of a dropped connection
+        boolean binary = false;
+        boolean watch = false;
+        String resume = null;
+        int size = 0;
+        int winLength = 0;
+        int positional = 0;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--binario".equals(arg)) {
+                binary = true;
+            } else if ("--assistir".equals(arg)) {
+                watch = true;
+            } else if ("--retomar".equals(arg) && i + 1 < args.length) {
+                resume = args[++i];
+            } else if (positional++ == 0) {
+                size = Integer.parseInt(arg);
+            } else {
+                winLength = Integer.parseInt(arg);
+            }
+        }
+        // With --assistir the number, if any, is the room
+        Cliente client = resume != null ? new Cliente(binary, resume)
+                : watch ? new Cliente(binary, size) : new Cliente(size, winLength, binary);
+        client.connectToServer();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,221 @@
+package jogo;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+
+/**
+ * One member's view of a cluster: n Servidor nodes behind a Gateway, with
+ * a ClusterBus between all of them. Player and room IDs are striped across
+ * the nodes (see IdSequence), so nodeOf tells from an ID alone which node
+ * has a room or had a player's session; rooms a node handed over when it
+ * shut down are the exception, announced with ADOPTED by whoever took them.
+ *
+ * Messages, big-endian, start with their type and the sender's number (the
+ * gateway's is n, after the nodes):
+ * - LOBBY: players waiting for an opponent on the default board and whether
+ *   the node is shutting down; every node sends it every LOBBY_INTERVAL_MILLIS
+ * - CHAT: player ID and text of a lobby chat line, UTF-8 with a short length
+ * - HAND_OFF: the node that should take the room, then the room record (see
+ *   GameRoom.snapshot)
+ * - ADOPTED: room ID and players X and O of a room the sender took over
+ */
+final class Cluster implements ClusterBus.Receiver {
+    static final byte LOBBY = 1;
+    static final byte CHAT = 2;
+    static final byte HAND_OFF = 3;
+    static final byte ADOPTED = 4;
+    static final long LOBBY_INTERVAL_MILLIS = 500;
+    // A node not heard from in three intervals is taken for gone
+    private static final long PEER_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(3 * LOBBY_INTERVAL_MILLIS);
+    private static final int HEADER_SIZE = 5;
+    
+    /**
+     * What a member hears from the others; called on the bus's thread.
+     */
+    interface Listener {
+        void onLobbyChat(int playerId, String text);
+        
+        /**
+         * A node that is shutting down handed this one a room.
+         */
+        void onHandOff(SnapshotStore.RoomState state);
+        
+        void onAdopted(int node, int roomId, int playerX, int playerO);
+    }
+    
+    private final int member;
+    private final int nodes;
+    private final ClusterBus bus;
+    private final Peer[] peers;
+    private Listener listener;
+    
+    /**
+     * @param member this member's number: its node index, or nodes for the gateway
+     */
+    Cluster(int member, int nodes, ClusterBus bus) {
+        this.member = member;
+        this.nodes = nodes;
+        this.bus = bus;
+        peers = new Peer[nodes];
+        for (int i = 0; i < nodes; i++) {
+            peers[i] = new Peer();
+        }
+    }
+    
+    void start(Listener listener) throws IOException {
+        this.listener = listener;
+        bus.start(this);
+    }
+    
+    void close() {
+        bus.close();
+    }
+    
+    int getNode() {
+        return member;
+    }
+    
+    int getNodes() {
+        return nodes;
+    }
+    
+    /**
+     * The node that handed out a player or room ID.
+     */
+    static int nodeOf(int id, int nodes) {
+        return Math.floorMod(id - 1, nodes);
+    }
+    
+    /**
+     * Whether a node was heard from lately and is not shutting down. Always
+     * false for this member itself, which does not hear its own messages.
+     */
+    boolean isLive(int node) {
+        Peer peer = peers[node];
+        return peer.heardAt != 0 && System.nanoTime() - peer.heardAt < PEER_TIMEOUT_NANOS && !peer.draining;
+    }
+    
+    /**
+     * Whether a node said it is shutting down, and has not been heard
+     * saying otherwise since.
+     */
+    boolean isDraining(int node) {
+        return peers[node].draining;
+    }
+    
+    int getWaiting(int node) {
+        return peers[node].waiting;
+    }
+    
+    /**
+     * The live node, other than this one, that a room should move to; -1 if
+     * there is none. Rooms are spread over the live nodes by ID.
+     */
+    int successorFor(int roomId) {
+        int[] live = new int[nodes];
+        int count = 0;
+        for (int i = 0; i < nodes; i++) {
+            if (i != member && isLive(i)) live[count++] = i;
+        }
+        return count == 0 ? -1 : live[Math.floorMod(roomId, count)];
+    }
+    
+    void publishLobby(int waiting, boolean draining) {
+        ByteBuffer out = header(LOBBY, 5);
+        out.putInt(waiting);
+        out.put((byte) (draining ? 1 : 0));
+        send(out);
+    }
+    
+    void publishChat(int playerId, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer out = header(CHAT, 6 + bytes.length);
+        out.putInt(playerId);
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+        send(out);
+    }
+    
+    /**
+     * @param record a room record as written by GameRoom.snapshot, from
+     *               its position to its limit
+     */
+    void publishHandOff(int node, ByteBuffer record) {
+        ByteBuffer out = header(HAND_OFF, 4 + record.remaining());
+        out.putInt(node);
+        out.put(record);
+        send(out);
+    }
+    
+    void publishAdopted(int roomId, int playerX, int playerO) {
+        ByteBuffer out = header(ADOPTED, 12);
+        out.putInt(roomId);
+        out.putInt(playerX);
+        out.putInt(playerO);
+        send(out);
+    }
+    
+    private ByteBuffer header(byte type, int bodySize) {
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + bodySize);
+        out.put(type);
+        out.putInt(member);
+        return out;
+    }
+    
+    private void send(ByteBuffer out) {
+        out.flip();
+        bus.publish(out);
+    }
+    
+    @Override
+    public void receive(ByteBuffer in) {
+        byte type = in.get();
+        int from = in.getInt();
+        switch (type) {
+            case LOBBY:
+                if (from < 0 || from >= nodes) return;
+                Peer peer = peers[from];
+                peer.waiting = in.getInt();
+                peer.draining = in.get() != 0;
+                peer.heardAt = System.nanoTime();
+                break;
+            case CHAT:
+                int playerId = in.getInt();
+                byte[] bytes = new byte[in.getShort() & 0xFFFF];
+                in.get(bytes);
+                listener.onLobbyChat(playerId, new String(bytes, StandardCharsets.UTF_8));
+                break;
+            case HAND_OFF:
+                if (in.getInt() != member) return;
+                try {
+                    DataInputStream record = new DataInputStream(new ByteArrayInputStream(
+                            in.array(), in.arrayOffset() + in.position(), in.remaining()));
+                    listener.onHandOff(SnapshotStore.readRoom(record.readInt(), record));
+                } catch (IOException e) {
+                    System.err.println("Sala transferida pelo nó " + from + " chegou incompleta");
+                }
+                break;
+            case ADOPTED:
+                listener.onAdopted(from, in.getInt(), in.getInt(), in.getInt());
+                break;
+            default:
+                break;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return member < nodes ? "nó " + member + " de " + nodes : "gateway de " + nodes + " nós";
+    }
+    
+    /**
+     * The latest LOBBY of a node; written only by the bus's thread.
+     */
+    private static final class Peer {
+        volatile long heardAt;
+        volatile int waiting;
+        volatile boolean draining;
+    }
+}
\ No newline at end of file
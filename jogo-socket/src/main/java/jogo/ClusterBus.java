@@ -0,0 +1,37 @@
+package jogo;
+
+import java.io.*;
+import java.nio.*;
+
+/**
+ * Carries messages between the members of a cluster: the server nodes and
+ * the Gateway in front of them. What the messages mean is up to Cluster;
+ * a bus only moves bytes, so another transport (a broker, a TCP mesh) can
+ * replace LoopbackBus without touching the rest.
+ *
+ * A published message reaches every other member at most once; the sender
+ * does not get its own. Messages from one member arrive in the order it
+ * sent them, but nothing is ordered across members.
+ */
+interface ClusterBus extends Closeable {
+    /**
+     * Starts delivering messages to the receiver, on a thread of the bus.
+     */
+    void start(Receiver receiver) throws IOException;
+    
+    /**
+     * Sends the message from its position to its limit. May be called from
+     * any thread; never blocks on a slow member.
+     */
+    void publish(ByteBuffer message);
+    
+    @Override
+    void close();
+    
+    interface Receiver {
+        /**
+         * One message, valid only until the call returns.
+         */
+        void receive(ByteBuffer message);
+    }
+}
\ No newline at end of file
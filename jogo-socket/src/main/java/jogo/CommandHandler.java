@@ -0,0 +1,54 @@
+package jogo;
+
+/**
+ * Receives the commands a client sends, already decoded from whichever wire
+ * protocol the connection uses.
+ */
+interface CommandHandler {
+    void onMove(int row, int col);
+    
+    void onChat(String text);
+    
+    void onBoardRequest(int size, int winLength);
+    
+    void onResync();
+    
+    /**
+     * The client wants to follow a room as a spectator; roomId is 0 for any
+     * match in progress.
+     */
+    void onWatch(int roomId);
+    
+    /**
+     * Heartbeat from a client checking that we are still there; answered
+     * with a PONG carrying the same token.
+     */
+    void onPing(int token);
+    
+    /**
+     * Answer to a PING we sent.
+     */
+    void onPong(int token);
+    
+    /**
+     * The client wants back the seat it had under the given session token,
+     * after its connection dropped or the server restarted.
+     *
+     * @param lastSeq sequence number of the last board update the client
+     *                applied, -1 if it has none; the server sends what came
+     *                after it
+     */
+    void onResume(String token, int lastSeq);
+    
+    /**
+     * The client asked to switch the connection to binary frames.
+     */
+    void onBinaryRequest();
+    
+    /**
+     * A known command arrived with arguments that could not be parsed.
+     */
+    void onInvalid(String reason);
+    
+    void onUnknown(String command);
+}
\ No newline at end of file
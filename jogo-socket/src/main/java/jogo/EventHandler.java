@@ -0,0 +1,38 @@
+package jogo;
+
+/**
+ * Receives the messages the server sends, already decoded from whichever
+ * wire protocol the connection uses.
+ */
+interface EventHandler {
+    void onPlayerId(int playerId);
+    
+    void onSymbol(char symbol);
+    
+    /**
+     * Full board; cells[row][col] is 'X', 'O' or '-'.
+     */
+    void onSnapshot(int seq, char[][] cells);
+    
+    /**
+     * A move; seq is -1 when the server did not send one.
+     */
+    void onMove(int playerId, int row, int col, char symbol, int seq);
+    
+    void onTurn(int playerId);
+    
+    /**
+     * Heartbeat from the server; must be answered with a PONG carrying the
+     * same token.
+     */
+    void onPing(int token);
+    
+    void onPong(int token);
+    
+    /**
+     * Any message whose payload is just text (RESULTADO, CHAT, FIM_JOGO...).
+     */
+    void onText(MessageType type, String text);
+    
+    void onUnknown(String message);
+}
\ No newline at end of file
@@ -0,0 +1,821 @@
+package jogo;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * A single match between two players. Every room owns its own board and
+ * turn state, so moves in different rooms never contend on the same lock.
+ * The lock is a ReentrantLock rather than the object monitor because sends
+ * happen while it is held, and a virtual thread blocked in socket I/O inside
+ * a synchronized block would pin its carrier thread.
+ *
+ * Besides the two players a room has any number of read-only spectators.
+ * Every event is encoded into the room's SharedFrame, once for each protocol
+ * its receivers use, and the same bytes go to players and spectators alike.
+ *
+ * With a turn time limit the room sits on the server's TimerWheel while a
+ * match is on; a move only resets the turn clock, and a player who lets it
+ * run out forfeits.
+ *
+ * With a MoveJournal every match start, accepted move and result is
+ * appended to it while the lock is held, so the journal sees each room's
+ * events in the order the players did.
+ *
+ * A seat can be held for a player who is not connected: one whose connection
+ * dropped mid-match (holdSeat), or both players of a room recovered after a
+ * restart. The match is paused, turn clock included, until the player comes
+ * back with its session token (resume) or the server gives up on it
+ * (abandonSeat). The last moves are kept in a small ring, so a returning
+ * player is usually sent just the moves it missed rather than a snapshot.
+ *
+ * The last chat lines are kept in another ring, created with the first
+ * line, so a spectator who comes in late sees the conversation so far and a
+ * returning player sees what was said while it was away. The lines
+ * themselves are sent by the server's ChatLane.
+ */
+class GameRoom implements TimerWheel.Timed {
+    private static final int MAX_PLAYERS = 2;
+    private static final int FRAME_BUFFER_SIZE = 256;
+    private static final long REMATCH_DELAY_MILLIS = 5000;
+    // Moves kept for replay; a player further behind than this gets a snapshot
+    private static final int REPLAY_MOVES = 64;
+    // Chat lines kept for late spectators and returning players
+    private static final int CHAT_HISTORY = 32;
+    
+    private final int roomId;
+    private final List<ClientHandler> clients;
+    private final List<ClientHandler> spectators;
+    private final ReentrantLock lock;
+    private final BoardSpec spec;
+    private final Board board;
+    // Reused for every broadcast; only touched with the lock held
+    private final SharedFrame frame;
+    private final ScheduledExecutorService scheduler;
+    // Restart queued after a match ends; cancelled if the room closes first
+    private ScheduledFuture<?> rematch;
+    private final TimerWheel timers;
+    // 0 when turns are not timed
+    private final long turnTimeoutNanos;
+    // System.nanoTime() when the current turn began
+    private long turnStarted;
+    private boolean onTimerWheel;
+    private final Metrics metrics;
+    // null when the server keeps no journal
+    private final MoveJournal journal;
+    // Number the journal gave the current match
+    private int matchId;
+    // Players whose seats are kept while they are away, X first; 0 for a seat not held
+    private final int[] heldSeats = new int[MAX_PLAYERS];
+    private int heldCount;
+    // Move with sequence number s is at s % REPLAY_MOVES, as cell << 8 | symbol
+    private final int[] recentMoves = new int[REPLAY_MOVES];
+    // Sequence number of the current match's opening snapshot; the ring only holds moves after it
+    private int matchStartSeq;
+    // Line number n is at n % CHAT_HISTORY; null until the first line
+    private String[] chatHistory;
+    // Lines said so far, including those already overwritten
+    private int chatLines;
+    // chatLines when each held seat was left
+    private final int[] heldChatMarks = new int[MAX_PLAYERS];
+    private char currentPlayer;
+    // Sequence number of the last event that changed the board
+    private int seq;
+    private boolean gameActive;
+    private boolean closed;
+    
+    /**
+     * @param scheduler         shared with the other rooms; runs the rematch countdown
+     * @param timers            shared with the other rooms; runs the turn clock
+     * @param turnTimeoutMillis time each player has per move, 0 for no limit
+     * @param metrics           shared with the other rooms; times moves and broadcasts
+     * @param journal           shared with the other rooms; records every match, or null
+     */
+    public GameRoom(int roomId, BoardSpec spec, ScheduledExecutorService scheduler,
+                    TimerWheel timers, long turnTimeoutMillis, Metrics metrics, MoveJournal journal) {
+        this.roomId = roomId;
+        this.spec = spec;
+        this.scheduler = scheduler;
+        this.timers = timers;
+        this.turnTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(turnTimeoutMillis);
+        this.metrics = metrics;
+        this.journal = journal;
+        clients = new ArrayList<>();
+        spectators = new ArrayList<>();
+        lock = new ReentrantLock();
+        board = spec.newBoard();
+        frame = new SharedFrame(Math.max(FRAME_BUFFER_SIZE, WireProtocol.snapshotCapacity(board)));
+        currentPlayer = 'X';
+        gameActive = false;
+        closed = false;
+    }
+    
+    public int getRoomId() {
+        return roomId;
+    }
+    
+    public BoardSpec getSpec() {
+        return spec;
+    }
+    
+    /**
+     * Seats a player in this room. Returns false if the room is already full
+     * or has been closed, in which case the caller must pick another room.
+     */
+    public boolean addPlayer(ClientHandler client) {
+        lock.lock();
+        try {
+            if (closed || clients.size() + heldCount >= MAX_PLAYERS) {
+                return false;
+            }
+            
+            // The first seat is always X; the second player takes whatever is left
+            char symbol = 'X';
+            if (!clients.isEmpty() && clients.get(0).getSymbol() == 'X') {
+                symbol = 'O';
+            }
+            client.setSymbol(symbol);
+            client.setRoom(this);
+            clients.add(client);
+            client.sendSymbol(symbol);
+            
+            if (clients.size() == MAX_PLAYERS) {
+                startGame();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Adds a spectator. It gets the current board and whose turn it is right
+     * away, then every event from here on. Returns false if the room has
+     * been closed.
+     */
+    public boolean addSpectator(ClientHandler client) {
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            spectators.add(client);
+            client.sendText(MessageType.AGUARDANDO, "Assistindo a sala " + roomId + " (tabuleiro " + spec + ").");
+            resendState(client);
+            replayChat(client, 0);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public void removeSpectator(ClientHandler client) {
+        lock.lock();
+        try {
+            spectators.remove(client);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * True while a match is being played, i.e. there is something to watch.
+     */
+    public boolean isInProgress() {
+        lock.lock();
+        try {
+            return gameActive && !closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public boolean isWaiting() {
+        lock.lock();
+        try {
+            return !closed && clients.size() + heldCount < MAX_PLAYERS;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * True while nobody has played in the current match yet.
+     */
+    public boolean isUntouched() {
+        lock.lock();
+        try {
+            return board.moves() == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public int getPlayerCount() {
+        lock.lock();
+        try {
+            return clients.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Copies the board, row by row as 'X', 'O' or '-', for a BotPlayer about
+     * to choose a move. Returns false, copying nothing, unless a match is
+     * being played and it is the given symbol's turn.
+     */
+    boolean copyBoardForTurn(char symbol, byte[] into) {
+        lock.lock();
+        try {
+            if (closed || !gameActive || heldCount > 0 || currentPlayer != symbol) {
+                return false;
+            }
+            int size = spec.getSize();
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    into[i * size + j] = (byte) board.cellAt(i, j);
+                }
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Puts back a room recovered after a restart, with both seats held for
+     * their players.
+     */
+    public void restore(SnapshotStore.RoomState state) {
+        lock.lock();
+        try {
+            matchId = state.matchId;
+            seq = state.seq;
+            // The moves before the crash are not in the ring
+            matchStartSeq = seq;
+            currentPlayer = state.currentPlayer;
+            gameActive = state.active;
+            board.reset();
+            int size = spec.getSize();
+            for (int i = 0; i < state.cells.length && gameActive; i++) {
+                char cell = (char) state.cells[i];
+                if (cell == 'X' || cell == 'O') {
+                    board.place(i / size, i % size, cell);
+                }
+            }
+            heldSeats[0] = state.playerX;
+            heldSeats[1] = state.playerO;
+            heldCount = MAX_PLAYERS;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Keeps the seat of a player whose connection dropped, so that it can
+     * come back with its session token, and tells the others how long they
+     * may have to wait. Returns false if there is nothing worth keeping (the
+     * room is closed or nobody has played in it yet); the player should then
+     * just be removed.
+     */
+    public boolean holdSeat(ClientHandler client, long windowMillis) {
+        lock.lock();
+        try {
+            int seat = client.getSymbol() == 'X' ? 0 : 1;
+            if (closed || client.getRoom() != this || heldSeats[seat] != 0 || board.moves() == 0) {
+                return false;
+            }
+            clients.remove(client);
+            heldSeats[seat] = client.getPlayerId();
+            heldChatMarks[seat] = chatLines;
+            heldCount++;
+            broadcastText(MessageType.AGUARDANDO, "O jogador " + client.getPlayerId() + " perdeu a conexão. Aguardando até "
+                    + TimeUnit.MILLISECONDS.toSeconds(windowMillis) + " s para que volte.");
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Gives a returning player the seat held for it and brings its board up
+     * to date from lastSeq, the last board update it saw. Once every seat is
+     * taken again the match carries on where it stopped with a fresh turn
+     * clock, or the next match starts if the room was between matches.
+     * Returns false if no seat is held for that player.
+     */
+    public boolean resume(ClientHandler client, int playerId, int lastSeq) {
+        lock.lock();
+        try {
+            int seat = heldSeat(playerId);
+            if (closed || seat < 0) {
+                return false;
+            }
+            heldSeats[seat] = 0;
+            heldCount--;
+            char symbol = seat == 0 ? 'X' : 'O';
+            client.resumeAs(playerId);
+            client.setSymbol(symbol);
+            client.setRoom(this);
+            clients.add(client);
+            client.sendSymbol(symbol);
+            
+            if (heldCount == 0 && !gameActive && rematch == null) {
+                // Came back between matches, after the rematch gave up on it
+                startGame();
+                return true;
+            }
+            catchUp(client, lastSeq);
+            replayChat(client, heldChatMarks[seat]);
+            if (heldCount > 0) {
+                client.sendText(MessageType.AGUARDANDO, "Aguardando o adversário voltar para continuar a partida na sala " + roomId + ".");
+            } else if (gameActive) {
+                broadcastText(MessageType.RESULTADO, "Partida retomada!");
+                broadcastTurn(getPlayerId(currentPlayer));
+                startTurnClock();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Gives up on a player whose seat was held: the room is closed as if it
+     * had left, and the players still there are returned so the server can
+     * seat them elsewhere. Returns null if the seat is not held any more
+     * (the player came back, or the room closed meanwhile).
+     */
+    public List<ClientHandler> abandonSeat(int playerId) {
+        lock.lock();
+        try {
+            int seat = heldSeat(playerId);
+            if (closed || seat < 0) {
+                return null;
+            }
+            heldSeats[seat] = 0;
+            heldCount--;
+            return close("O jogador " + playerId + " não voltou. Jogo interrompido.");
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Sends a returning player the moves after lastSeq from the ring, or a
+     * full snapshot if it saw nothing of this match or is further behind
+     * than the ring reaches. Must be called with the lock held.
+     */
+    private void catchUp(ClientHandler client, int lastSeq) {
+        if (lastSeq < matchStartSeq || lastSeq > seq || seq - lastSeq > REPLAY_MOVES) {
+            client.sendSnapshot(seq, board);
+            return;
+        }
+        int size = spec.getSize();
+        for (int s = lastSeq + 1; s <= seq; s++) {
+            int move = recentMoves[s % REPLAY_MOVES];
+            int cell = move >>> 8;
+            char symbol = (char) (move & 0xFF);
+            frame.encodeMove(getPlayerId(symbol), cell / size, cell % size, symbol, s);
+            client.sendFrame(frame);
+        }
+    }
+    
+    /**
+     * Adds a chat line to the history and the current players and spectators
+     * to receivers, who the ChatLane then sends it to. Returns false if the
+     * room has been closed.
+     */
+    boolean recordChat(String line, List<ClientHandler> receivers) {
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            if (chatHistory == null) {
+                chatHistory = new String[CHAT_HISTORY];
+            }
+            chatHistory[chatLines++ % CHAT_HISTORY] = line;
+            receivers.addAll(clients);
+            receivers.addAll(spectators);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Sends a client the chat lines from line number from on, as far back as
+     * the history goes. Must be called with the lock held.
+     */
+    private void replayChat(ClientHandler client, int from) {
+        for (int n = Math.max(from, chatLines - CHAT_HISTORY); n < chatLines; n++) {
+            client.sendText(MessageType.CHAT, chatHistory[n % CHAT_HISTORY]);
+        }
+    }
+    
+    // Must be called with the lock held
+    private int heldSeat(int playerId) {
+        for (int i = 0; i < heldSeats.length; i++) {
+            if (heldSeats[i] == playerId) return i;
+        }
+        return -1;
+    }
+    
+    /**
+     * Appends this room's record for SnapshotStore: room, match, sequence
+     * number, players X and O, board size and win length, whose turn it is,
+     * whether a match is on, then the board row by row. Writes nothing and
+     * returns false if the room holds nothing to recover.
+     */
+    boolean snapshot(ByteBuffer out) {
+        lock.lock();
+        try {
+            // Nothing to recover before the first match; matchId alone would not tell without a journal
+            if (closed || seq == 0) {
+                return false;
+            }
+            out.putInt(roomId);
+            out.putInt(matchId);
+            out.putInt(seq);
+            out.putInt(getPlayerId('X'));
+            out.putInt(getPlayerId('O'));
+            out.put((byte) spec.getSize());
+            out.put((byte) spec.getWinLength());
+            out.put((byte) currentPlayer);
+            out.put((byte) (gameActive ? 1 : 0));
+            int size = spec.getSize();
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    out.put((byte) board.cellAt(i, j));
+                }
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Writes this room's record (see snapshot) for another node to carry
+     * on with, and closes the room here without ending its match: players
+     * and spectators are told it is moving, and their connections are left
+     * for the server to close. Returns false, writing nothing, if the room
+     * holds nothing worth moving.
+     */
+    boolean handOff(ByteBuffer out) {
+        lock.lock();
+        try {
+            if (!snapshot(out)) {
+                return false;
+            }
+            broadcastText(MessageType.RESULTADO, "Este servidor vai ser desligado; a partida continua em outro. Reconectando...");
+            closed = true;
+            gameActive = false;
+            if (rematch != null) {
+                rematch.cancel(false);
+                rematch = null;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Records that another node took over the room after handOff, so a
+     * restart from this node's journal does not bring it back too.
+     */
+    void handedOff() {
+        lock.lock();
+        try {
+            if (journal != null && matchId != 0) {
+                journal.roomClosed(matchId, roomId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    // Must be called with the lock held
+    private void startGame() {
+        if (!gameActive && clients.size() >= MAX_PLAYERS) {
+            gameActive = true;
+            board.reset();
+            seq++;
+            matchStartSeq = seq;
+            currentPlayer = 'X';
+            if (journal != null) {
+                matchId = journal.matchStarted(roomId, seq, spec, getPlayerId('X'), getPlayerId('O'));
+            }
+            // The room number is what spectators ask for with ASSISTIR
+            String start = "O jogo começou na sala " + roomId + "!";
+            if (!spec.isClassic()) {
+                start += " Tabuleiro " + spec + ".";
+            }
+            if (turnTimeoutNanos > 0) {
+                start += " Cada jogada tem até " + TimeUnit.NANOSECONDS.toSeconds(turnTimeoutNanos) + " s.";
+            }
+            broadcastText(MessageType.JOGO_INICIADO, start + " Jogador X começa.");
+            sendBoardState();
+            startTurnClock();
+        }
+    }
+    
+    public void processMove(int playerId, int row, int col) {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            applyMove(playerId, row, col);
+        } finally {
+            lock.unlock();
+        }
+        metrics.moveProcessed(System.nanoTime() - start);
+    }
+    
+    private void applyMove(int playerId, int row, int col) {
+        if (!gameActive) return;
+        
+        if (heldCount > 0) {
+            // Paused until everybody is back
+            tell(playerId, "Aguardando o adversário voltar.");
+            return;
+        }
+        
+        ClientHandler currentPlayerHandler = getCurrentPlayerHandler();
+        if (currentPlayerHandler == null || currentPlayerHandler.getPlayerId() != playerId) {
+            // Not current player's turn
+            tell(playerId, "Não é sua vez!");
+            return;
+        }
+        
+        if (!board.canPlace(row, col)) {
+            // Invalid move
+            currentPlayerHandler.sendText(MessageType.RESULTADO, "Jogada inválida! Tente novamente.");
+            return;
+        }
+        
+        // Make the move; clients apply it to their own copy of the board
+        boolean won = board.place(row, col, currentPlayer);
+        seq++;
+        int cell = row * spec.getSize() + col;
+        recentMoves[seq % REPLAY_MOVES] = cell << 8 | currentPlayer;
+        if (journal != null) {
+            journal.move(matchId, roomId, seq, playerId, cell, currentPlayer);
+        }
+        broadcastMove(playerId, row, col);
+        
+        // Check for win or draw
+        if (won) {
+            journalEnd(MoveJournal.RESULT_WIN, playerId);
+            broadcastText(MessageType.FIM_JOGO, "Vitória do jogador " + currentPlayer + "!");
+            resetGame();
+        } else if (board.isFull()) {
+            journalEnd(MoveJournal.RESULT_DRAW, 0);
+            broadcastText(MessageType.FIM_JOGO, "Empate! O tabuleiro está cheio.");
+            resetGame();
+        } else {
+            // Switch player
+            switchPlayer();
+            turnStarted = System.nanoTime();
+            // By ID, since the player may have dropped and not been taken out of the seat yet
+            broadcastTurn(getPlayerId(currentPlayer));
+        }
+    }
+    
+    // The lookups and broadcasts on the move path use indexed loops so a move allocates nothing
+    
+    private ClientHandler getCurrentPlayerHandler() {
+        for (int i = 0; i < clients.size(); i++) {
+            ClientHandler handler = clients.get(i);
+            if (handler.getSymbol() == currentPlayer) {
+                return handler;
+            }
+        }
+        return null;
+    }
+    
+    // ID of the player with the given symbol, held seats included; 0 if that seat is empty
+    private int getPlayerId(char symbol) {
+        for (int i = 0; i < clients.size(); i++) {
+            ClientHandler handler = clients.get(i);
+            if (handler.getSymbol() == symbol) {
+                return handler.getPlayerId();
+            }
+        }
+        return heldSeats[symbol == 'X' ? 0 : 1];
+    }
+    
+    // Must be called with the lock held
+    private void journalEnd(byte result, int winner) {
+        if (journal != null) {
+            journal.matchEnded(matchId, roomId, seq, result, winner);
+        }
+    }
+    
+    // Answers a player who is still seated; one who just left gets nothing
+    private void tell(int playerId, String text) {
+        for (int i = 0; i < clients.size(); i++) {
+            ClientHandler handler = clients.get(i);
+            if (handler.getPlayerId() == playerId) {
+                handler.sendText(MessageType.RESULTADO, text);
+                return;
+            }
+        }
+    }
+    
+    // Must be called with the lock held
+    private void broadcastMove(int playerId, int row, int col) {
+        frame.encodeMove(playerId, row, col, currentPlayer, seq);
+        broadcastFrame();
+    }
+    
+    // Must be called with the lock held
+    private void broadcastTurn(int playerId) {
+        frame.encodeInt(MessageType.TURNO, playerId);
+        broadcastFrame();
+    }
+    
+    /**
+     * Sends the event just encoded into the frame to every player and
+     * spectator; each gets the bytes for its own protocol. Spectators whose
+     * send fails are dropped. A player keeps its seat: a failed send means
+     * its connection is closing, and the server's disconnect path then
+     * holds the seat or closes the room (removeClient). Must be called with
+     * the lock held.
+     */
+    private void broadcastFrame() {
+        long start = System.nanoTime();
+        int receivers = clients.size() + spectators.size();
+        for (int i = 0; i < clients.size(); i++) {
+            clients.get(i).sendFrame(frame);
+        }
+        for (int i = 0; i < spectators.size(); i++) {
+            if (!spectators.get(i).sendFrame(frame)) {
+                // Spectator disconnected
+                spectators.remove(i--);
+            }
+        }
+        metrics.fanOut(System.nanoTime() - start);
+        metrics.messagesSent(frame.type(), receivers);
+    }
+    
+    // Must be called with the lock held
+    private void startTurnClock() {
+        turnStarted = System.nanoTime();
+        if (turnTimeoutNanos > 0 && !onTimerWheel) {
+            onTimerWheel = true;
+            timers.add(this);
+        }
+    }
+    
+    /**
+     * Turn clock, run by the server's timer wheel: ends the match in favour
+     * of the opponent once the current player has used up the turn. The room
+     * leaves the wheel when no match is being played.
+     */
+    @Override
+    public long expire(long now) {
+        lock.lock();
+        try {
+            // A paused match gets a fresh turn once it resumes
+            if (closed || !gameActive || heldCount > 0) {
+                onTimerWheel = false;
+                return TimerWheel.DONE;
+            }
+            long deadline = turnStarted + turnTimeoutNanos;
+            if (now - deadline < 0) {
+                return deadline;
+            }
+            char late = currentPlayer;
+            switchPlayer();
+            journalEnd(MoveJournal.RESULT_TIMEOUT, getPlayerId(currentPlayer));
+            broadcastText(MessageType.FIM_JOGO, "Tempo esgotado para o jogador " + late + ". Vitória do jogador " + currentPlayer + "!");
+            resetGame();
+            onTimerWheel = false;
+            return TimerWheel.DONE;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void switchPlayer() {
+        currentPlayer = (currentPlayer == 'X') ? 'O' : 'X';
+    }
+    
+    /**
+     * Full snapshot, only sent when a match starts. After that clients get
+     * just the moves and ask for a snapshot (RESYNC) if they miss one.
+     */
+    private void sendBoardState() {
+        frame.encodeSnapshot(seq, board);
+        broadcastFrame();
+    }
+    
+    public void sendSnapshot(ClientHandler client) {
+        lock.lock();
+        try {
+            client.sendSnapshot(seq, board);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Sends a client the whole current state, snapshot plus whose turn it
+     * is, in place of the messages it had queued. Used when its outbound
+     * queue overflows and is coalesced.
+     */
+    public void resendState(ClientHandler client) {
+        lock.lock();
+        try {
+            client.sendSnapshot(seq, board);
+            ClientHandler currentPlayerHandler = getCurrentPlayerHandler();
+            if (gameActive && currentPlayerHandler != null) {
+                client.sendTurn(currentPlayerHandler.getPlayerId());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public void broadcastText(MessageType type, String text) {
+        lock.lock();
+        try {
+            frame.encodeText(type, text);
+            broadcastFrame();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Removes a player from the room. If a match was in progress it is
+     * interrupted and the room is closed; the remaining players are returned
+     * so the server can seat them in a new room. Spectators are told and let
+     * go.
+     */
+    public List<ClientHandler> removePlayer(ClientHandler client) {
+        lock.lock();
+        try {
+            if (closed) {
+                return Collections.emptyList();
+            }
+            clients.remove(client);
+            return close("Um jogador saiu. Jogo interrompido.");
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Closes the room, interrupting the match if one is on, and returns the
+     * players still in it. Must be called with the lock held.
+     */
+    private List<ClientHandler> close(String reason) {
+        if (gameActive) {
+            journalEnd(MoveJournal.RESULT_INTERRUPTED, 0);
+            broadcastText(MessageType.JOGADOR_SAIU, reason);
+            gameActive = false;
+        } else if (journal != null && matchId != 0) {
+            journal.roomClosed(matchId, roomId);
+        }
+        closed = true;
+        Arrays.fill(heldSeats, 0);
+        heldCount = 0;
+        if (rematch != null) {
+            rematch.cancel(false);
+            rematch = null;
+        }
+        for (ClientHandler spectator : spectators) {
+            spectator.setWatching(null);
+            spectator.sendText(MessageType.RESULTADO, "A transmissão da sala " + roomId + " terminou. Envie ASSISTIR para ver outra partida.");
+        }
+        spectators.clear();
+        List<ClientHandler> remaining = new ArrayList<>(clients);
+        clients.clear();
+        return remaining;
+    }
+    
+    // Must be called with the lock held
+    private void resetGame() {
+        gameActive = false;
+        rematch = scheduler.schedule(this::restartGame, REMATCH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    
+    private void restartGame() {
+        lock.lock();
+        try {
+            rematch = null;
+            // Only restart if we still have 2 players
+            if (!closed && clients.size() >= MAX_PLAYERS) {
+                startGame();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,489 @@
+package jogo;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * The one address players connect to when several Servidor nodes share the
+ * load (see Cluster). Each connection is relayed byte for byte to a node;
+ * the gateway decodes what the client sends only to see where it belongs:
+ * - a new player goes where somebody is waiting for an opponent, so that
+ *   players spread over several nodes still meet, and otherwise to the
+ *   node with the fewest players relayed to it;
+ * - RETOMAR goes to the node holding the player's seat: the one that handed
+ *   out the player ID in the token, or whichever node adopted its room when
+ *   that one shut down;
+ * - ASSISTIR goes to the node that has the room, by room ID the same way.
+ *
+ * Moving a client to another node opens a new connection there and closes
+ * the old one. The new node's greeting (ID_JOGADOR and SESSAO, and
+ * BINARIO|OK for a client on binary frames, which the gateway asks for on
+ * its behalf) is swallowed, and the command that caused the move is the
+ * first thing the node gets from the client.
+ */
+public class Gateway {
+    private static final int PORT = 12345;
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    // A node that refused a connection is left alone this long
+    private static final long DOWN_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int READ_BUFFER_SIZE = 4096;
+    
+    private final int port;
+    private final InetSocketAddress[] nodes;
+    private final Cluster cluster;
+    private final ExecutorService threads;
+    // Connections open to each node through this gateway
+    private final AtomicInteger[] relayed;
+    // System.nanoTime() of each node's last failed connect, 0 if none
+    private final AtomicLongArray failedAt;
+    // Players and rooms a node adopted from another that shut down
+    private final ConcurrentHashMap<Integer, Integer> movedPlayers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Integer> movedRooms = new ConcurrentHashMap<>();
+    // Node the last new player was sent to with nobody there to play, -1 if none; guarded by this
+    private int lonelyNode = -1;
+    private volatile ServerSocket serverSocket;
+    
+    public Gateway(int port, InetSocketAddress[] nodes, ClusterBus bus) {
+        this.port = port;
+        this.nodes = nodes;
+        // The gateway is the bus member after the nodes
+        this.cluster = new Cluster(nodes.length, nodes.length, bus);
+        this.threads = Servidor.newVirtualThreadExecutor();
+        this.relayed = new AtomicInteger[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            relayed[i] = new AtomicInteger();
+        }
+        this.failedAt = new AtomicLongArray(nodes.length);
+    }
+    
+    public void start() throws IOException {
+        cluster.start(new ClusterEvents());
+        try (ServerSocket listener = new ServerSocket(port)) {
+            serverSocket = listener;
+            System.out.println("Gateway na porta " + port + " para " + nodes.length + " nós");
+            if (threads instanceof ThreadPoolExecutor) {
+                System.err.println("AVISO: sem threads virtuais nesta JVM (Java " + Runtime.version().feature()
+                        + "); cada conexão ocupa duas threads de plataforma no gateway.");
+            }
+            while (true) {
+                Socket client = listener.accept();
+                client.setTcpNoDelay(true);
+                threads.execute(new Relay(client));
+            }
+        } catch (SocketException e) {
+            // Closed by stop; anything else is the caller's to report
+            if (serverSocket == null || !serverSocket.isClosed()) throw e;
+        } finally {
+            cluster.close();
+        }
+    }
+    
+    /**
+     * Stops taking connections and leaves the bus. Clients already relayed
+     * stay connected to their nodes until either side closes.
+     */
+    public void stop() {
+        ServerSocket current = serverSocket;
+        if (current == null) return;
+        try {
+            current.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar o gateway: " + e.getMessage());
+        }
+    }
+    
+    private boolean isUp(int node) {
+        long failed = failedAt.get(node);
+        return (failed == 0 || System.nanoTime() - failed > DOWN_NANOS) && !cluster.isDraining(node);
+    }
+    
+    /**
+     * The node for a player who just connected. Players are sent two by
+     * two: the first to the least busy node, the second after it, so they
+     * meet there. A node reporting a player waiting (one whose opponent
+     * left, say) gets the next newcomer as well. The connection is counted
+     * on the node right away, so a burst of players is spread too.
+     */
+    private synchronized int pickNode() {
+        int node = -1;
+        if (lonelyNode >= 0 && isUp(lonelyNode)) {
+            node = lonelyNode;
+            lonelyNode = -1;
+        }
+        for (int i = 0; i < nodes.length && node < 0; i++) {
+            if (cluster.getWaiting(i) > 0 && isUp(i)) {
+                node = i;
+            }
+        }
+        if (node < 0) {
+            for (int i = 0; i < nodes.length; i++) {
+                if (isUp(i) && (node < 0 || relayed[i].get() < relayed[node].get())) {
+                    node = i;
+                }
+            }
+            lonelyNode = node;
+        }
+        if (node >= 0) {
+            relayed[node].incrementAndGet();
+        }
+        return node;
+    }
+    
+    private int nodeOfPlayer(int playerId) {
+        Integer moved = movedPlayers.get(playerId);
+        return moved != null ? moved : Cluster.nodeOf(playerId, nodes.length);
+    }
+    
+    private int nodeOfRoom(int roomId) {
+        Integer moved = movedRooms.get(roomId);
+        return moved != null ? moved : Cluster.nodeOf(roomId, nodes.length);
+    }
+    
+    /**
+     * One client and the connection to the node it is on at the moment.
+     * The client's thread reads what it sends and forwards it command by
+     * command; each node connection has a thread copying back to the client.
+     */
+    private final class Relay implements Runnable, CommandHandler {
+        private final Socket client;
+        private volatile Backend backend;
+        private WireProtocol protocol = TextProtocol.INSTANCE;
+        // Set by the decoder callbacks for the command being looked at
+        private int destination;
+        private boolean binaryRequested;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        
+        Relay(Socket client) {
+            this.client = client;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                // A node that does not answer is skipped for a while, so each try picks another
+                for (int tries = 0; backend == null && tries < nodes.length; tries++) {
+                    int node = pickNode();
+                    if (node < 0) break;
+                    backend = connect(node, false);
+                    if (backend == null) relayed[node].decrementAndGet();
+                }
+                if (backend == null) return;
+                threads.execute(backend);
+                InputStream in = client.getInputStream();
+                ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+                while (true) {
+                    int read = in.read(buffer.array(), buffer.position(), buffer.remaining());
+                    if (read < 0) break;
+                    buffer.position(buffer.position() + read);
+                    buffer.flip();
+                    forwardCommands(buffer);
+                    buffer.compact();
+                    buffer = WireProtocol.ensureSpace(buffer);
+                    if (buffer == null) break;
+                }
+            } catch (IOException e) {
+                // Either side went away
+            } finally {
+                close();
+            }
+        }
+        
+        private void forwardCommands(ByteBuffer buffer) throws IOException {
+            while (true) {
+                int start = buffer.position();
+                destination = -1;
+                if (!protocol.decodeCommand(buffer, this)) break;
+                if (destination >= 0 && destination != backend.node && isUp(destination)) {
+                    moveTo(destination);
+                }
+                backend.out.write(buffer.array(), start, buffer.position() - start);
+                if (binaryRequested) {
+                    // Everything after the request is binary, as on the node
+                    protocol = BinaryProtocol.INSTANCE;
+                    binaryRequested = false;
+                }
+            }
+            backend.out.flush();
+        }
+        
+        private void moveTo(int node) throws IOException {
+            Backend next = connect(node, true);
+            // If it cannot be reached the current node answers instead
+            if (next == null) return;
+            relayed[node].incrementAndGet();
+            // Commands already read go out to the node they were meant for
+            backend.out.flush();
+            Backend previous;
+            synchronized (this) {
+                previous = backend;
+                backend = next;
+            }
+            threads.execute(next);
+            previous.close();
+        }
+        
+        /**
+         * Opens a connection to a node, to be started once it is the relay's
+         * current one and counted in relayed by the caller. Returns null if
+         * the node cannot be reached.
+         *
+         * @param moving whether the client already had a greeting from
+         *               another node, so this one's is swallowed
+         */
+        private Backend connect(int node, boolean moving) throws IOException {
+            Socket socket = new Socket();
+            try {
+                socket.connect(nodes[node], CONNECT_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+            } catch (IOException e) {
+                socket.close();
+                failedAt.set(node, System.nanoTime());
+                System.err.println("Nó " + node + " (" + nodes[node] + ") não responde: " + e.getMessage());
+                return null;
+            }
+            boolean binary = protocol == BinaryProtocol.INSTANCE;
+            Backend connection = new Backend(node, socket, !moving ? null : binary ? MessageType.BINARIO : MessageType.SESSAO);
+            if (moving && binary) {
+                ByteBuffer request = ByteBuffer.allocate(16);
+                TextProtocol.INSTANCE.writeBinaryRequest(request);
+                connection.out.write(request.array(), 0, request.position());
+            }
+            return connection;
+        }
+        
+        // Called by the node connection that is still current
+        private synchronized void toClient(Backend from, byte[] bytes, int offset, int length) throws IOException {
+            if (backend != from) throw new EOFException();
+            client.getOutputStream().write(bytes, offset, length);
+        }
+        
+        private void close() {
+            if (!closed.compareAndSet(false, true)) return;
+            try {
+                client.close();
+            } catch (IOException e) {
+                // Nothing left to do with it
+            }
+            Backend current = backend;
+            if (current != null) current.close();
+        }
+        
+        // Only RETOMAR, ASSISTIR and BINARIO matter here; the node handles everything
+        
+        @Override
+        public void onResume(String token, int lastSeq) {
+            int playerId = SessionTokens.playerOf(token);
+            if (playerId > 0) destination = nodeOfPlayer(playerId);
+        }
+        
+        @Override
+        public void onWatch(int roomId) {
+            if (roomId > 0) destination = nodeOfRoom(roomId);
+        }
+        
+        @Override
+        public void onBinaryRequest() {
+            binaryRequested = true;
+        }
+        
+        @Override
+        public void onMove(int row, int col) {
+        }
+        
+        @Override
+        public void onChat(String text) {
+        }
+        
+        @Override
+        public void onBoardRequest(int size, int winLength) {
+        }
+        
+        @Override
+        public void onResync() {
+        }
+        
+        @Override
+        public void onPing(int token) {
+        }
+        
+        @Override
+        public void onPong(int token) {
+        }
+        
+        @Override
+        public void onInvalid(String reason) {
+        }
+        
+        @Override
+        public void onUnknown(String command) {
+        }
+        
+        /**
+         * A connection to one node, copying what the node sends to the
+         * client for as long as it is the relay's current one.
+         */
+        private final class Backend implements Runnable, EventHandler {
+            final int node;
+            final Socket socket;
+            final OutputStream out;
+            // The greeting message to swallow up to, or null to pass everything on
+            private final MessageType greetingEnd;
+            private boolean greeted;
+            
+            Backend(int node, Socket socket, MessageType greetingEnd) throws IOException {
+                this.node = node;
+                this.socket = socket;
+                this.out = new BufferedOutputStream(socket.getOutputStream(), READ_BUFFER_SIZE);
+                this.greetingEnd = greetingEnd;
+                this.greeted = greetingEnd == null;
+            }
+            
+            @Override
+            public void run() {
+                try {
+                    InputStream in = socket.getInputStream();
+                    byte[] bytes = new byte[READ_BUFFER_SIZE];
+                    if (!greeted) swallowGreeting(in);
+                    int read;
+                    while ((read = in.read(bytes)) >= 0) {
+                        toClient(this, bytes, 0, read);
+                    }
+                } catch (IOException e) {
+                    // The node went away, or this connection was replaced
+                } finally {
+                    close();
+                    relayed[node].decrementAndGet();
+                    // The client goes with its node, unless it already moved on
+                    if (backend == this) Relay.this.close();
+                }
+            }
+            
+            // The greeting is always text: a binary switch starts right after its end
+            private void swallowGreeting(InputStream in) throws IOException {
+                ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+                while (true) {
+                    int read = in.read(buffer.array(), buffer.position(), buffer.remaining());
+                    if (read < 0) throw new EOFException();
+                    buffer.position(buffer.position() + read);
+                    buffer.flip();
+                    while (!greeted && TextProtocol.INSTANCE.decodeEvent(buffer, this)) {
+                        // Dropped
+                    }
+                    if (greeted) {
+                        toClient(this, buffer.array(), buffer.position(), buffer.remaining());
+                        return;
+                    }
+                    buffer.compact();
+                    buffer = WireProtocol.ensureSpace(buffer);
+                    if (buffer == null) throw new EOFException();
+                }
+            }
+            
+            void close() {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Nothing left to do with it
+                }
+            }
+            
+            @Override
+            public void onText(MessageType type, String text) {
+                if (type == greetingEnd) greeted = true;
+            }
+            
+            @Override
+            public void onPlayerId(int playerId) {
+            }
+            
+            @Override
+            public void onSymbol(char symbol) {
+            }
+            
+            @Override
+            public void onSnapshot(int seq, char[][] cells) {
+            }
+            
+            @Override
+            public void onMove(int playerId, int row, int col, char symbol, int seq) {
+            }
+            
+            @Override
+            public void onTurn(int playerId) {
+            }
+            
+            @Override
+            public void onPing(int token) {
+            }
+            
+            @Override
+            public void onPong(int token) {
+            }
+            
+            @Override
+            public void onUnknown(String message) {
+            }
+        }
+    }
+    
+    /**
+     * What the gateway hears from the nodes besides their lobby reports,
+     * which Cluster keeps: which node took over which room.
+     */
+    private final class ClusterEvents implements Cluster.Listener {
+        @Override
+        public void onLobbyChat(int playerId, String text) {
+        }
+        
+        @Override
+        public void onHandOff(SnapshotStore.RoomState state) {
+        }
+        
+        @Override
+        public void onAdopted(int node, int roomId, int playerX, int playerO) {
+            movedRooms.put(roomId, node);
+            movedPlayers.put(playerX, node);
+            movedPlayers.put(playerO, node);
+            System.out.println("Sala " + roomId + " agora no nó " + node);
+        }
+    }
+    
+    public static void main(String[] args) {
+        // java Gateway --nos 127.0.0.1:12346,127.0.0.1:12347 [--porta 12345] [--barramento 12400]
+        int port = PORT;
+        int busPort = LoopbackBus.DEFAULT_BASE_PORT;
+        String nodeList = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("--nos".equals(args[i]) && i + 1 < args.length) {
+                nodeList = args[++i];
+            } else if ("--porta".equals(args[i]) && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if ("--barramento".equals(args[i]) && i + 1 < args.length) {
+                busPort = Integer.parseInt(args[++i]);
+            }
+        }
+        if (nodeList == null) {
+            System.err.println("Uso: java jogo.Gateway --nos host:porta,host:porta,... [--porta p] [--barramento p]");
+            return;
+        }
+        
+        String[] addresses = nodeList.split(",");
+        InetSocketAddress[] nodes = new InetSocketAddress[addresses.length];
+        for (int i = 0; i < addresses.length; i++) {
+            int colon = addresses[i].lastIndexOf(':');
+            if (colon <= 0) {
+                System.err.println("Endereço de nó inválido: " + addresses[i] + " (use host:porta)");
+                return;
+            }
+            nodes[i] = new InetSocketAddress(addresses[i].substring(0, colon), Integer.parseInt(addresses[i].substring(colon + 1)));
+        }
+        try {
+            new Gateway(port, nodes, new LoopbackBus(busPort, nodes.length, nodes.length + 1)).start();
+        } catch (IOException e) {
+            System.err.println("Erro no gateway: " + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
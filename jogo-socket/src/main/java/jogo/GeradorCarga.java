@@ -0,0 +1,196 @@
+package jogo;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Headless load generator: connects many bot players to a server on this
+ * machine and lets them play each other. Every bot is a Cliente running
+ * without keyboard or console, so the traffic is exactly what real clients
+ * send. Once all bots are in, it prints the moves per second and the
+ * move-to-ack latency (from sending JOGADA to receiving our own MOVIMENTO
+ * back) every second, and the whole latency distribution at the end.
+ */
+public class GeradorCarga {
+    private static final long REPORT_INTERVAL_MILLIS = 1000;
+    // Chat is spread over the second in ticks this long
+    private static final long CHAT_TICK_MILLIS = 100;
+    private static final double[] PERCENTILES = {50, 75, 90, 99, 99.9, 99.99};
+    
+    private final int botCount;
+    private final int size;
+    private final int winLength;
+    private final boolean binary;
+    private final long thinkMillis;
+    private final double chatPerSecond;
+    private final ScheduledExecutorService scheduler;
+    private final List<Cliente> bots;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    // Reset at every report
+    private final LatencyHistogram recent = new LatencyHistogram();
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder games = new LongAdder();
+    private final LongAdder chats = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+    // Fractional chat messages owed by the ticks so far
+    private double chatDebt;
+    private int nextChatter;
+    
+    /**
+     * @param size          board size the bots ask for, 0 for the server default
+     * @param winLength     symbols in a row needed to win, 0 for the server default
+     * @param thinkMillis   how long a bot waits before sending its move
+     * @param chatPerSecond chat messages each bot sends per second, on average
+     */
+    public GeradorCarga(int botCount, int size, int winLength, boolean binary,
+                        long thinkMillis, double chatPerSecond) {
+        this.botCount = botCount;
+        this.size = size;
+        this.winLength = winLength;
+        this.binary = binary;
+        this.thinkMillis = thinkMillis;
+        this.chatPerSecond = chatPerSecond;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "carga");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.bots = new ArrayList<>(botCount);
+    }
+    
+    /**
+     * Connects the bots, then reports once a second for the given number of
+     * seconds.
+     */
+    public void run(long durationSeconds) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        for (int i = 0; i < botCount; i++) {
+            Cliente bot = new Cliente(size, winLength, binary, this);
+            bot.startHeadless("bot-" + (i + 1));
+            bots.add(bot);
+        }
+        System.out.println(botCount + " jogadores conectados em "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        
+        if (chatPerSecond > 0) {
+            scheduler.scheduleAtFixedRate(this::chat, CHAT_TICK_MILLIS, CHAT_TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        
+        long lastMoves = 0;
+        for (long second = 1; second <= durationSeconds; second++) {
+            Thread.sleep(REPORT_INTERVAL_MILLIS);
+            long total = moves.sum();
+            System.out.printf("%4d s  jogadas/s %8d  p50 %s  p99 %s  p99.9 %s  máx %s  desconectados %d%n",
+                    second, total - lastMoves, millis(recent.percentile(50)), millis(recent.percentile(99)),
+                    millis(recent.percentile(99.9)), millis(recent.max()), disconnected.sum());
+            recent.reset();
+            lastMoves = total;
+        }
+        
+        scheduler.shutdownNow();
+        report(durationSeconds);
+    }
+    
+    private void report(long durationSeconds) {
+        System.out.println();
+        System.out.println("Jogadas confirmadas: " + moves.sum() + " ("
+                + moves.sum() / Math.max(durationSeconds, 1) + "/s)");
+        System.out.println("Jogadas recusadas:   " + rejected.sum());
+        System.out.println("Partidas terminadas: " + games.sum() / 2);
+        System.out.println("Mensagens de chat:   " + chats.sum());
+        System.out.println("Conexões perdidas:   " + disconnected.sum());
+        System.out.println();
+        System.out.println("Latência jogada -> confirmação (ms):");
+        for (double percentile : PERCENTILES) {
+            System.out.printf("  p%-6s %s%n", format(percentile), millis(latency.percentile(percentile)));
+        }
+        System.out.printf("  %-7s %s%n", "máx", millis(latency.max()));
+    }
+    
+    private static String format(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+    
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%8.3f", nanos / 1_000_000.0);
+    }
+    
+    // Scheduler thread: sends this tick's share of chat, one message per bot in turn
+    private void chat() {
+        chatDebt += chatPerSecond * bots.size() * CHAT_TICK_MILLIS / 1000.0;
+        while (chatDebt >= 1) {
+            chatDebt--;
+            Cliente bot = bots.get(nextChatter);
+            nextChatter = (nextChatter + 1) % bots.size();
+            bot.sendChat("mensagem " + chats.sum());
+            chats.increment();
+        }
+    }
+    
+    /**
+     * Sends a bot's move now, or after the think time on the scheduler
+     * thread. Called from the bot's listener thread.
+     */
+    void play(Cliente bot, int row, int col) {
+        if (thinkMillis <= 0) {
+            bot.sendTimedMove(row, col);
+        } else {
+            scheduler.schedule(() -> bot.sendTimedMove(row, col), thinkMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    void moveAcknowledged(long nanos) {
+        latency.record(nanos);
+        recent.record(nanos);
+        moves.increment();
+    }
+    
+    void moveRejected() {
+        rejected.increment();
+    }
+    
+    // Each finished match is seen by both of its players
+    void gameOver() {
+        games.increment();
+    }
+    
+    void disconnected() {
+        disconnected.increment();
+    }
+    
+    public static void main(String[] args) throws Exception {
+        // java GeradorCarga [--jogadores n] [--duracao s] [--pensar ms] [--chat msgs/s] [--binario] [tamanho [sequencia]]
+        int botCount = 1000;
+        long duration = 30;
+        long think = 0;
+        double chat = 0;
+        boolean binary = false;
+        int size = 0;
+        int winLength = 0;
+        int positional = 0;
+        for (int i = 0; i < args.length; i++) {
+            if ("--jogadores".equals(args[i]) && i + 1 < args.length) {
+                botCount = Integer.parseInt(args[++i]);
+            } else if ("--duracao".equals(args[i]) && i + 1 < args.length) {
+                duration = Long.parseLong(args[++i]);
+            } else if ("--pensar".equals(args[i]) && i + 1 < args.length) {
+                think = Long.parseLong(args[++i]);
+            } else if ("--chat".equals(args[i]) && i + 1 < args.length) {
+                chat = Double.parseDouble(args[++i]);
+            } else if ("--binario".equals(args[i])) {
+                binary = true;
+            } else if (positional++ == 0) {
+                size = Integer.parseInt(args[i]);
+            } else {
+                winLength = Integer.parseInt(args[i]);
+            }
+        }
+        
+        GeradorCarga load = new GeradorCarga(botCount, size, winLength, binary, think, chat);
+        load.run(duration);
+        System.exit(0);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,100 @@
+package jogo;
+
+import java.util.*;
+
+/**
+ * N x N board where K symbols in a row win (gomoku is 15x15 with 5).
+ * Each move only scans the four lines through the cell just played, so
+ * the cost per move depends on K, not on the size of the board.
+ */
+final class GridBoard implements Board {
+    private static final byte EMPTY = 0;
+    private static final byte X = 1;
+    private static final byte O = 2;
+    
+    // Row/column steps for horizontal, vertical and both diagonals
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+    
+    private final int size;
+    private final int winLength;
+    private final byte[] cells;
+    private int moves;
+    
+    public GridBoard(int size, int winLength) {
+        this.size = size;
+        this.winLength = winLength;
+        this.cells = new byte[size * size];
+        this.moves = 0;
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public int winLength() {
+        return winLength;
+    }
+    
+    @Override
+    public boolean canPlace(int row, int col) {
+        return inBounds(row, col) && cells[row * size + col] == EMPTY;
+    }
+    
+    @Override
+    public boolean place(int row, int col, char player) {
+        byte value = player == 'X' ? X : O;
+        cells[row * size + col] = value;
+        moves++;
+        
+        for (int[] direction : DIRECTIONS) {
+            int count = 1
+                    + countFrom(row, col, direction[0], direction[1], value)
+                    + countFrom(row, col, -direction[0], -direction[1], value);
+            if (count >= winLength) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Counts matching cells walking away from (row, col), stopping once a win is certain
+    private int countFrom(int row, int col, int dRow, int dCol, byte value) {
+        int count = 0;
+        int r = row + dRow;
+        int c = col + dCol;
+        while (count < winLength - 1 && inBounds(r, c) && cells[r * size + c] == value) {
+            count++;
+            r += dRow;
+            c += dCol;
+        }
+        return count;
+    }
+    
+    private boolean inBounds(int row, int col) {
+        return row >= 0 && row < size && col >= 0 && col < size;
+    }
+    
+    @Override
+    public boolean isFull() {
+        return moves == cells.length;
+    }
+    
+    @Override
+    public int moves() {
+        return moves;
+    }
+    
+    @Override
+    public char cellAt(int row, int col) {
+        byte value = cells[row * size + col];
+        return value == X ? 'X' : value == O ? 'O' : '-';
+    }
+    
+    @Override
+    public void reset() {
+        Arrays.fill(cells, EMPTY);
+        moves = 0;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,46 @@
+package jogo;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Hands out player or room IDs. A server on its own numbers 1, 2, 3...; node
+ * k of a cluster of n takes every n-th number starting at k + 1, so the
+ * nodes never hand out the same ID and anyone can tell from an ID alone
+ * which node it came from (Cluster.nodeOf).
+ */
+final class IdSequence {
+    private final int node;
+    private final int nodes;
+    // Last ID handed out; below 1 before the first
+    private final AtomicInteger last;
+    
+    IdSequence() {
+        this(0, 1);
+    }
+    
+    IdSequence(int node, int nodes) {
+        this.node = node;
+        this.nodes = nodes;
+        this.last = new AtomicInteger(node + 1 - nodes);
+    }
+    
+    int next() {
+        return last.addAndGet(nodes);
+    }
+    
+    /**
+     * The last ID handed out or reserved, 0 if none.
+     */
+    int last() {
+        return Math.max(0, last.get());
+    }
+    
+    /**
+     * Makes sure IDs handed out from now on are above the given one.
+     */
+    void reserve(int id) {
+        // The largest ID of this node's series not above id
+        int aligned = id - Math.floorMod(id - 1 - node, nodes);
+        last.accumulateAndGet(aligned, Math::max);
+    }
+}
\ No newline at end of file
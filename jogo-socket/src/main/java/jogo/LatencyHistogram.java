@@ -0,0 +1,137 @@
+package jogo;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Latency histogram with HDR-style buckets: values below 256 are counted
+ * exactly and above that each power of two is split into 128 linear
+ * sub-buckets, so every recorded value keeps two significant digits (under
+ * 1% error) in 4352 counters. Recording is lock-free and may come from any
+ * number of threads.
+ *
+ * The counters are striped by thread, like a LongAdder, so threads
+ * recording at the same time rarely touch the same cache line; reading
+ * adds the stripes up, which is fine for reports but not for a hot path.
+ * With up to 16 stripes of 34 KB a histogram takes up to about 557 KB, so
+ * one that is read at intervals is reset rather than replaced.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 8;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    // Largest trackable value is just under 2^40, about 18 minutes in nanoseconds
+    private static final int MAX_BITS = 40;
+    private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+    private static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+    private static final int STRIPES = stripeCount();
+    
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+    private final AtomicLong max = new AtomicLong();
+    
+    public LatencyHistogram() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+    }
+    
+    // A power of two at least the number of processors, but no more than 16
+    private static int stripeCount() {
+        int processors = Math.min(Runtime.getRuntime().availableProcessors(), 16);
+        return Integer.highestOneBit(Math.max(processors * 2 - 1, 1));
+    }
+    
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // Keep the top SUB_BUCKET_BITS - 1 bits below the highest one
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        int sub = (int) (value >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_COUNT + (sub - HALF_COUNT);
+    }
+    
+    // Largest value that lands in the same bucket as the given index
+    private static long highestAt(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / HALF_COUNT + 1;
+        long sub = (index - SUB_BUCKET_COUNT) % HALF_COUNT + HALF_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+    
+    /**
+     * Counts one value; negative ones count as 0 and anything past the
+     * trackable range as the largest trackable value.
+     */
+    public void record(long value) {
+        long clamped = Math.min(Math.max(value, 0), MAX_VALUE);
+        stripes[(int) Thread.currentThread().getId() & (STRIPES - 1)].incrementAndGet(indexOf(clamped));
+        // Only a new maximum writes to the shared field
+        if (clamped > max.get()) {
+            max.accumulateAndGet(clamped, Math::max);
+        }
+    }
+    
+    // Counts of every bucket, added up over the stripes
+    private long[] snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return counts;
+    }
+    
+    /**
+     * Starts counting afresh. Values recorded while it runs may be kept or
+     * lost, which is fine for a histogram read once per interval.
+     */
+    public void reset() {
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                stripe.set(i, 0);
+            }
+        }
+        max.set(0);
+    }
+    
+    public long count() {
+        long total = 0;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                total += stripe.get(i);
+            }
+        }
+        return total;
+    }
+    
+    public long max() {
+        return max.get();
+    }
+    
+    /**
+     * Smallest bucket bound that at least the given percentage of the
+     * recorded values fall under, 0 if nothing was recorded.
+     */
+    public long percentile(double percent) {
+        long[] counts = snapshot();
+        long recorded = 0;
+        for (long count : counts) {
+            recorded += count;
+        }
+        if (recorded == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(percent / 100.0 * recorded));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= wanted) {
+                return Math.min(highestAt(i), max.get());
+            }
+        }
+        return max.get();
+    }
+}
\ No newline at end of file
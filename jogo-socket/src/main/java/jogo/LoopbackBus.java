@@ -0,0 +1,102 @@
+package jogo;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * A ClusterBus for members on the same machine: each member has a UDP port
+ * on the loopback interface, basePort + its member number, and a message is
+ * one datagram sent to each of the others. There is no broker and nothing
+ * to start first; a member that is not up yet just misses what is sent
+ * meanwhile. Loopback datagrams are not lost short of a full socket buffer,
+ * but a burst can fill one, so whoever must be heard (a hand-off) paces its
+ * messages and sends them again until they are answered.
+ */
+final class LoopbackBus implements ClusterBus, Runnable {
+    static final int DEFAULT_BASE_PORT = 12400;
+    // Larger than any message: a hand-off of the biggest board, a chat line
+    private static final int MAX_DATAGRAM = 16 * 1024;
+    // Asked for, not promised: the kernel caps it at net.core.rmem_max
+    private static final int RECEIVE_BUFFER = 4 * 1024 * 1024;
+    
+    private final int basePort;
+    private final int member;
+    private final int members;
+    private final InetSocketAddress[] peers;
+    private DatagramChannel channel;
+    private Receiver receiver;
+    
+    /**
+     * @param member  this member's number, from 0 to members - 1
+     * @param members how many members the bus has
+     */
+    LoopbackBus(int basePort, int member, int members) {
+        this.basePort = basePort;
+        this.member = member;
+        this.members = members;
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        peers = new InetSocketAddress[members];
+        for (int i = 0; i < members; i++) {
+            peers[i] = new InetSocketAddress(loopback, basePort + i);
+        }
+    }
+    
+    @Override
+    public void start(Receiver receiver) throws IOException {
+        this.receiver = receiver;
+        channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER);
+        channel.bind(peers[member]);
+        Thread thread = new Thread(this, "barramento");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    @Override
+    public void run() {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM);
+        while (channel.isOpen()) {
+            try {
+                buffer.clear();
+                channel.receive(buffer);
+                buffer.flip();
+                receiver.receive(buffer);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Erro no barramento: " + e.getMessage());
+            } catch (RuntimeException e) {
+                // A malformed message must not stop the bus
+                System.err.println("Mensagem inválida no barramento: " + e);
+            }
+        }
+    }
+    
+    @Override
+    public void publish(ByteBuffer message) {
+        for (int i = 0; i < members; i++) {
+            if (i == member) continue;
+            try {
+                channel.send(message.duplicate(), peers[i]);
+            } catch (IOException e) {
+                // Nobody on that port right now
+            }
+        }
+    }
+    
+    @Override
+    public void close() {
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar o barramento: " + e.getMessage());
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "UDP 127.0.0.1:" + basePort + "-" + (basePort + members - 1);
+    }
+}
\ No newline at end of file
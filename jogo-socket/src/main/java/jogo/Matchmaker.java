@@ -0,0 +1,243 @@
+package jogo;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * Pairs waiting players into rooms. Connections only append to a lock-free
+ * queue and unpark the worker, so a burst of connects never waits on the
+ * pairing itself; a single worker thread takes players two at a time and
+ * opens a room for each pair. Only players asking for the same board are
+ * paired together. With bots enabled, a player still alone after the bot
+ * delay is given a BotPlayer instead.
+ *
+ * Anything else that seats a player (a player taking back its seat after
+ * a restart) is handed to the same worker with submit, so it never races
+ * with a pairing of the same player.
+ */
+class Matchmaker implements Runnable {
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    
+    private final Servidor server;
+    private final long waitTimeoutNanos;
+    private final ConcurrentLinkedQueue<Ticket> queue;
+    private final ConcurrentLinkedQueue<Runnable> tasks;
+    private final AtomicInteger queueDepth;
+    private final LongAdder pairedCount;
+    private final LongAdder timedOutCount;
+    // Players held for an opponent on the default board after the last round (0 or 1),
+    // for the cluster's lobby report
+    private volatile int defaultWaiting;
+    private volatile boolean running;
+    private volatile Thread worker;
+    // How long a player waits before getting a bot; negative for no bots
+    private volatile long botDelayNanos = -1;
+    
+    /**
+     * @param waitTimeoutMillis how long a player may wait for an opponent
+     *                          before being dropped; 0 waits forever
+     */
+    public Matchmaker(Servidor server, long waitTimeoutMillis) {
+        this.server = server;
+        this.waitTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(waitTimeoutMillis);
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.queueDepth = new AtomicInteger();
+        this.pairedCount = new LongAdder();
+        this.timedOutCount = new LongAdder();
+    }
+    
+    public void start() {
+        running = true;
+        Thread thread = new Thread(this, "matchmaker");
+        thread.setDaemon(true);
+        worker = thread;
+        thread.start();
+    }
+    
+    public void stop() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+    
+    /**
+     * @param millis how long a player waits for a human opponent before
+     *               being given a bot; 0 gives every player a bot at once
+     */
+    public void setBotDelay(long millis) {
+        botDelayNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        LockSupport.unpark(worker);
+    }
+    
+    public void enqueue(ClientHandler client) {
+        BoardSpec spec = client.getBoardSpec();
+        if (spec.isClassic()) {
+            client.sendText(MessageType.AGUARDANDO, "Procurando um oponente...");
+        } else {
+            client.sendText(MessageType.AGUARDANDO, "Procurando um oponente (tabuleiro " + spec + ")...");
+        }
+        queue.offer(new Ticket(client, spec, client.nextQueueGeneration(), System.nanoTime()));
+        queueDepth.incrementAndGet();
+        LockSupport.unpark(worker);
+    }
+    
+    /**
+     * Runs a task on the worker thread, between two pairings.
+     */
+    public void submit(Runnable task) {
+        tasks.offer(task);
+        LockSupport.unpark(worker);
+    }
+    
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+    
+    /**
+     * Players waiting for an opponent on the server's default board, as of
+     * the worker's last round.
+     */
+    public int getDefaultWaiting() {
+        return defaultWaiting;
+    }
+    
+    public long getPairedCount() {
+        return pairedCount.sum();
+    }
+    
+    public long getTimedOutCount() {
+        return timedOutCount.sum();
+    }
+    
+    @Override
+    public void run() {
+        // At most one player per board spec is held while looking for an opponent.
+        // Only this thread touches the map, so it needs no locking.
+        Map<BoardSpec, Ticket> waiting = new HashMap<>();
+        
+        while (running) {
+            // A round's messages (a new room greets both players with several) go out
+            // together; the batch is closed before parking so nothing waits on it
+            boolean idle;
+            WriteBatch batch = WriteBatch.begin();
+            try {
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        System.err.println("Erro no matchmaker: " + e);
+                    }
+                }
+                idle = !pairNext(waiting);
+                defaultWaiting = waiting.containsKey(server.getDefaultSpec()) ? 1 : 0;
+            } finally {
+                batch.end();
+            }
+            if (idle) {
+                LockSupport.parkNanos(this, parkTime(waiting));
+            }
+        }
+    }
+    
+    /**
+     * Takes the next ticket off the queue and pairs it if it can. Returns
+     * false if the queue was empty.
+     */
+    private boolean pairNext(Map<BoardSpec, Ticket> waiting) {
+        Ticket next = queue.poll();
+        if (next == null) {
+            expireWaiting(waiting);
+            return false;
+        }
+        queueDepth.decrementAndGet();
+        
+        // Players who left or were requeued since are simply skipped
+        if (!next.isCurrent()) return true;
+        
+        Ticket opponent = waiting.remove(next.spec);
+        if (opponent == null || !opponent.isCurrent() || expire(opponent)) {
+            if (!offerBot(next)) {
+                waiting.put(next.spec, next);
+            }
+        } else {
+            server.openRoom(opponent.client, next.client, next.spec);
+            pairedCount.increment();
+        }
+        return true;
+    }
+    
+    private void expireWaiting(Map<BoardSpec, Ticket> waiting) {
+        Iterator<Ticket> iterator = waiting.values().iterator();
+        while (iterator.hasNext()) {
+            Ticket ticket = iterator.next();
+            if (!ticket.isCurrent() || expire(ticket) || offerBot(ticket)) {
+                iterator.remove();
+            }
+        }
+    }
+    
+    /**
+     * Drops the player if it has waited longer than the timeout. Returns
+     * true if it did.
+     */
+    private boolean expire(Ticket ticket) {
+        if (waitTimeoutNanos <= 0 || System.nanoTime() - ticket.enqueuedAt < waitTimeoutNanos) {
+            return false;
+        }
+        timedOutCount.increment();
+        ticket.client.sendText(MessageType.TEMPO_ESGOTADO, "Nenhum oponente encontrado. Tente novamente mais tarde.");
+        ticket.client.disconnect();
+        return true;
+    }
+    
+    /**
+     * Seats the player with a bot if it has waited at least the bot delay.
+     * Returns true if it did.
+     */
+    private boolean offerBot(Ticket ticket) {
+        long delay = botDelayNanos;
+        if (delay < 0 || System.nanoTime() - ticket.enqueuedAt < delay) {
+            return false;
+        }
+        server.openBotRoom(ticket.client, ticket.spec);
+        return true;
+    }
+    
+    private long parkTime(Map<BoardSpec, Ticket> waiting) {
+        long botDelay = botDelayNanos;
+        if (waiting.isEmpty() || (waitTimeoutNanos <= 0 && botDelay < 0)) return IDLE_PARK_NANOS;
+        long now = System.nanoTime();
+        long park = IDLE_PARK_NANOS;
+        for (Ticket ticket : waiting.values()) {
+            if (waitTimeoutNanos > 0) {
+                park = Math.min(park, ticket.enqueuedAt + waitTimeoutNanos - now);
+            }
+            if (botDelay >= 0) {
+                park = Math.min(park, ticket.enqueuedAt + botDelay - now);
+            }
+        }
+        return Math.max(1, park);
+    }
+    
+    private static class Ticket {
+        final ClientHandler client;
+        final BoardSpec spec;
+        final int generation;
+        final long enqueuedAt;
+        
+        Ticket(ClientHandler client, BoardSpec spec, int generation, long enqueuedAt) {
+            this.client = client;
+            this.spec = spec;
+            this.generation = generation;
+            this.enqueuedAt = enqueuedAt;
+        }
+        
+        boolean isCurrent() {
+            return client.isConnected() && client.getRoom() == null && client.getWatching() == null
+                    && client.getQueueGeneration() == generation;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,46 @@
+package jogo;
+
+/**
+ * Messages the server sends to clients. The constant name is the command
+ * used by the text protocol; the opcode identifies it in binary frames.
+ */
+enum MessageType {
+    ID_JOGADOR(0x01),
+    SIMBOLO(0x02),
+    AGUARDANDO(0x03),
+    JOGO_INICIADO(0x04),
+    ESTADO(0x05),
+    MOVIMENTO(0x06),
+    TURNO(0x07),
+    RESULTADO(0x08),
+    CHAT(0x09),
+    FIM_JOGO(0x0A),
+    JOGADOR_SAIU(0x0B),
+    TEMPO_ESGOTADO(0x0C),
+    SERVIDOR_CHEIO(0x0D),
+    BINARIO(0x0E),
+    PING(0x0F),
+    PONG(0x10),
+    SESSAO(0x11);
+    
+    private static final MessageType[] BY_OPCODE = new MessageType[256];
+    
+    static {
+        for (MessageType type : values()) {
+            BY_OPCODE[type.opcode] = type;
+        }
+    }
+    
+    final byte opcode;
+    
+    MessageType(int opcode) {
+        this.opcode = (byte) opcode;
+    }
+    
+    /**
+     * Returns the type for a binary opcode, or null if there is none.
+     */
+    static MessageType fromOpcode(int opcode) {
+        return BY_OPCODE[opcode & 0xFF];
+    }
+}
\ No newline at end of file
@@ -0,0 +1,194 @@
+package jogo;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Server counters and latency histograms, cheap enough to update on every
+ * move: counters are LongAdders and the histograms are striped, so threads
+ * serving different rooms do not contend on the same cache lines. Nothing
+ * here is read on the hot path; the stats port renders it on demand.
+ */
+final class Metrics {
+    /**
+     * What a client can send, for the per-command counters.
+     */
+    enum Command { JOGADA, CHAT, TABULEIRO, RESYNC, ASSISTIR, PING, PONG, RETOMAR, BINARIO, INVALIDO, DESCONHECIDO }
+    
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    
+    private final long started = System.nanoTime();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder socketWrites = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final LongAdder seatsHeld = new LongAdder();
+    private final LongAdder seatsResumed = new LongAdder();
+    private final LongAdder seatsAbandoned = new LongAdder();
+    private final LongAdder botRooms = new LongAdder();
+    private final LongAdder roomsHandedOff = new LongAdder();
+    private final LongAdder roomsAdopted = new LongAdder();
+    private final LongAdder chatLimited = new LongAdder();
+    private final LongAdder chatDropped = new LongAdder();
+    private final LongAdder[] received = adders(Command.values().length);
+    private final LongAdder[] sent = adders(MessageType.values().length);
+    private final LatencyHistogram moveLatency = new LatencyHistogram();
+    private final LatencyHistogram fanOutLatency = new LatencyHistogram();
+    private final LatencyHistogram botLatency = new LatencyHistogram();
+    // Totals at the last sample() and the per-second rates derived from them; only the scheduler writes these
+    private long lastAccepted;
+    private long lastMoves;
+    private volatile long acceptRate;
+    private volatile long moveRate;
+    
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+    
+    void connectionAccepted() {
+        accepted.increment();
+    }
+    
+    // One write call on a client socket, however many messages it carried
+    void bytesSent(long bytes) {
+        bytesSent.add(bytes);
+        socketWrites.increment();
+    }
+    
+    void bytesReceived(int bytes) {
+        bytesReceived.add(bytes);
+    }
+    
+    void outboundOverflow() {
+        overflows.increment();
+    }
+    
+    // A dropped player's seat was kept for it
+    void seatHeld() {
+        seatsHeld.increment();
+    }
+    
+    void seatResumed() {
+        seatsResumed.increment();
+    }
+    
+    // The player did not come back in time and its room closed
+    void seatAbandoned() {
+        seatsAbandoned.increment();
+    }
+    
+    // A player who waited too long was given a bot to play
+    void botRoomOpened() {
+        botRooms.increment();
+    }
+    
+    // Another node of the cluster took over a room while this one shut down
+    void roomHandedOff() {
+        roomsHandedOff.increment();
+    }
+    
+    // A room from a node that shut down carries on here
+    void roomAdopted() {
+        roomsAdopted.increment();
+    }
+    
+    // A CHAT refused because its connection went over the chat rate
+    void chatLimited() {
+        chatLimited.increment();
+    }
+    
+    // A chat line dropped because the ChatLane already had too many waiting
+    void chatDropped() {
+        chatDropped.increment();
+    }
+    
+    // Time the Solver took to choose one of a bot's moves
+    void botMoveChosen(long nanos) {
+        botLatency.record(nanos);
+    }
+    
+    void commandReceived(Command command) {
+        received[command.ordinal()].increment();
+    }
+    
+    void messagesSent(MessageType type, int count) {
+        sent[type.ordinal()].add(count);
+    }
+    
+    // Time a move spent in GameRoom.processMove, lock wait included
+    void moveProcessed(long nanos) {
+        moveLatency.record(nanos);
+    }
+    
+    // Time one room event took to reach the queues of all its players and spectators
+    void fanOut(long nanos) {
+        fanOutLatency.record(nanos);
+    }
+    
+    /**
+     * Turns the totals into per-second rates. Run once a second by the
+     * server's scheduler.
+     */
+    void sample() {
+        long acceptedNow = accepted.sum();
+        long movesNow = moveLatency.count();
+        acceptRate = acceptedNow - lastAccepted;
+        moveRate = movesNow - lastMoves;
+        lastAccepted = acceptedNow;
+        lastMoves = movesNow;
+    }
+    
+    /**
+     * Appends the counters in the Prometheus text format: one "name value"
+     * per line, with labels for the per-type counters and the quantiles.
+     */
+    void render(StringBuilder out) {
+        line(out, "tempo_ativo_segundos", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started));
+        line(out, "conexoes_aceitas_total", accepted.sum());
+        line(out, "conexoes_aceitas_por_segundo", acceptRate);
+        line(out, "fila_saida_excessos_total", overflows.sum());
+        line(out, "lugares_reservados_total", seatsHeld.sum());
+        line(out, "lugares_retomados_total", seatsResumed.sum());
+        line(out, "lugares_abandonados_total", seatsAbandoned.sum());
+        line(out, "salas_com_bot_total", botRooms.sum());
+        line(out, "salas_transferidas_total", roomsHandedOff.sum());
+        line(out, "salas_recebidas_total", roomsAdopted.sum());
+        line(out, "chat_limitadas_total", chatLimited.sum());
+        line(out, "chat_descartadas_total", chatDropped.sum());
+        line(out, "bytes_enviados_total", bytesSent.sum());
+        line(out, "escritas_socket_total", socketWrites.sum());
+        line(out, "bytes_recebidos_total", bytesReceived.sum());
+        line(out, "jogadas_por_segundo", moveRate);
+        histogram(out, "jogada_processamento_ns", moveLatency);
+        histogram(out, "difusao_ns", fanOutLatency);
+        histogram(out, "bot_jogada_ns", botLatency);
+        for (Command command : Command.values()) {
+            labelled(out, "mensagens_recebidas_total", "tipo", command.name(), received[command.ordinal()].sum());
+        }
+        for (MessageType type : MessageType.values()) {
+            labelled(out, "mensagens_enviadas_total", "tipo", type.name(), sent[type.ordinal()].sum());
+        }
+    }
+    
+    private static void histogram(StringBuilder out, String name, LatencyHistogram histogram) {
+        for (double quantile : QUANTILES) {
+            labelled(out, name, "quantil", String.valueOf(quantile), histogram.percentile(quantile * 100));
+        }
+        line(out, name + "_max", histogram.max());
+        line(out, name + "_count", histogram.count());
+    }
+    
+    static void line(StringBuilder out, String name, long value) {
+        out.append(name).append(' ').append(value).append('\n');
+    }
+    
+    private static void labelled(StringBuilder out, String name, String label, String labelValue, long value) {
+        out.append(name).append('{').append(label).append("=\"").append(labelValue).append("\"} ")
+                .append(value).append('\n');
+    }
+}
\ No newline at end of file
@@ -0,0 +1,446 @@
+package jogo;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.text.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Append-only journal of every match: when it started and between whom,
+ * each accepted move, and how it ended. Records have a fixed size and go
+ * into memory-mapped segment files, so appending is a few stores into the
+ * page cache: no system call, no lock beyond the room's own, no allocation.
+ * A background thread forces the pages to disk once a second and maps the
+ * next segment before the current one fills up, so a move never waits on
+ * the disk. Whatever was appended survives the server process dying; a
+ * crash of the machine loses at most the last second.
+ *
+ * Record layout, 32 bytes, big-endian:
+ * <pre>
+ *  0 byte  type: MATCH_STARTED, MOVE, PLACED, MATCH_ENDED or ROOM_CLOSED (0 marks unused space)
+ *  1 byte  MATCH_STARTED: board size; MOVE, PLACED: symbol; MATCH_ENDED: result (RESULT_*)
+ *  2 short MATCH_STARTED: win length; MOVE, PLACED: cell (row * size + col)
+ *  4 int   match number, unique within one run (ROOM_CLOSED: the room's last match)
+ *  8 int   room ID
+ * 12 int   sequence number of the board (MATCH_STARTED, MOVE and PLACED only)
+ * 16 int   MATCH_STARTED: player X; MOVE: player; MATCH_ENDED: winner, 0 for none
+ * 20 int   MATCH_STARTED: player O; PLACED: the symbol to move next
+ * 24 long  wall-clock time, milliseconds since the epoch
+ * </pre>
+ * Each server run writes its own series of files, named after the time it
+ * started: partidas-yyyyMMdd-HHmmss-00001.diario and so on. A server that
+ * recovers matches from a crash carries on with the run it recovered them
+ * from, in the next file, so a match can be followed across the restart.
+ * A match handed over by another node mid-game starts with its
+ * MATCH_STARTED at the sequence it arrived with, followed by one PLACED
+ * record per piece already on the board.
+ * Reprodutor reads them back, and so does SnapshotStore when recovering.
+ */
+final class MoveJournal implements Closeable {
+    static final int RECORD_SIZE = 32;
+    static final byte MATCH_STARTED = 1;
+    static final byte MOVE = 2;
+    static final byte MATCH_ENDED = 3;
+    // The players left between matches; nothing to recover in that room
+    static final byte ROOM_CLOSED = 4;
+    // A piece already on the board when the match arrived from another node
+    static final byte PLACED = 5;
+    static final byte RESULT_WIN = 'V';
+    static final byte RESULT_TIMEOUT = 'T';
+    static final byte RESULT_DRAW = 'E';
+    static final byte RESULT_INTERRUPTED = 'I';
+    static final String PREFIX = "partidas-";
+    static final String SUFFIX = ".diario";
+    // 2M records, about two million moves, per file
+    static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+    
+    private final Path directory;
+    private final String run;
+    private final int segmentRecords;
+    private final AtomicInteger nextMatch = new AtomicInteger();
+    private volatile Segment current;
+    // Mapped ahead of time by the flush thread; guarded by this
+    private Segment spare;
+    // Set while the flush thread is creating the spare's file; guarded by this
+    private boolean preparing;
+    // Full segments still to be forced and closed; guarded by this
+    private final List<Segment> retired = new ArrayList<>();
+    // Appends that found no room anywhere, e.g. after the disk filled up
+    private final AtomicLong lost = new AtomicLong();
+    private final Thread flusher;
+    // What the flush thread sleeps on between flushes, so close can wake it without an interrupt
+    private final Object flushPause = new Object();
+    private volatile boolean closed;
+    
+    /**
+     * Receives the records of a journal file in the order they were written.
+     */
+    interface Visitor {
+        void record(byte type, byte detail, int cell, int match, int roomId, int seq, int player, int other, long time);
+    }
+    
+    /**
+     * One mapped file. Writers reserve a slot with a single atomic add and
+     * then fill it in; slots past the end mean the segment is full.
+     */
+    private static final class Segment {
+        final int index;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        final AtomicInteger reserved = new AtomicInteger();
+        
+        Segment(int index, FileChannel channel, MappedByteBuffer buffer, int capacity) {
+            this.index = index;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+        
+        // Byte offset of a fresh slot, or -1 if the segment is full
+        int reserve() {
+            int slot = reserved.getAndIncrement();
+            return slot < capacity ? slot * RECORD_SIZE : -1;
+        }
+        
+        boolean halfFull() {
+            return reserved.get() >= capacity / 2;
+        }
+    }
+    
+    public MoveJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES);
+    }
+    
+    public MoveJournal(Path directory, long segmentBytes) throws IOException {
+        this(directory, new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()), 1, 0, segmentBytes);
+    }
+    
+    /**
+     * Carries on with an existing run: appends go to a new file with the
+     * given index and match numbers continue after lastMatch.
+     */
+    public MoveJournal(Path directory, String run, int firstSegment, int lastMatch) throws IOException {
+        this(directory, run, firstSegment, lastMatch, DEFAULT_SEGMENT_BYTES);
+    }
+    
+    private MoveJournal(Path directory, String run, int firstSegment, int lastMatch, long segmentBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.run = run;
+        this.segmentRecords = (int) Math.min(segmentBytes / RECORD_SIZE, Integer.MAX_VALUE / RECORD_SIZE);
+        this.nextMatch.set(lastMatch);
+        this.current = map(firstSegment);
+        this.flusher = new Thread(this::flushLoop, "journal");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+    
+    public Path getDirectory() {
+        return directory;
+    }
+    
+    public String getRun() {
+        return run;
+    }
+    
+    // Highest match number handed out so far
+    public int lastMatch() {
+        return nextMatch.get();
+    }
+    
+    /**
+     * Where the next record will go: the file index in the high 32 bits and
+     * the record within it in the low ones, or -1 once the journal is
+     * closed or disabled. Every record appended before this was called lies
+     * before that point.
+     */
+    public long position() {
+        Segment segment = current;
+        if (segment == null) return -1;
+        int record = Math.min(segment.reserved.get(), segment.capacity);
+        return (long) segment.index << 32 | record;
+    }
+    
+    static String fileName(String run, int index) {
+        return PREFIX + run + "-" + String.format("%05d", index) + SUFFIX;
+    }
+    
+    /**
+     * The runs found in a directory, oldest first, each with its journal
+     * files in the order they were written.
+     */
+    static SortedMap<String, List<Path>> runs(Path directory) throws IOException {
+        SortedMap<String, List<Path>> runs = new TreeMap<>();
+        if (!Files.isDirectory(directory)) return runs;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                // partidas-<run>-<index>.diario
+                int end = name.lastIndexOf('-');
+                if (end <= PREFIX.length()) continue;
+                runs.computeIfAbsent(name.substring(PREFIX.length(), end), key -> new ArrayList<>()).add(file);
+            }
+        }
+        for (List<Path> files : runs.values()) {
+            Collections.sort(files);
+        }
+        return runs;
+    }
+    
+    static int segmentIndex(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(name.lastIndexOf('-') + 1, name.length() - SUFFIX.length()));
+    }
+    
+    /**
+     * Hands every record of a journal file, from the given record on, to the
+     * visitor. Unused space and records the server did not get to finish
+     * are skipped.
+     */
+    static void read(Path file, int fromRecord, Visitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int records = (int) (channel.size() / RECORD_SIZE);
+            for (int i = fromRecord; i < records; i++) {
+                int offset = i * RECORD_SIZE;
+                byte type = buffer.get(offset);
+                if (type == 0) continue;
+                visitor.record(type, buffer.get(offset + 1), buffer.getShort(offset + 2) & 0xFFFF,
+                        buffer.getInt(offset + 4), buffer.getInt(offset + 8), buffer.getInt(offset + 12),
+                        buffer.getInt(offset + 16), buffer.getInt(offset + 20), buffer.getLong(offset + 24));
+            }
+        }
+    }
+    
+    private Segment map(int index) throws IOException {
+        Path file = directory.resolve(fileName(run, index));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long bytes = (long) segmentRecords * RECORD_SIZE;
+        // Mapping read-write grows the file to its full size, filled with zeros
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        return new Segment(index, channel, buffer, segmentRecords);
+    }
+    
+    /**
+     * Records the start of a match and returns its number, which the room
+     * passes along with every move and the end of that match.
+     */
+    public int matchStarted(int roomId, int seq, BoardSpec spec, int playerX, int playerO) {
+        int match = nextMatch.incrementAndGet();
+        append(MATCH_STARTED, (byte) spec.getSize(), (short) spec.getWinLength(), match, roomId, seq,
+                playerX, playerO);
+        return match;
+    }
+    
+    public void move(int match, int roomId, int seq, int playerId, int cell, char symbol) {
+        append(MOVE, (byte) symbol, (short) cell, match, roomId, seq, playerId, 0);
+    }
+    
+    /**
+     * Records a piece that was on the board before this journal saw the
+     * match, right after its MATCH_STARTED; next is the symbol to move.
+     */
+    public void placed(int match, int roomId, int seq, int cell, char symbol, char next) {
+        append(PLACED, (byte) symbol, (short) cell, match, roomId, seq, 0, next);
+    }
+    
+    /**
+     * @param result one of the RESULT_* codes
+     * @param winner the winning player, 0 for a draw or an interrupted match
+     */
+    public void matchEnded(int match, int roomId, int seq, byte result, int winner) {
+        append(MATCH_ENDED, result, (short) 0, match, roomId, seq, winner, 0);
+    }
+    
+    /**
+     * Records that a room closed between matches; match is its last one.
+     */
+    public void roomClosed(int match, int roomId) {
+        append(ROOM_CLOSED, (byte) 0, (short) 0, match, roomId, 0, 0, 0);
+    }
+    
+    private void append(byte type, byte detail, short cell, int match, int roomId, int seq, int player, int other) {
+        while (true) {
+            Segment segment = current;
+            if (segment == null) {
+                lost.incrementAndGet();
+                return;
+            }
+            int offset = segment.reserve();
+            if (offset < 0) {
+                roll(segment);
+                continue;
+            }
+            // Absolute puts leave the shared buffer's position alone, so writers never disturb each other
+            ByteBuffer buffer = segment.buffer;
+            buffer.put(offset + 1, detail);
+            buffer.putShort(offset + 2, cell);
+            buffer.putInt(offset + 4, match);
+            buffer.putInt(offset + 8, roomId);
+            buffer.putInt(offset + 12, seq);
+            buffer.putInt(offset + 16, player);
+            buffer.putInt(offset + 20, other);
+            buffer.putLong(offset + 24, System.currentTimeMillis());
+            // The type goes last: a reader that sees it sees a whole record
+            buffer.put(offset, type);
+            return;
+        }
+    }
+    
+    /**
+     * Moves on from a full segment, to the spare one if the flush thread
+     * had it ready; only if it did not does this thread map the file itself.
+     * If the flush thread is creating that very file, this waits for it
+     * rather than trying to create it too.
+     */
+    private synchronized void roll(Segment full) {
+        boolean interrupted = false;
+        while (preparing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        // Checked after the wait: another writer may have rolled over meanwhile
+        if (current != full) return;
+        Segment next = spare;
+        spare = null;
+        if (next == null) {
+            try {
+                next = map(full.index + 1);
+            } catch (IOException e) {
+                System.err.println("Diário de jogadas desativado: " + e.getMessage());
+                next = null;
+            }
+        }
+        retired.add(full);
+        current = next;
+    }
+    
+    private void flushLoop() {
+        while (true) {
+            synchronized (flushPause) {
+                try {
+                    if (!closed) flushPause.wait(FLUSH_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            if (closed) return;
+            flush();
+        }
+    }
+    
+    /**
+     * Forces what was appended to disk, closes segments that filled up, and
+     * maps the next one once the current one is half used.
+     */
+    void flush() {
+        List<Segment> done;
+        Segment active;
+        boolean prepare;
+        synchronized (this) {
+            done = new ArrayList<>(retired);
+            retired.clear();
+            active = current;
+            // close() flushes too, maybe while the flush thread is still at it
+            prepare = active != null && spare == null && !preparing && active.halfFull();
+            if (prepare) preparing = true;
+        }
+        for (Segment segment : done) {
+            segment.buffer.force();
+            closeQuietly(segment.channel);
+        }
+        if (active != null) {
+            active.buffer.force();
+        }
+        if (prepare) {
+            Segment next = null;
+            try {
+                next = map(active.index + 1);
+            } catch (IOException e) {
+                System.err.println("Erro ao preparar o próximo arquivo do diário: " + e.getMessage());
+            } finally {
+                synchronized (this) {
+                    preparing = false;
+                    // A writer that filled the segment meanwhile waited for this one
+                    if (next != null && current == active) {
+                        spare = next;
+                        next = null;
+                    }
+                    notifyAll();
+                }
+            }
+            if (next != null) {
+                // Closed meanwhile, which moved current on; nothing else can have mapped this index
+                closeQuietly(next.channel);
+                try {
+                    Files.deleteIfExists(directory.resolve(fileName(run, next.index)));
+                } catch (IOException e) {
+                    System.err.println("Erro ao apagar arquivo do diário: " + e.getMessage());
+                }
+            }
+        }
+        long dropped = lost.getAndSet(0);
+        if (dropped > 0) {
+            System.err.println("Diário de jogadas: " + dropped + " registros perdidos");
+        }
+    }
+    
+    @Override
+    public void close() {
+        closed = true;
+        // Not interrupted: that would close the channel of a segment it is mapping
+        synchronized (flushPause) {
+            flushPause.notifyAll();
+        }
+        // A flush under way may be creating the next file; once this returns nothing writes to the directory
+        boolean interrupted = false;
+        while (Thread.currentThread() != flusher && flusher.isAlive()) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        Segment last;
+        synchronized (this) {
+            last = current;
+            current = null;
+            if (spare != null) {
+                closeQuietly(spare.channel);
+                try {
+                    Files.deleteIfExists(directory.resolve(fileName(run, spare.index)));
+                } catch (IOException e) {
+                    System.err.println("Erro ao apagar arquivo do diário: " + e.getMessage());
+                }
+                spare = null;
+            }
+        }
+        if (last != null) {
+            last.buffer.force();
+            closeQuietly(last.channel);
+        }
+    }
+    
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar arquivo do diário: " + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
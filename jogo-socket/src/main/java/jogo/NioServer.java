@@ -0,0 +1,431 @@
+package jogo;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * Non-blocking transport for Servidor. A handful of event loops, each with
+ * its own Selector, own every connection; nobody blocks on a socket, so idle
+ * players cost a couple of small buffers instead of a thread. Bytes are
+ * decoded by the handler's WireProtocol, exactly as in the blocking mode.
+ */
+class NioServer {
+    private static final int READ_BUFFER_SIZE = 512;
+    // Chunks handed to one gathering write; each holds many messages already
+    private static final int GATHER_CHUNKS = 8;
+    
+    private final Servidor server;
+    private final int port;
+    private final EventLoop[] loops;
+    private final AtomicInteger nextLoop;
+    private ServerSocketChannel serverChannel;
+    
+    public NioServer(Servidor server, int port, int loopCount) {
+        this.server = server;
+        this.port = port;
+        this.loops = new EventLoop[loopCount];
+        this.nextLoop = new AtomicInteger();
+    }
+    
+    /**
+     * Binds the port, starts the event loops and accepts connections on the
+     * calling thread until the server channel is closed.
+     */
+    public void start() throws IOException {
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(i);
+            Thread thread = new Thread(loops[i], "nio-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        System.out.println("Servidor iniciado na porta " + port + " (NIO, " + loops.length + " loops)");
+        
+        while (serverChannel.isOpen()) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (ClosedChannelException e) {
+                break;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            
+            // Spread connections round-robin over the loops
+            EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+            loop.register(channel);
+        }
+    }
+    
+    public void stop() {
+        try {
+            if (serverChannel != null) serverChannel.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar o servidor: " + e.getMessage());
+        }
+        for (EventLoop loop : loops) {
+            if (loop != null) loop.shutdown();
+        }
+    }
+    
+    private class EventLoop implements Runnable {
+        private final int index;
+        private final Selector selector;
+        private final Queue<Runnable> tasks;
+        // Created once: select(Consumer) hands ready keys over without the selected-key set iterator
+        private final Consumer<SelectionKey> keyHandler = this::handleKey;
+        private volatile boolean running;
+        private Thread thread;
+        
+        EventLoop(int index) throws IOException {
+            this.index = index;
+            this.selector = Selector.open();
+            this.tasks = new ConcurrentLinkedQueue<>();
+            this.running = true;
+        }
+        
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    Connection connection = new Connection(this, channel, key, server.getOutboundLimit());
+                    key.attach(connection);
+                    connection.open(server);
+                } catch (IOException e) {
+                    System.err.println("Erro ao registrar conexão: " + e.getMessage());
+                    closeQuietly(channel);
+                }
+            });
+        }
+        
+        void execute(Runnable task) {
+            tasks.add(task);
+            if (Thread.currentThread() != thread) {
+                selector.wakeup();
+            }
+        }
+        
+        boolean inLoop() {
+            return Thread.currentThread() == thread;
+        }
+        
+        /**
+         * A bug in whatever a connection's input runs (its handler, a room)
+         * costs that connection only: it is closed, and the loop carries on
+         * with the others it serves.
+         */
+        private void handleKey(SelectionKey key) {
+            Connection connection = (Connection) key.attachment();
+            if (connection == null || !key.isValid()) return;
+            
+            try {
+                if (key.isReadable()) {
+                    connection.onReadable();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.onWritable();
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Erro no loop " + index + " ao atender uma conexão, que será fechada: " + e);
+                connection.close();
+            }
+        }
+        
+        void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+        
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            while (running) {
+                // Whatever this turn sends to a connection goes out in one write at the end of it.
+                // Opened before select, which runs the key handlers; the batch is empty while it blocks
+                WriteBatch batch = WriteBatch.begin();
+                try {
+                    try {
+                        selector.select(keyHandler);
+                    } catch (IOException e) {
+                        System.err.println("Erro no loop " + index + ": " + e.getMessage());
+                        continue;
+                    }
+                    
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            System.err.println("Erro numa tarefa do loop " + index + ": " + e);
+                        }
+                    }
+                } finally {
+                    batch.end();
+                }
+            }
+            
+            for (SelectionKey key : selector.keys()) {
+                Connection connection = (Connection) key.attachment();
+                if (connection != null) connection.close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                System.err.println("Erro ao fechar o loop " + index + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * One client socket. Reads are only ever done by the owning loop; writes
+     * may come from any thread (a move in one loop notifies the opponent that
+     * lives in another), so the outbound queue is guarded by this object.
+     * A send first tries a non-blocking write, which never waits on the
+     * client; only what the socket refuses is queued for the loop to flush.
+     * Inside a WriteBatch, sends are only queued, and the batch's flush()
+     * writes them all with one gathering write.
+     */
+    static class Connection {
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final OutboundQueue pending;
+        private final AtomicBoolean closed;
+        // Guarded by this; set by closeAfterFlush while output is still queued
+        private boolean closeWhenFlushed;
+        // Guarded by this; OP_WRITE was asked for, so the loop flushes what is queued
+        private boolean writeRequested;
+        // Guarded by this; the chunks of the current gathering write
+        private final ByteBuffer[] gather = new ByteBuffer[GATHER_CHUNKS];
+        private ByteBuffer readBuffer;
+        private ClientHandler handler;
+        private Metrics metrics;
+        
+        private Connection(EventLoop loop, SocketChannel channel, SelectionKey key, int outboundLimit) {
+            this.loop = loop;
+            this.channel = channel;
+            this.key = key;
+            this.pending = new OutboundQueue(outboundLimit);
+            this.closed = new AtomicBoolean();
+            this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        }
+        
+        private void open(Servidor server) {
+            metrics = server.getMetrics();
+            handler = new ClientHandler(this, server, server.nextPlayerId());
+            server.acceptClient(handler);
+        }
+        
+        private void onReadable() {
+            int read;
+            try {
+                read = channel.read(readBuffer);
+            } catch (IOException e) {
+                System.out.println("Jogador " + handler.getPlayerId() + " desconectado: " + e.getMessage());
+                close();
+                return;
+            }
+            if (read < 0) {
+                close();
+                return;
+            }
+            metrics.bytesReceived(read);
+            
+            // Hand every complete message to the handler; keep the partial tail
+            readBuffer.flip();
+            handler.processInput(readBuffer);
+            if (closed.get()) return;
+            readBuffer.compact();
+            
+            readBuffer = WireProtocol.ensureSpace(readBuffer);
+            if (readBuffer == null) {
+                System.out.println("Jogador " + handler.getPlayerId() + " enviou uma mensagem longa demais");
+                close();
+            }
+        }
+        
+        private void onWritable() {
+            synchronized (this) {
+                if (!flushPending()) return;
+                // Everything went out, stop asking for OP_WRITE
+                writeRequested = false;
+                key.interestOps(SelectionKey.OP_READ);
+                if (!closeWhenFlushed) return;
+            }
+            close();
+        }
+        
+        /**
+         * Writes as much of the queue as the socket takes. Returns true when
+         * the queue is empty. Must be called while holding this monitor.
+         */
+        private boolean flushPending() {
+            try {
+                int count;
+                while ((count = pending.gather(gather)) > 0) {
+                    long written = channel.write(gather, 0, count);
+                    metrics.bytesSent(written);
+                    boolean drained = !gather[count - 1].hasRemaining();
+                    pending.written(written);
+                    Arrays.fill(gather, 0, count, null);
+                    if (!drained) return false;
+                }
+                return true;
+            } catch (IOException e) {
+                Arrays.fill(gather, null);
+                loop.execute(this::close);
+                return false;
+            }
+        }
+        
+        /**
+         * Writes the queue unless the loop is already waiting to; whatever
+         * the socket does not take is left for OP_WRITE. Must be called
+         * while holding this monitor.
+         */
+        private void flushLocked() {
+            if (writeRequested || pending.isEmpty()) return;
+            if (!flushPending()) {
+                awaitWritable();
+            }
+        }
+        
+        // Must be called while holding this monitor
+        private void awaitWritable() {
+            writeRequested = true;
+            if (loop.inLoop()) {
+                if (key.isValid()) key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } else {
+                loop.execute(this::requestWrite);
+            }
+        }
+        
+        /**
+         * Sends an encoded message, ready for reading. Whatever the socket does
+         * not take right away is copied, so the caller may reuse the buffer as
+         * soon as this returns. Returns false only if the outbound queue is
+         * full; on a closed connection the message is silently dropped.
+         */
+        public boolean send(ByteBuffer message) {
+            if (closed.get()) return true;
+            
+            synchronized (this) {
+                if (!pending.isEmpty()) {
+                    // Behind output that is waiting on the selector or held by a batch; keep the order
+                    if (!pending.offer(message)) return false;
+                    flushLocked();
+                    return true;
+                }
+                // Try the fast path first; only fall back to the selector if the socket is full
+                boolean started;
+                try {
+                    int written = channel.write(message);
+                    metrics.bytesSent(written);
+                    started = written > 0;
+                } catch (IOException e) {
+                    loop.execute(this::close);
+                    return true;
+                }
+                if (!message.hasRemaining()) return true;
+                if (started) {
+                    pending.offerRemainder(message);
+                } else if (!pending.offer(message)) {
+                    return false;
+                }
+                awaitWritable();
+            }
+            return true;
+        }
+        
+        /**
+         * Queues an encoded message without writing it, for a WriteBatch that
+         * calls flush() at its end. Same contract as send() otherwise.
+         */
+        public boolean queue(ByteBuffer message) {
+            if (closed.get()) return true;
+            synchronized (this) {
+                return pending.offer(message);
+            }
+        }
+        
+        public void flush() {
+            if (closed.get()) return;
+            synchronized (this) {
+                flushLocked();
+            }
+        }
+        
+        public int queuedBytes() {
+            synchronized (this) {
+                return pending.size();
+            }
+        }
+        
+        /**
+         * Throws away queued output that has not started going out.
+         */
+        public void clearQueued() {
+            synchronized (this) {
+                pending.clear();
+            }
+        }
+        
+        /**
+         * Closes the connection once the queued output has been written.
+         */
+        public void closeAfterFlush() {
+            synchronized (this) {
+                // Output a batch is still holding goes out first
+                flushLocked();
+                if (!pending.isEmpty()) {
+                    closeWhenFlushed = true;
+                    return;
+                }
+            }
+            close();
+        }
+        
+        /**
+         * Drops the connection without flushing. The close runs on the owning
+         * loop, like the one after a failed write, so a caller fanning out
+         * under a room lock never re-enters the room through the disconnect
+         * path.
+         */
+        public void abort() {
+            loop.execute(this::close);
+        }
+        
+        private void requestWrite() {
+            synchronized (this) {
+                if (writeRequested && key.isValid()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            }
+        }
+        
+        public void close() {
+            if (!closed.compareAndSet(false, true)) return;
+            key.cancel();
+            closeQuietly(channel);
+            if (handler != null) {
+                handler.connectionClosed();
+            }
+        }
+    }
+    
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar conexão com o cliente: " + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,165 @@
+package jogo;
+
+import java.nio.*;
+import java.util.*;
+
+/**
+ * Bytes waiting to be written to one client. The queue is bounded, so a
+ * client that stops reading cannot make the server buffer without limit;
+ * what happens when it fills up is the owner's OverflowPolicy.
+ *
+ * Messages are copied into chunks that are recycled once written, and a
+ * message is appended to the last chunk when it fits, so a steady flow of
+ * small messages allocates nothing. Chunks are kept ready for reading.
+ * Not thread-safe: the owner guards every call with its own lock.
+ */
+final class OutboundQueue {
+    static final int CHUNK_SIZE = 1024;
+    private static final int MAX_SPARE_CHUNKS = 2;
+    
+    private final int maxBytes;
+    private final ArrayDeque<ByteBuffer> chunks;
+    private final ArrayDeque<ByteBuffer> spare;
+    private int queuedBytes;
+    // Set once a writer has looked at the head chunk; from then on it may be half sent
+    private boolean headStarted;
+    
+    public OutboundQueue(int maxBytes) {
+        this.maxBytes = maxBytes;
+        this.chunks = new ArrayDeque<>();
+        this.spare = new ArrayDeque<>();
+    }
+    
+    /**
+     * Copies the message, which must be ready for reading, into the queue.
+     * Returns false, leaving the message untouched, if it would take the
+     * queue past its limit.
+     */
+    public boolean offer(ByteBuffer message) {
+        if (queuedBytes + message.remaining() > maxBytes) {
+            return false;
+        }
+        append(message);
+        return true;
+    }
+    
+    /**
+     * Queues the rest of a message whose beginning already went out on the
+     * socket. It is accepted whatever the limit, since dropping it would cut
+     * the message in half. Only valid while the queue is empty.
+     */
+    public void offerRemainder(ByteBuffer message) {
+        append(message);
+        headStarted = true;
+    }
+    
+    private void append(ByteBuffer message) {
+        int length = message.remaining();
+        ByteBuffer tail = chunks.peekLast();
+        if (tail != null && tail.capacity() - tail.limit() >= length) {
+            // Write past the current end, then make the new bytes readable; a
+            // writer busy with the bytes before it is not disturbed
+            int position = tail.position();
+            tail.position(tail.limit());
+            tail.limit(tail.capacity());
+            tail.put(message);
+            tail.limit(tail.position());
+            tail.position(position);
+        } else {
+            ByteBuffer chunk = length <= CHUNK_SIZE ? spare.poll() : null;
+            if (chunk == null) {
+                chunk = ByteBuffer.allocate(Math.max(CHUNK_SIZE, length));
+            }
+            chunk.put(message);
+            chunk.flip();
+            chunks.add(chunk);
+        }
+        queuedBytes += length;
+    }
+    
+    /**
+     * Returns the chunk to write next, or null if the queue is empty. The
+     * writer sends from its position and then reports it with written().
+     */
+    public ByteBuffer peek() {
+        ByteBuffer head = chunks.peekFirst();
+        if (head != null) {
+            headStarted = true;
+        }
+        return head;
+    }
+    
+    /**
+     * Fills the array with the chunks to write next, oldest first, for a
+     * gathering write, and returns how many there were. As with peek(), the
+     * writer reports what went out with written().
+     */
+    public int gather(ByteBuffer[] into) {
+        if (chunks.size() <= 1 || into.length == 1) {
+            // The usual case, without an iterator
+            into[0] = chunks.peekFirst();
+            if (into[0] == null) return 0;
+            headStarted = true;
+            return 1;
+        }
+        int count = 0;
+        for (ByteBuffer chunk : chunks) {
+            into[count++] = chunk;
+            if (count == into.length) break;
+        }
+        headStarted = true;
+        return count;
+    }
+    
+    /**
+     * Records that bytes were sent from the front of the queue; the writer
+     * has already moved the chunks' positions past them. Drained chunks are
+     * recycled.
+     */
+    public void written(long bytes) {
+        queuedBytes -= bytes;
+        ByteBuffer head;
+        boolean drained = false;
+        while ((head = chunks.peekFirst()) != null && !head.hasRemaining()) {
+            chunks.pollFirst();
+            recycle(head);
+            drained = true;
+        }
+        if (drained) {
+            // A chunk that was only gathered, not begun, may still be dropped
+            headStarted = head != null && head.position() > 0;
+        }
+    }
+    
+    /**
+     * Throws away everything not yet handed to a writer. A head chunk the
+     * writer already started on is kept whole, so the client never receives
+     * half a message.
+     */
+    public void clear() {
+        ByteBuffer keep = headStarted ? chunks.pollFirst() : null;
+        ByteBuffer chunk;
+        while ((chunk = chunks.pollFirst()) != null) {
+            queuedBytes -= chunk.remaining();
+            recycle(chunk);
+        }
+        if (keep != null) {
+            chunks.add(keep);
+        }
+    }
+    
+    private void recycle(ByteBuffer chunk) {
+        if (chunk.capacity() == CHUNK_SIZE && spare.size() < MAX_SPARE_CHUNKS) {
+            chunk.clear();
+            spare.add(chunk);
+        }
+    }
+    
+    public boolean isEmpty() {
+        return chunks.isEmpty();
+    }
+    
+    public int size() {
+        return queuedBytes;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,41 @@
+package jogo;
+
+/**
+ * What to do with a client whose outbound queue is full, i.e. one that
+ * reads slower than the game produces messages for it.
+ */
+enum OverflowPolicy {
+    /**
+     * Discard the new message. Moves carry sequence numbers, so the client
+     * notices the gap and asks for a RESYNC once it catches up.
+     */
+    DROP("descartar"),
+    /**
+     * Drop the client.
+     */
+    DISCONNECT("desconectar"),
+    /**
+     * Throw away everything still queued and replace it with the current
+     * state of the room: one snapshot and whose turn it is.
+     */
+    COALESCE("coalescer");
+    
+    // Name used on the command line
+    final String option;
+    
+    OverflowPolicy(String option) {
+        this.option = option;
+    }
+    
+    /**
+     * Returns the policy for a command-line name, or null if there is none.
+     */
+    static OverflowPolicy fromOption(String option) {
+        for (OverflowPolicy policy : values()) {
+            if (policy.option.equals(option)) {
+                return policy;
+            }
+        }
+        return null;
+    }
+}
\ No newline at end of file
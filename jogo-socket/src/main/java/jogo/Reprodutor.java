@@ -0,0 +1,272 @@
+package jogo;
+
+import java.io.*;
+import java.nio.file.*;
+import java.text.*;
+import java.util.*;
+
+/**
+ * Reads the journal a server wrote with --diario. Without a match number it
+ * lists every match found; with one it replays that match move by move on a
+ * fresh board, printing the board after each move, and checks that the
+ * replay ends the way the journal says the match ended. A match another
+ * node handed over starts from the board it arrived with.
+ *
+ * Match numbers restart with every server run, so a match is picked within
+ * one run: the latest, unless another is named.
+ */
+public class Reprodutor {
+    private static final SimpleDateFormat TIME = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    
+    /**
+     * Everything the journal holds about one match. Moves are only kept for
+     * the match being replayed.
+     */
+    private static final class Match {
+        final int id;
+        int roomId;
+        int size;
+        int winLength;
+        int playerX;
+        int playerO;
+        int startSeq;
+        long started;
+        int moveCount;
+        // Handed over mid-game: the pieces it arrived with and who was to move
+        boolean adopted;
+        char firstTurn = 'X';
+        byte result;
+        int winner;
+        long ended;
+        final List<long[]> moves = new ArrayList<>();
+        final List<int[]> placed = new ArrayList<>();
+        
+        Match(int id) {
+            this.id = id;
+        }
+    }
+    
+    private final Path directory;
+    
+    public Reprodutor(Path directory) {
+        this.directory = directory;
+    }
+    
+    /**
+     * Reads the matches of one run. Moves are collected only for the match
+     * with the given number; pass 0 to just count them.
+     */
+    private SortedMap<Integer, Match> read(List<Path> files, int replay) throws IOException {
+        SortedMap<Integer, Match> matches = new TreeMap<>();
+        MoveJournal.Visitor visitor = (type, detail, cell, id, roomId, seq, player, other, time) -> {
+            // Closing a room says nothing about the match itself
+            if (type == MoveJournal.ROOM_CLOSED) return;
+            Match match = matches.computeIfAbsent(id, Match::new);
+            match.roomId = roomId;
+            if (type == MoveJournal.MATCH_STARTED) {
+                match.size = detail;
+                match.winLength = cell;
+                match.playerX = player;
+                match.playerO = other;
+                match.startSeq = seq;
+                match.started = time;
+            } else if (type == MoveJournal.MOVE) {
+                match.moveCount++;
+                if (id == replay) {
+                    match.moves.add(new long[] {seq, player, cell, detail, time});
+                }
+            } else if (type == MoveJournal.PLACED) {
+                match.adopted = true;
+                match.firstTurn = (char) other;
+                if (id == replay) {
+                    match.placed.add(new int[] {cell, detail});
+                }
+            } else if (type == MoveJournal.MATCH_ENDED) {
+                match.result = detail;
+                match.winner = player;
+                match.ended = time;
+            }
+        };
+        for (Path file : files) {
+            MoveJournal.read(file, 0, visitor);
+        }
+        return matches;
+    }
+    
+    public void list() throws IOException {
+        SortedMap<String, List<Path>> runs = MoveJournal.runs(directory);
+        if (runs.isEmpty()) {
+            System.out.println("Nenhum diário encontrado em " + directory);
+            return;
+        }
+        for (Map.Entry<String, List<Path>> run : runs.entrySet()) {
+            SortedMap<Integer, Match> matches = read(run.getValue(), 0);
+            System.out.println("Execução " + run.getKey() + ": " + matches.size() + " partidas");
+            for (Match match : matches.values()) {
+                System.out.printf("  partida %6d  sala %6d  %-8s  X=%-6d O=%-6d  %3d jogadas  %s%n",
+                        match.id, match.roomId, spec(match), match.playerX, match.playerO,
+                        match.moveCount, describe(match));
+            }
+        }
+    }
+    
+    /**
+     * Replays one match and returns whether the replay agrees with the
+     * journal: every move legal, made by the right player, and the result
+     * the one recorded.
+     */
+    public boolean replay(String runName, int id) throws IOException {
+        SortedMap<String, List<Path>> runs = MoveJournal.runs(directory);
+        if (runs.isEmpty()) {
+            System.out.println("Nenhum diário encontrado em " + directory);
+            return false;
+        }
+        String run = runName != null ? runName : runs.lastKey();
+        List<Path> files = runs.get(run);
+        if (files == null) {
+            System.out.println("Execução " + run + " não encontrada em " + directory);
+            return false;
+        }
+        Match match = read(files, id).get(id);
+        if (match == null) {
+            System.out.println("Partida " + id + " não encontrada na execução " + run);
+            return false;
+        }
+        if (match.size == 0) {
+            System.out.println("O início da partida " + id + " não está no diário; não é possível reproduzi-la.");
+            return false;
+        }
+        
+        BoardSpec spec = new BoardSpec(match.size, match.winLength);
+        System.out.println("Partida " + id + " da execução " + run + ", sala " + match.roomId
+                + ", tabuleiro " + spec + ", X=" + match.playerX + " O=" + match.playerO
+                + ", início " + TIME.format(new Date(match.started)));
+        match.moves.sort(Comparator.comparingLong(move -> move[0]));
+        Board board = spec.newBoard();
+        for (int[] piece : match.placed) {
+            board.place(piece[0] / spec.getSize(), piece[0] % spec.getSize(), (char) piece[1]);
+        }
+        if (match.adopted) {
+            System.out.println();
+            System.out.println("Recebida de outro nó na sequência " + match.startSeq + ", com o tabuleiro:");
+            print(board);
+        }
+        char turn = match.firstTurn;
+        boolean consistent = true;
+        byte outcome = 0;
+        int winner = 0;
+        int expectedSeq = match.startSeq + 1;
+        for (long[] move : match.moves) {
+            int seq = (int) move[0];
+            int player = (int) move[1];
+            int cell = (int) move[2];
+            char symbol = (char) move[3];
+            int row = cell / spec.getSize();
+            int col = cell % spec.getSize();
+            System.out.println();
+            System.out.println("#" + seq + " " + TIME.format(new Date(move[4])) + "  jogador " + player
+                    + " (" + symbol + ") em " + row + "," + col);
+            if (seq != expectedSeq) {
+                System.out.println("  Divergência: esperava a sequência " + expectedSeq);
+                consistent = false;
+            }
+            expectedSeq = seq + 1;
+            if (outcome != 0) {
+                System.out.println("  Divergência: jogada depois do fim da partida");
+                consistent = false;
+                continue;
+            }
+            if (symbol != turn || player != (turn == 'X' ? match.playerX : match.playerO)) {
+                System.out.println("  Divergência: era a vez do jogador " + turn);
+                consistent = false;
+            }
+            if (!board.canPlace(row, col)) {
+                System.out.println("  Divergência: casa ocupada ou fora do tabuleiro");
+                consistent = false;
+                continue;
+            }
+            if (board.place(row, col, symbol)) {
+                outcome = MoveJournal.RESULT_WIN;
+                winner = player;
+            } else if (board.isFull()) {
+                outcome = MoveJournal.RESULT_DRAW;
+            }
+            print(board);
+            turn = symbol == 'X' ? 'O' : 'X';
+        }
+        
+        System.out.println();
+        System.out.println("Resultado registrado: " + describe(match));
+        if (match.result == MoveJournal.RESULT_WIN || match.result == MoveJournal.RESULT_DRAW) {
+            if (outcome != match.result || winner != match.winner) {
+                consistent = false;
+            }
+        } else if (match.result == MoveJournal.RESULT_TIMEOUT) {
+            // The player whose turn it was let the clock run out
+            int waiting = turn == 'X' ? match.playerO : match.playerX;
+            if (outcome != 0 || match.winner != waiting) {
+                consistent = false;
+            }
+        } else if (outcome != 0) {
+            consistent = false;
+        }
+        System.out.println(consistent ? "A reprodução confere com o diário."
+                : "A reprodução NÃO confere com o diário.");
+        return consistent;
+    }
+    
+    private static String spec(Match match) {
+        // Short form for the list: size and win length
+        return match.size == 0 ? "?" : match.size + "x" + match.size + "/" + match.winLength;
+    }
+    
+    private static String describe(Match match) {
+        String result;
+        switch (match.result) {
+            case MoveJournal.RESULT_WIN:
+                result = "vitória de " + match.winner;
+                break;
+            case MoveJournal.RESULT_TIMEOUT:
+                result = "vitória de " + match.winner + " por tempo";
+                break;
+            case MoveJournal.RESULT_DRAW:
+                result = "empate";
+                break;
+            case MoveJournal.RESULT_INTERRUPTED:
+                result = "interrompida";
+                break;
+            default:
+                return "em andamento";
+        }
+        return result + " às " + TIME.format(new Date(match.ended));
+    }
+    
+    private static void print(Board board) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < board.size(); i++) {
+            out.append("  ");
+            for (int j = 0; j < board.size(); j++) {
+                char cell = board.cellAt(i, j);
+                out.append(cell == 'X' || cell == 'O' ? cell : '.');
+                if (j < board.size() - 1) out.append(' ');
+            }
+            out.append('\n');
+        }
+        System.out.print(out);
+    }
+    
+    public static void main(String[] args) throws IOException {
+        // java Reprodutor <pasta> [partida [execução]]
+        if (args.length < 1) {
+            System.out.println("Uso: java jogo.Reprodutor <pasta do diário> [partida [execução]]");
+            return;
+        }
+        Reprodutor reprodutor = new Reprodutor(Paths.get(args[0]));
+        if (args.length < 2) {
+            reprodutor.list();
+            return;
+        }
+        boolean consistent = reprodutor.replay(args.length > 2 ? args[2] : null, Integer.parseInt(args[1]));
+        System.exit(consistent ? 0 : 1);
+    }
+}
\ No newline at end of file
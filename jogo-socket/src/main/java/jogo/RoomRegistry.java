@@ -0,0 +1,131 @@
+package jogo;
+
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * All open rooms, split into independent shards by room ID so that opening
+ * and closing rooms from many threads does not funnel through one map.
+ */
+class RoomRegistry {
+    private final ConcurrentHashMap<Integer, GameRoom>[] shards;
+    private volatile IdSequence roomIds;
+    private final ScheduledExecutorService scheduler;
+    private final TimerWheel timers;
+    private final long turnTimeoutMillis;
+    private final Metrics metrics;
+    private volatile MoveJournal journal;
+    
+    /**
+     * @param scheduler         shared by every room for its delayed actions
+     * @param timers            shared by every room for its turn clock
+     * @param turnTimeoutMillis time each player has per move, 0 for no limit
+     * @param metrics           where every room records its move and fan-out times
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public RoomRegistry(int shardCount, ScheduledExecutorService scheduler, TimerWheel timers,
+                        long turnTimeoutMillis, Metrics metrics) {
+        shards = new ConcurrentHashMap[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new ConcurrentHashMap<>();
+        }
+        roomIds = new IdSequence();
+        this.scheduler = scheduler;
+        this.timers = timers;
+        this.turnTimeoutMillis = turnTimeoutMillis;
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Numbers rooms as node node of a cluster of nodes (see IdSequence), so
+     * their IDs tell which node has them. Must be called before the first
+     * room is opened or restored.
+     */
+    public void numberAs(int node, int nodes) {
+        roomIds = new IdSequence(node, nodes);
+    }
+    
+    /**
+     * Rooms created from now on record their matches in the given journal.
+     */
+    public void setJournal(MoveJournal journal) {
+        this.journal = journal;
+    }
+    
+    private ConcurrentHashMap<Integer, GameRoom> shardFor(int roomId) {
+        return shards[Math.floorMod(roomId, shards.length)];
+    }
+    
+    public GameRoom create(BoardSpec spec) {
+        GameRoom room = new GameRoom(roomIds.next(), spec, scheduler, timers, turnTimeoutMillis, metrics, journal);
+        shardFor(room.getRoomId()).put(room.getRoomId(), room);
+        return room;
+    }
+    
+    /**
+     * Re-creates a room recovered after a restart under its old ID, with
+     * its seats held for its players. Rooms opened later get higher IDs.
+     */
+    public GameRoom restore(SnapshotStore.RoomState state) {
+        GameRoom room = new GameRoom(state.roomId, state.spec, scheduler, timers, turnTimeoutMillis, metrics, journal);
+        room.restore(state);
+        reserveIds(state.roomId);
+        shardFor(room.getRoomId()).put(room.getRoomId(), room);
+        return room;
+    }
+    
+    /**
+     * Makes sure rooms opened from now on get IDs above the given one.
+     */
+    public void reserveIds(int lastRoomId) {
+        roomIds.reserve(lastRoomId);
+    }
+    
+    public int lastRoomId() {
+        return roomIds.last();
+    }
+    
+    public GameRoom get(int roomId) {
+        return shardFor(roomId).get(roomId);
+    }
+    
+    /**
+     * Returns some room with a match being played, or null if there is none.
+     */
+    public GameRoom findInProgress() {
+        for (ConcurrentHashMap<Integer, GameRoom> shard : shards) {
+            for (GameRoom room : shard.values()) {
+                if (room.isInProgress()) return room;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Runs the action on every open room, shard by shard. Rooms opened or
+     * closed meanwhile may or may not be included.
+     */
+    public void forEach(Consumer<GameRoom> action) {
+        for (ConcurrentHashMap<Integer, GameRoom> shard : shards) {
+            for (GameRoom room : shard.values()) {
+                action.accept(room);
+            }
+        }
+    }
+    
+    public void remove(GameRoom room) {
+        shardFor(room.getRoomId()).remove(room.getRoomId(), room);
+    }
+    
+    public int size() {
+        int total = 0;
+        for (ConcurrentHashMap<Integer, GameRoom> shard : shards) {
+            total += shard.size();
+        }
+        return total;
+    }
+    
+    public int getShardCount() {
+        return shards.length;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,1081 @@
+package jogo;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class Servidor {
+    private static final int PORT = 12345;
+    static final int DEFAULT_OUTBOUND_LIMIT = 64 * 1024;
+    // Room for the largest chat message plus a full snapshot, so coalescing always fits
+    static final int MIN_OUTBOUND_LIMIT = 16 * 1024;
+    static final long DEFAULT_PING_INTERVAL_MILLIS = 15_000;
+    static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 45_000;
+    static final long DEFAULT_TURN_TIMEOUT_MILLIS = 60_000;
+    static final long DEFAULT_RECONNECT_WINDOW_MILLIS = 30_000;
+    static final double DEFAULT_CHAT_RATE = 2;
+    private static final int SCHEDULER_THREADS = 1;
+    // A tick of 100 ms over 512 slots covers 51 s per turn of the wheel
+    private static final long TIMER_TICK_MILLIS = 100;
+    private static final int TIMER_SLOTS = 512;
+    private static final long METRICS_SAMPLE_MILLIS = 1000;
+    // How long players of a recovered match have to come back with RETOMAR
+    static final long RECOVERY_WINDOW_MILLIS = 60_000;
+    // IDs the crashed run may have handed out after its last snapshot, to players who never got a seat
+    private static final int RECOVERED_ID_GAP = 1_000_000;
+    // Bot moves waiting for a search thread; past this a bot retries a little later
+    private static final int BOT_QUEUE_SIZE = 4096;
+    // How long a node shutting down waits for its rooms to be taken over by the others
+    private static final long HAND_OFF_TIMEOUT_MILLIS = 2000;
+    // Hand-offs sent back to back before a pause, so the other nodes' bus buffers keep up
+    private static final int HAND_OFF_BURST = 64;
+    private static final long HAND_OFF_PAUSE_MILLIS = 5;
+    // A hand-off not adopted by then is sent again: the bus may have dropped it or its answer
+    private static final long HAND_OFF_RESEND_MILLIS = 200;
+    
+    private int port = PORT;
+    private ServerSocket serverSocket;
+    private NioServer nioServer;
+    private ScheduledThreadPoolExecutor scheduler;
+    private TimerWheel timers;
+    private RoomRegistry rooms;
+    private Matchmaker matchmaker;
+    private BoardSpec defaultSpec;
+    private int outboundLimit;
+    private OverflowPolicy overflowPolicy;
+    private long pingIntervalMillis;
+    private long idleTimeoutMillis;
+    // Time between chat lines a player may keep up; 0 for no limit
+    private long chatIntervalNanos = chatInterval(DEFAULT_CHAT_RATE);
+    private ChatLane chatLane;
+    private ExecutorService handlerExecutor;
+    private IdSequence playerIds;
+    private AtomicInteger connectedPlayers;
+    // Every connected player by ID, so the stats port can add up their outbound queues
+    // and a returning player can take over from a connection not yet seen to drop
+    private ConcurrentHashMap<Integer, ClientHandler> clients;
+    // Connected players with no room who are not watching one: who hears lobby chat
+    private final Set<ClientHandler> lobby = ConcurrentHashMap.newKeySet();
+    private Metrics metrics;
+    private StatsServer statsServer;
+    private MoveJournal journal;
+    private SnapshotStore snapshots;
+    private SessionTokens tokens;
+    // Seats kept for players who are away, by player ID; each hold is its own entry,
+    // so the timer of an earlier hold of the same player knows it is stale
+    private ConcurrentHashMap<Integer, HeldSeat> heldSeats;
+    // How long a player who drops mid-match keeps its seat; 0 ends the match right away
+    private long reconnectWindowMillis = DEFAULT_RECONNECT_WINDOW_MILLIS;
+    // Both null unless bots are enabled
+    private Solver solver;
+    private ThreadPoolExecutor botPool;
+    private final AtomicInteger nextBotId = new AtomicInteger(BotPlayer.FIRST_ID);
+    // null unless this server is a node of a cluster
+    private Cluster cluster;
+    private volatile boolean draining;
+    // Rooms handed to other nodes while shutting down, until they say they took them
+    private final ConcurrentHashMap<Integer, GameRoom> handingOff = new ConcurrentHashMap<>();
+    // Set when the session secret is shared by the cluster, instead of kept with the journal
+    private boolean sharedSecret;
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    
+    public Servidor() {
+        this(0, Runtime.getRuntime().availableProcessors(), BoardSpec.CLASSIC);
+    }
+    
+    /**
+     * @param waitTimeoutMillis how long a player may wait for an opponent; 0 waits forever
+     * @param roomShards        number of shards the room registry is split into
+     * @param defaultSpec       board used by players who do not ask for one
+     */
+    public Servidor(long waitTimeoutMillis, int roomShards, BoardSpec defaultSpec) {
+        this(waitTimeoutMillis, roomShards, defaultSpec, DEFAULT_OUTBOUND_LIMIT, OverflowPolicy.COALESCE);
+    }
+    
+    /**
+     * @param outboundLimit  bytes that may be queued for one client before
+     *                       the overflow policy kicks in
+     * @param overflowPolicy what to do with a client whose queue is full
+     */
+    public Servidor(long waitTimeoutMillis, int roomShards, BoardSpec defaultSpec,
+                    int outboundLimit, OverflowPolicy overflowPolicy) {
+        this(waitTimeoutMillis, roomShards, defaultSpec, outboundLimit, overflowPolicy,
+                DEFAULT_PING_INTERVAL_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_TURN_TIMEOUT_MILLIS);
+    }
+    
+    /**
+     * @param pingIntervalMillis how long a client may stay silent before it is
+     *                           sent a PING; 0 sends none
+     * @param idleTimeoutMillis  how long a client may stay silent before it is
+     *                           dropped; 0 never drops it
+     * @param turnTimeoutMillis  time each player has per move before losing
+     *                           the match; 0 for no limit
+     */
+    public Servidor(long waitTimeoutMillis, int roomShards, BoardSpec defaultSpec,
+                    int outboundLimit, OverflowPolicy overflowPolicy,
+                    long pingIntervalMillis, long idleTimeoutMillis, long turnTimeoutMillis) {
+        this.defaultSpec = defaultSpec;
+        this.outboundLimit = Math.max(outboundLimit, MIN_OUTBOUND_LIMIT);
+        this.overflowPolicy = overflowPolicy;
+        this.pingIntervalMillis = pingIntervalMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        scheduler = newScheduler();
+        timers = new TimerWheel(TIMER_TICK_MILLIS, TIMER_SLOTS);
+        scheduler.scheduleAtFixedRate(timers::tick, TIMER_TICK_MILLIS, TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS);
+        metrics = new Metrics();
+        scheduler.scheduleAtFixedRate(metrics::sample, METRICS_SAMPLE_MILLIS, METRICS_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+        rooms = new RoomRegistry(roomShards, scheduler, timers, turnTimeoutMillis, metrics);
+        chatLane = new ChatLane(this, metrics);
+        matchmaker = new Matchmaker(this, waitTimeoutMillis);
+        playerIds = new IdSequence();
+        connectedPlayers = new AtomicInteger();
+        clients = new ConcurrentHashMap<>();
+        tokens = SessionTokens.ephemeral();
+        heldSeats = new ConcurrentHashMap<>();
+    }
+    
+    public void setPort(int port) {
+        this.port = port;
+    }
+    
+    /**
+     * @param millis how long a player who drops in the middle of a match
+     *               keeps its seat for RETOMAR; 0 ends the match as soon as
+     *               it drops
+     */
+    public void setReconnectWindow(long millis) {
+        reconnectWindowMillis = millis;
+    }
+    
+    /**
+     * @param linesPerSecond chat lines each player may send per second once
+     *                       its burst is used up; 0 for no limit
+     */
+    public void setChatRate(double linesPerSecond) {
+        chatIntervalNanos = chatInterval(linesPerSecond);
+    }
+    
+    private static long chatInterval(double linesPerSecond) {
+        return linesPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / linesPerSecond) : 0;
+    }
+    
+    /**
+     * Gives a player who found no opponent within the delay a BotPlayer to
+     * play against. Every bot shares one Solver, and their searches run on
+     * a small pool of their own, half the cores, with a bounded queue. Must
+     * run before startJournal, so recovered rooms get their bots back.
+     *
+     * @param delayMillis how long a player waits for a human first; 0 gives
+     *                    every player a bot right away
+     */
+    public void enableBots(long delayMillis) {
+        solver = new Solver();
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        botPool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(BOT_QUEUE_SIZE), task -> {
+                    Thread thread = new Thread(task, "bot");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        matchmaker.setBotDelay(delayMillis);
+    }
+    
+    private BotPlayer newBot(int playerId) {
+        return new BotPlayer(this, playerId, solver, botPool, scheduler);
+    }
+    
+    /**
+     * Signs session tokens with the secret kept in the given directory
+     * (see SessionTokens.persistent). The nodes of a cluster must share it,
+     * so that a player can take back on one node a seat it had on another.
+     */
+    public void shareSessionSecret(File directory) throws IOException {
+        tokens = SessionTokens.persistent(Files.createDirectories(directory.toPath()));
+        sharedSecret = true;
+    }
+    
+    /**
+     * Makes this server the given node of a cluster behind a Gateway (see
+     * Cluster): its player and room IDs are striped with the other
+     * nodes', it reports its lobby on the bus, hears the other nodes'
+     * lobby chat and takes over rooms they hand off. On shutdown it hands
+     * off its own rooms first (see drain). Must run before startJournal.
+     */
+    public void joinCluster(int node, int nodes, ClusterBus bus) throws IOException {
+        playerIds = new IdSequence(node, nodes);
+        rooms.numberAs(node, nodes);
+        cluster = new Cluster(node, nodes, bus);
+        cluster.start(new ClusterEvents());
+        scheduler.scheduleAtFixedRate(this::publishLobby, 0, Cluster.LOBBY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "drain"));
+        System.out.println("Servidor é o " + cluster + "; barramento em " + bus);
+    }
+    
+    private void publishLobby() {
+        cluster.publishLobby(matchmaker.getDefaultWaiting(), draining);
+    }
+    
+    /**
+     * Serves the counters on a local port (see StatsServer) next to
+     * whichever transport is started afterwards.
+     */
+    public void startStats(int port) throws IOException {
+        statsServer = new StatsServer(this, port);
+        statsServer.start();
+        System.out.println("Estatísticas disponíveis em http://localhost:" + port + "/");
+    }
+    
+    /**
+     * Records every match in a journal in the given directory (see
+     * MoveJournal), with periodic snapshots of the rooms next to it. If the
+     * directory holds matches that were still on when the last server
+     * stopped, they are restored first and their players get
+     * RECOVERY_WINDOW_MILLIS to take their seats back. Must run before the
+     * transport is started.
+     */
+    public void startJournal(File directory) throws IOException {
+        Path path = Files.createDirectories(directory.toPath());
+        long start = System.nanoTime();
+        SnapshotStore.Recovered recovered = SnapshotStore.recover(path);
+        // Tokens must survive the restart along with the seats
+        if (!sharedSecret) {
+            tokens = SessionTokens.persistent(path);
+        }
+        if (recovered != null && !recovered.rooms.isEmpty()) {
+            journal = new MoveJournal(path, recovered.run, recovered.nextSegment, recovered.lastMatch);
+            rooms.setJournal(journal);
+            rooms.reserveIds(recovered.lastRoomId);
+            playerIds.reserve(recovered.lastPlayerId + RECOVERED_ID_GAP);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RECOVERY_WINDOW_MILLIS);
+            for (SnapshotStore.RoomState state : recovered.rooms.values()) {
+                GameRoom room = rooms.restore(state);
+                restoreSeat(room, state.playerX, state.seq, deadline);
+                restoreSeat(room, state.playerO, state.seq, deadline);
+            }
+            System.out.println(recovered.rooms.size() + " partidas recuperadas em "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms; os jogadores têm "
+                    + TimeUnit.MILLISECONDS.toSeconds(RECOVERY_WINDOW_MILLIS) + " s para voltar");
+        } else {
+            journal = new MoveJournal(path);
+            rooms.setJournal(journal);
+        }
+        snapshots = new SnapshotStore(path, journal, rooms, playerIds);
+        snapshots.start(SnapshotStore.DEFAULT_INTERVAL_MILLIS);
+        System.out.println("Diário de jogadas em " + directory.getAbsolutePath());
+    }
+    
+    public void startServer() {
+        matchmaker.start();
+        try {
+            serverSocket = new ServerSocket(port);
+            System.out.println("Servidor iniciado na porta " + port);
+            
+            while (true) {
+                Socket clientSocket = serverSocket.accept();
+                
+                ClientHandler clientHandler;
+                try {
+                    clientHandler = new ClientHandler(clientSocket, this, nextPlayerId());
+                } catch (IOException e) {
+                    System.err.println("Erro ao aceitar jogador: " + e.getMessage());
+                    clientSocket.close();
+                    continue;
+                }
+                acceptClient(clientHandler);
+                // One thread reads, the other drains the outbound queue
+                if (handlerExecutor != null) {
+                    handlerExecutor.execute(clientHandler);
+                    handlerExecutor.execute(clientHandler::runWriter);
+                } else {
+                    new Thread(clientHandler).start();
+                    new Thread(clientHandler::runWriter).start();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erro no servidor: " + e.getMessage());
+        } finally {
+            stopServer();
+        }
+    }
+    
+    /**
+     * Runs the blocking server with every ClientHandler on a virtual thread.
+     * The handlers keep their simple readLine() loop, but a parked virtual
+     * thread costs a few hundred bytes of heap instead of a platform stack,
+     * so one process can hold far more connections.
+     */
+    public void startVirtualThreadServer() {
+        handlerExecutor = newVirtualThreadExecutor();
+        if (handlerExecutor instanceof ThreadPoolExecutor) {
+            System.err.println("AVISO: --virtual pede Java 21+ e esta JVM é Java " + Runtime.version().feature()
+                    + "; cada conexão ocupa duas threads de plataforma, como sem a opção.");
+        } else {
+            System.out.println("Conexões em threads virtuais.");
+        }
+        startServer();
+    }
+    
+    /**
+     * Virtual threads only exist on Java 21+, so the factory is looked up
+     * reflectively to keep the sources building on older JDKs. There we fall
+     * back to a cached pool, which still reuses platform threads; callers can
+     * tell by the pool being a ThreadPoolExecutor.
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+    
+    /**
+     * One small pool runs every delayed action of every room, instead of a
+     * thread per countdown. Its tasks only take a room lock and queue a few
+     * messages, so a single thread keeps up; cancelled tasks leave the queue
+     * right away so closed rooms do not pile up in it. Each task runs in a
+     * WriteBatch, so a timer tick that touches many rooms writes to each
+     * client once.
+     */
+    private static ScheduledThreadPoolExecutor newScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(SCHEDULER_THREADS, task -> {
+            Thread thread = new Thread(task, "scheduler");
+            thread.setDaemon(true);
+            return thread;
+        }) {
+            @Override
+            protected void beforeExecute(Thread thread, Runnable task) {
+                WriteBatch.begin();
+            }
+            
+            @Override
+            protected void afterExecute(Runnable task, Throwable failure) {
+                // Also called when the task threw, so nothing is left held back
+                WriteBatch.current().end();
+            }
+        };
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+    
+    /**
+     * Runs the server on the non-blocking transport: a few selector threads
+     * serve every connection instead of one thread per player.
+     */
+    public void startNioServer(int loops) {
+        try {
+            matchmaker.start();
+            nioServer = new NioServer(this, port, loops);
+            nioServer.start();
+        } catch (IOException e) {
+            System.err.println("Erro no servidor: " + e.getMessage());
+        } finally {
+            stopServer();
+        }
+    }
+    
+    int nextPlayerId() {
+        return playerIds.next();
+    }
+    
+    /**
+     * Registers a freshly connected player, whatever the transport, and
+     * hands it to the matchmaker. Nothing here waits on the pairing.
+     */
+    void acceptClient(ClientHandler clientHandler) {
+        int total = connectedPlayers.incrementAndGet();
+        clients.put(clientHandler.getPlayerId(), clientHandler);
+        lobbyChanged(clientHandler);
+        metrics.connectionAccepted();
+        clientHandler.sendPlayerId(clientHandler.getPlayerId());
+        clientHandler.sendText(MessageType.SESSAO, tokens.issue(clientHandler.getPlayerId()));
+        if (idleTimeoutMillis > 0) {
+            timers.add(clientHandler);
+        }
+        matchmaker.enqueue(clientHandler);
+        
+        System.out.println("Jogador conectado. Total de jogadores: " + total + ", salas: " + rooms.size()
+                + ", na fila: " + matchmaker.getQueueDepth());
+    }
+    
+    /**
+     * Seats a bot against a player who waited too long. Called from the
+     * matchmaker worker, like openRoom.
+     */
+    void openBotRoom(ClientHandler client, BoardSpec spec) {
+        GameRoom room = rooms.create(spec);
+        client.sendText(MessageType.AGUARDANDO, "Nenhum oponente apareceu; você vai jogar contra o computador.");
+        room.addPlayer(client);
+        room.addPlayer(newBot(nextBotId.incrementAndGet()));
+        metrics.botRoomOpened();
+        recheckSeat(client, room);
+    }
+    
+    /**
+     * Opens a room for two matched players. Called from the matchmaker
+     * worker, never from the accept thread.
+     */
+    void openRoom(ClientHandler first, ClientHandler second, BoardSpec spec) {
+        GameRoom room = rooms.create(spec);
+        room.addPlayer(first);
+        room.addPlayer(second);
+        
+        recheckSeat(first, room);
+        recheckSeat(second, room);
+    }
+    
+    /**
+     * A player may have dropped, started watching a room or asked for another
+     * board while being seated; the handlers only see the room once setRoom
+     * has run, so check again afterwards.
+     */
+    private void recheckSeat(ClientHandler client, GameRoom room) {
+        if (client.getRoom() != room) return;
+        if (!client.isConnected() || client.getWatching() != null) {
+            leaveRoom(client);
+        } else if (!client.getBoardSpec().equals(room.getSpec())) {
+            // Its request may have been queued while unseated and then skipped
+            leaveRoom(client);
+            matchmaker.enqueue(client);
+        }
+    }
+    
+    /**
+     * Makes a client a spectator of a room, or of any match in progress when
+     * roomId is 0. A client waiting for an opponent leaves the queue.
+     */
+    void watchRoom(ClientHandler client, int roomId) {
+        GameRoom room = roomId > 0 ? rooms.get(roomId) : rooms.findInProgress();
+        if (room == null) {
+            if (roomId > 0) {
+                client.sendText(MessageType.RESULTADO, "Sala " + roomId + " não encontrada.");
+            } else {
+                client.sendText(MessageType.RESULTADO, "Nenhuma partida em andamento para assistir.");
+            }
+            return;
+        }
+        
+        stopWatching(client);
+        // Set before the checks below; openRoom checks it after seating, so
+        // a pairing that races with this is always caught by one side
+        client.setWatching(room);
+        if (client.getRoom() != null) {
+            client.setWatching(null);
+            client.sendText(MessageType.RESULTADO, "Você está em uma partida e não pode assistir outra.");
+            return;
+        }
+        if (!room.addSpectator(client)) {
+            client.setWatching(null);
+            client.sendText(MessageType.RESULTADO, "A sala " + room.getRoomId() + " acabou de ser encerrada.");
+            // Its ticket may have been skipped meanwhile
+            matchmaker.enqueue(client);
+            return;
+        }
+        // Stale from now on, even once the client stops watching
+        client.nextQueueGeneration();
+        System.out.println("Jogador " + client.getPlayerId() + " assistindo a sala " + room.getRoomId());
+    }
+    
+    void stopWatching(ClientHandler client) {
+        GameRoom room = client.getWatching();
+        if (room == null) return;
+        client.setWatching(null);
+        room.removeSpectator(client);
+    }
+    
+    void leaveRoom(ClientHandler client) {
+        GameRoom room = client.getRoom();
+        if (room == null) return;
+        
+        List<ClientHandler> remaining = room.removePlayer(client);
+        rooms.remove(room);
+        client.setRoom(null);
+        requeue(remaining);
+    }
+    
+    // Whoever was left behind in a closed room goes back to look for a new opponent; a bot just goes
+    private void requeue(List<ClientHandler> remaining) {
+        for (ClientHandler opponent : remaining) {
+            opponent.setRoom(null);
+            if (!opponent.isBot()) {
+                matchmaker.enqueue(opponent);
+            }
+        }
+    }
+    
+    /**
+     * Fills a seat of a recovered room: a bot's seat gets a new bot right
+     * away, a player's is held until the deadline. Without bots enabled a
+     * bot's seat is held like any other and given up on when it expires.
+     */
+    private void restoreSeat(GameRoom room, int playerId, int seq, long deadline) {
+        if (BotPlayer.isBotId(playerId) && solver != null) {
+            nextBotId.accumulateAndGet(playerId, Math::max);
+            room.resume(newBot(playerId), playerId, seq);
+            return;
+        }
+        holdSeat(room, playerId, deadline);
+    }
+    
+    /**
+     * Keeps a seat for a player who is away until the deadline, in
+     * System.nanoTime() terms.
+     */
+    private void holdSeat(GameRoom room, int playerId, long deadline) {
+        HeldSeat seat = new HeldSeat(room, playerId, deadline);
+        heldSeats.put(playerId, seat);
+        timers.add(seat);
+    }
+    
+    /**
+     * A player in a room dropped: keeps its seat for the reconnect window if
+     * a match is under way, otherwise leaves the room as before. Runs on the
+     * matchmaker's thread, like resumeSeat, so the two never cross.
+     */
+    private void holdOrLeave(ClientHandler client) {
+        GameRoom room = client.getRoom();
+        if (room == null) return;
+        if (!room.holdSeat(client, reconnectWindowMillis)) {
+            leaveRoom(client);
+            return;
+        }
+        client.setRoom(null);
+        holdSeat(room, client.getPlayerId(), System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(reconnectWindowMillis));
+        metrics.seatHeld();
+        System.out.println("Jogador " + client.getPlayerId() + " caiu; lugar na sala " + room.getRoomId() + " reservado por "
+                + TimeUnit.MILLISECONDS.toSeconds(reconnectWindowMillis) + " s");
+    }
+    
+    /**
+     * RETOMAR: hands the client the seat held for the player its token was
+     * issued to. The work is done on the matchmaker's thread, so the client
+     * cannot be paired with somebody else halfway through.
+     *
+     * @param lastSeq the last board update the client saw, -1 for none
+     */
+    void resumeSession(ClientHandler client, String token, int lastSeq) {
+        matchmaker.submit(() -> resumeSeat(client, token, lastSeq));
+    }
+    
+    private void resumeSeat(ClientHandler client, String token, int lastSeq) {
+        if (!client.isConnected()) return;
+        int playerId = tokens.verify(token);
+        ClientHandler previous = playerId > 0 ? clients.get(playerId) : null;
+        if (previous != null && previous != client && previous.getRoom() != null) {
+            // Its old connection is gone but the server has not noticed yet: drop it, keeping the seat
+            previous.abort();
+            holdOrLeave(previous);
+        }
+        HeldSeat held = playerId > 0 ? heldSeats.get(playerId) : null;
+        if (held == null) {
+            client.sendText(MessageType.RESULTADO, "Nenhuma partida para retomar com esta sessão.");
+            return;
+        }
+        GameRoom current = client.getRoom();
+        if (current != null) {
+            if (!current.isUntouched()) {
+                client.sendText(MessageType.RESULTADO, "Você já está em outra partida.");
+                return;
+            }
+            // Paired before the request arrived; nothing was played there, so give that seat up
+            leaveRoom(client);
+        }
+        boolean wasWatching = client.getWatching() != null;
+        stopWatching(client);
+        
+        GameRoom room = held.room;
+        int oldId = client.getPlayerId();
+        if (!room.resume(client, playerId, lastSeq)) {
+            // The seat was given up on in the meantime
+            client.sendText(MessageType.RESULTADO, "Nenhuma partida para retomar com esta sessão.");
+            if (current != null || wasWatching) {
+                matchmaker.enqueue(client);
+            }
+            return;
+        }
+        heldSeats.remove(playerId, held);
+        clients.remove(oldId, client);
+        clients.put(playerId, client);
+        // The token it got on connecting was for the ID it just gave up
+        client.sendText(MessageType.SESSAO, token);
+        // Whatever ticket it had in the queue is stale from now on
+        client.nextQueueGeneration();
+        metrics.seatResumed();
+        System.out.println("Jogador " + playerId + " voltou para a sala " + room.getRoomId());
+        if (!client.isConnected()) {
+            // Dropped again meanwhile; removeClient may have missed the new ID
+            clients.remove(playerId, client);
+            holdOrLeave(client);
+        }
+    }
+    
+    /**
+     * Gives up on a player who did not come back in time: its room closes
+     * and the opponent, if it is there, looks for a new one.
+     */
+    private void abandonSeat(HeldSeat seat) {
+        GameRoom room = seat.room;
+        int playerId = seat.playerId;
+        if (!heldSeats.remove(playerId, seat)) return;
+        List<ClientHandler> remaining = room.abandonSeat(playerId);
+        if (remaining == null) return;
+        rooms.remove(room);
+        requeue(remaining);
+        metrics.seatAbandoned();
+        System.out.println("Jogador " + playerId + " não voltou; sala " + room.getRoomId() + " encerrada");
+    }
+    
+    /**
+     * A seat held for a player who is away, on the timer wheel until the
+     * player is back or the deadline passes. A player who comes back and
+     * drops again gets a new one; the old one then leaves the wheel without
+     * touching the seat.
+     */
+    private final class HeldSeat implements TimerWheel.Timed {
+        private final GameRoom room;
+        private final int playerId;
+        private final long deadline;
+        
+        HeldSeat(GameRoom room, int playerId, long deadline) {
+            this.room = room;
+            this.playerId = playerId;
+            this.deadline = deadline;
+        }
+        
+        @Override
+        public long expire(long now) {
+            if (heldSeats.get(playerId) != this) return TimerWheel.DONE;
+            if (now - deadline < 0) return deadline;
+            abandonSeat(this);
+            return TimerWheel.DONE;
+        }
+    }
+    
+    public void removeClient(ClientHandler client) {
+        int total = connectedPlayers.decrementAndGet();
+        // Marked first, so a RETOMAR moving it to another ID sees it gone (see resumeSeat)
+        client.markDisconnected();
+        clients.remove(client.getPlayerId(), client);
+        lobbyChanged(client);
+        stopWatching(client);
+        if (reconnectWindowMillis > 0) {
+            matchmaker.submit(() -> holdOrLeave(client));
+        } else {
+            leaveRoom(client);
+        }
+        System.out.println("Jogador desconectado. Total de jogadores: " + total + ", salas: " + rooms.size());
+    }
+    
+    /**
+     * CHAT from a player with no room: it goes to every player still
+     * looking for an opponent, on every node of the cluster.
+     */
+    void lobbyChat(int playerId, String text) {
+        if (deliverLobbyChat(playerId, text) && cluster != null) {
+            cluster.publishChat(playerId, text);
+        }
+    }
+    
+    private boolean deliverLobbyChat(int playerId, String text) {
+        return chatLane.post(null, "[saguão] " + playerId + ": " + text);
+    }
+    
+    /**
+     * Adds to receivers everyone who hears lobby chat: the connected players
+     * with no room who are not watching one. Called by the ChatLane.
+     */
+    void lobbyReceivers(List<ClientHandler> receivers) {
+        receivers.addAll(lobby);
+    }
+    
+    /**
+     * Puts a player in or takes it out of the lobby after its room, the room
+     * it watches or its connection changed. Calls for one player are
+     * serialized, so the last one sees both fields as they ended up.
+     */
+    void lobbyChanged(ClientHandler client) {
+        if (client.isBot()) return;
+        synchronized (client) {
+            if (client.isConnected() && client.getRoom() == null && client.getWatching() == null) {
+                lobby.add(client);
+            } else {
+                lobby.remove(client);
+            }
+        }
+    }
+    
+    /**
+     * Carries on with a room another node handed off as it shut down. It is
+     * restored like a room recovered after a crash, with its seats held
+     * until the players come back through the gateway, and announced so the
+     * gateway knows to send them here. Runs on the matchmaker's thread.
+     */
+    private void adoptRoom(SnapshotStore.RoomState state) {
+        if (rooms.get(state.roomId) != null) {
+            // Sent again because our answer was lost; room IDs are unique across the cluster
+            cluster.publishAdopted(state.roomId, state.playerX, state.playerO);
+            return;
+        }
+        state.matchId = journal != null && state.active ? journalAdopted(state) : 0;
+        GameRoom room = rooms.restore(state);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RECOVERY_WINDOW_MILLIS);
+        restoreSeat(room, state.playerX, state.seq, deadline);
+        restoreSeat(room, state.playerO, state.seq, deadline);
+        cluster.publishAdopted(state.roomId, state.playerX, state.playerO);
+        metrics.roomAdopted();
+        System.out.println("Sala " + state.roomId + " recebida de outro nó; os jogadores têm "
+                + TimeUnit.MILLISECONDS.toSeconds(RECOVERY_WINDOW_MILLIS) + " s para voltar");
+    }
+    
+    /**
+     * Starts an adopted match in this node's journal with the board it
+     * arrived with, so that recovery and Reprodutor do not need a snapshot
+     * to know the moves made on the other node. Returns the match number;
+     * the other node's means nothing here.
+     */
+    private int journalAdopted(SnapshotStore.RoomState state) {
+        int match = journal.matchStarted(state.roomId, state.seq, state.spec, state.playerX, state.playerO);
+        for (int cell = 0; cell < state.cells.length; cell++) {
+            char symbol = (char) state.cells[cell];
+            if (symbol == 'X' || symbol == 'O') {
+                journal.placed(match, state.roomId, state.seq, cell, symbol, state.currentPlayer);
+            }
+        }
+        return match;
+    }
+    
+    /**
+     * Leaves the cluster on shutdown (SIGTERM or Ctrl+C). The node first
+     * reports that it is draining, so the gateway sends it nobody new, then
+     * hands every room with a match to a live node and waits for each to be
+     * adopted before it closes, sending again the hand-offs not answered.
+     * They go out in short bursts: the bus is datagrams, and a node with
+     * many rooms would otherwise overflow the receivers' socket buffers.
+     * The players' clients reconnect through the gateway and take their
+     * seats back with RETOMAR on the new node. A room nobody took stays in
+     * the journal, if there is one, for this node's next start.
+     */
+    void drain() {
+        // Already stopped, by an earlier drain or with stopServer
+        if (stopped.get()) return;
+        draining = true;
+        publishLobby();
+        ByteBuffer record = ByteBuffer.allocate(SnapshotStore.ROOM_HEADER_SIZE + BoardSpec.MAX_SIZE * BoardSpec.MAX_SIZE);
+        // The room is closed once handed off, so its record is kept for sending again
+        Map<Integer, ByteBuffer> records = new HashMap<>();
+        Map<Integer, Integer> successors = new HashMap<>();
+        rooms.forEach(room -> {
+            int node = cluster.successorFor(room.getRoomId());
+            record.clear();
+            if (node < 0 || !room.handOff(record)) return;
+            record.flip();
+            records.put(room.getRoomId(), ByteBuffer.allocate(record.remaining()).put(record).flip());
+            successors.put(room.getRoomId(), node);
+            handingOff.put(room.getRoomId(), room);
+        });
+        int sent = handingOff.size();
+        try {
+            publishHandOffs(records, successors);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(HAND_OFF_TIMEOUT_MILLIS);
+            long resend = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(HAND_OFF_RESEND_MILLIS);
+            while (!handingOff.isEmpty() && System.nanoTime() - deadline < 0) {
+                Thread.sleep(10);
+                if (System.nanoTime() - resend >= 0) {
+                    publishHandOffs(records, successors);
+                    resend = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(HAND_OFF_RESEND_MILLIS);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (sent > 0) {
+            System.out.println((sent - handingOff.size()) + " de " + sent + " salas transferidas para outros nós");
+        }
+        stopServer();
+        cluster.close();
+    }
+    
+    /**
+     * Sends the hand-off of every room not adopted yet, HAND_OFF_BURST at a time.
+     */
+    private void publishHandOffs(Map<Integer, ByteBuffer> records, Map<Integer, Integer> successors)
+            throws InterruptedException {
+        int burst = 0;
+        for (Integer roomId : handingOff.keySet()) {
+            if (burst == HAND_OFF_BURST) {
+                Thread.sleep(HAND_OFF_PAUSE_MILLIS);
+                burst = 0;
+            }
+            // Adopted while this burst was going out
+            if (!handingOff.containsKey(roomId)) continue;
+            cluster.publishHandOff(successors.get(roomId), records.get(roomId).duplicate());
+            burst++;
+        }
+    }
+    
+    /**
+     * What this node hears from the rest of the cluster.
+     */
+    private final class ClusterEvents implements Cluster.Listener {
+        @Override
+        public void onLobbyChat(int playerId, String text) {
+            deliverLobbyChat(playerId, text);
+        }
+        
+        @Override
+        public void onHandOff(SnapshotStore.RoomState state) {
+            // Like a returning player, so it never races with a pairing
+            matchmaker.submit(() -> adoptRoom(state));
+        }
+        
+        @Override
+        public void onAdopted(int node, int roomId, int playerX, int playerO) {
+            GameRoom room = handingOff.remove(roomId);
+            if (room == null) return;
+            room.handedOff();
+            rooms.remove(room);
+            metrics.roomHandedOff();
+        }
+    }
+    
+    Metrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Current counters in the text format served by the stats port: the
+     * gauges read from the server's own state, then everything Metrics
+     * counted.
+     */
+    String renderStats() {
+        long queued = 0;
+        long deepest = 0;
+        for (ClientHandler client : clients.values()) {
+            int bytes = client.getQueuedBytes();
+            queued += bytes;
+            deepest = Math.max(deepest, bytes);
+        }
+        StringBuilder out = new StringBuilder(4096);
+        Metrics.line(out, "conexoes_ativas", connectedPlayers.get());
+        Metrics.line(out, "salas_abertas", rooms.size());
+        Metrics.line(out, "fila_espera", matchmaker.getQueueDepth());
+        Metrics.line(out, "lugares_reservados", heldSeats.size());
+        Metrics.line(out, "fila_saida_bytes", queued);
+        Metrics.line(out, "fila_saida_max_bytes", deepest);
+        if (solver != null) {
+            Metrics.line(out, "bot_tabela_consultas_total", solver.getProbes());
+            Metrics.line(out, "bot_tabela_acertos_total", solver.getHits());
+        }
+        metrics.render(out);
+        return out.toString();
+    }
+    
+    ChatLane getChatLane() {
+        return chatLane;
+    }
+    
+    public Matchmaker getMatchmaker() {
+        return matchmaker;
+    }
+    
+    public BoardSpec getDefaultSpec() {
+        return defaultSpec;
+    }
+    
+    public int getOutboundLimit() {
+        return outboundLimit;
+    }
+    
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+    
+    public long getPingIntervalMillis() {
+        return pingIntervalMillis;
+    }
+    
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+    
+    long getChatIntervalNanos() {
+        return chatIntervalNanos;
+    }
+    
+    public void stopServer() {
+        // Also called from the drain on shutdown, racing with the transport giving up
+        if (!stopped.compareAndSet(false, true)) return;
+        try {
+            if (serverSocket != null && !serverSocket.isClosed()) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar o servidor: " + e.getMessage());
+        }
+        if (nioServer != null) {
+            nioServer.stop();
+        }
+        if (handlerExecutor != null) {
+            handlerExecutor.shutdown();
+        }
+        if (statsServer != null) {
+            statsServer.stop();
+        }
+        matchmaker.stop();
+        chatLane.stop();
+        if (botPool != null) {
+            botPool.shutdownNow();
+        }
+        scheduler.shutdownNow();
+        if (snapshots != null) {
+            snapshots.close();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+    
+    public static void main(String[] args) {
+        boolean nio = false;
+        boolean virtual = false;
+        int loops = Runtime.getRuntime().availableProcessors();
+        int shards = Runtime.getRuntime().availableProcessors();
+        long waitTimeoutMillis = 0;
+        int boardSize = BoardSpec.CLASSIC.getSize();
+        int winLength = -1;
+        int outboundLimit = DEFAULT_OUTBOUND_LIMIT;
+        OverflowPolicy overflowPolicy = OverflowPolicy.COALESCE;
+        long pingIntervalMillis = DEFAULT_PING_INTERVAL_MILLIS;
+        long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+        long turnTimeoutMillis = DEFAULT_TURN_TIMEOUT_MILLIS;
+        long reconnectWindowMillis = DEFAULT_RECONNECT_WINDOW_MILLIS;
+        int statsPort = 0;
+        String journalDirectory = null;
+        long botDelayMillis = -1;
+        double chatRate = DEFAULT_CHAT_RATE;
+        int port = PORT;
+        int node = 0;
+        int nodes = 1;
+        int busPort = LoopbackBus.DEFAULT_BASE_PORT;
+        String secretDirectory = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("--nio".equals(args[i])) {
+                nio = true;
+            } else if ("--virtual".equals(args[i])) {
+                virtual = true;
+            } else if ("--loops".equals(args[i]) && i + 1 < args.length) {
+                loops = Integer.parseInt(args[++i]);
+            } else if ("--shards".equals(args[i]) && i + 1 < args.length) {
+                shards = Integer.parseInt(args[++i]);
+            } else if ("--espera".equals(args[i]) && i + 1 < args.length) {
+                waitTimeoutMillis = Long.parseLong(args[++i]) * 1000;
+            } else if ("--tabuleiro".equals(args[i]) && i + 1 < args.length) {
+                boardSize = Integer.parseInt(args[++i]);
+            } else if ("--sequencia".equals(args[i]) && i + 1 < args.length) {
+                winLength = Integer.parseInt(args[++i]);
+            } else if ("--fila-saida".equals(args[i]) && i + 1 < args.length) {
+                outboundLimit = Integer.parseInt(args[++i]) * 1024;
+            } else if ("--excesso".equals(args[i]) && i + 1 < args.length) {
+                overflowPolicy = OverflowPolicy.fromOption(args[++i]);
+                if (overflowPolicy == null) {
+                    System.err.println("Política desconhecida: " + args[i] + " (use descartar, desconectar ou coalescer)");
+                    return;
+                }
+            } else if ("--ping".equals(args[i]) && i + 1 < args.length) {
+                pingIntervalMillis = Long.parseLong(args[++i]) * 1000;
+            } else if ("--inatividade".equals(args[i]) && i + 1 < args.length) {
+                idleTimeoutMillis = Long.parseLong(args[++i]) * 1000;
+            } else if ("--tempo-jogada".equals(args[i]) && i + 1 < args.length) {
+                turnTimeoutMillis = Long.parseLong(args[++i]) * 1000;
+            } else if ("--reconexao".equals(args[i]) && i + 1 < args.length) {
+                reconnectWindowMillis = Long.parseLong(args[++i]) * 1000;
+            } else if ("--estatisticas".equals(args[i]) && i + 1 < args.length) {
+                statsPort = Integer.parseInt(args[++i]);
+            } else if ("--diario".equals(args[i]) && i + 1 < args.length) {
+                journalDirectory = args[++i];
+            } else if ("--bot".equals(args[i]) && i + 1 < args.length) {
+                botDelayMillis = Long.parseLong(args[++i]) * 1000;
+            } else if ("--chat".equals(args[i]) && i + 1 < args.length) {
+                chatRate = Double.parseDouble(args[++i]);
+            } else if ("--porta".equals(args[i]) && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if ("--no".equals(args[i]) && i + 1 < args.length) {
+                String[] parts = args[++i].split("/");
+                if (parts.length == 2) {
+                    node = Integer.parseInt(parts[0]);
+                    nodes = Integer.parseInt(parts[1]);
+                }
+                if (parts.length != 2 || nodes < 1 || node < 0 || node >= nodes) {
+                    System.err.println("Nó inválido: " + args[i] + " (use índice/total, por exemplo 0/3)");
+                    return;
+                }
+            } else if ("--barramento".equals(args[i]) && i + 1 < args.length) {
+                busPort = Integer.parseInt(args[++i]);
+            } else if ("--segredo".equals(args[i]) && i + 1 < args.length) {
+                secretDirectory = args[++i];
+            }
+        }
+        
+        // Without --sequencia, small boards need a full line and larger ones five in a row
+        if (winLength < 0) {
+            winLength = Math.min(boardSize, 5);
+        }
+        
+        Servidor server = new Servidor(waitTimeoutMillis, shards, new BoardSpec(boardSize, winLength),
+                outboundLimit, overflowPolicy, pingIntervalMillis, idleTimeoutMillis, turnTimeoutMillis);
+        server.setReconnectWindow(reconnectWindowMillis);
+        server.setChatRate(chatRate);
+        server.setPort(port);
+        if (botDelayMillis >= 0) {
+            server.enableBots(botDelayMillis);
+        }
+        if (secretDirectory != null) {
+            try {
+                server.shareSessionSecret(new File(secretDirectory));
+            } catch (IOException e) {
+                System.err.println("Não foi possível ler o segredo das sessões em " + secretDirectory + ": " + e.getMessage());
+                return;
+            }
+        }
+        if (nodes > 1) {
+            if (secretDirectory == null) {
+                System.err.println("Sem --segredo cada nó assina as sessões com o seu próprio segredo, "
+                        + "e quem estava num nó desligado não consegue retomar a partida em outro.");
+            }
+            try {
+                // The gateway takes the bus port after the nodes'
+                server.joinCluster(node, nodes, new LoopbackBus(busPort, node, nodes + 1));
+            } catch (IOException e) {
+                System.err.println("Não foi possível entrar no barramento na porta " + (busPort + node) + ": " + e.getMessage());
+                return;
+            }
+        }
+        if (statsPort > 0) {
+            try {
+                server.startStats(statsPort);
+            } catch (IOException e) {
+                System.err.println("Não foi possível abrir a porta de estatísticas " + statsPort + ": " + e.getMessage());
+                return;
+            }
+        }
+        if (journalDirectory != null) {
+            try {
+                server.startJournal(new File(journalDirectory));
+            } catch (IOException e) {
+                System.err.println("Não foi possível abrir o diário de jogadas em " + journalDirectory + ": " + e.getMessage());
+                return;
+            }
+        }
+        if (nio) {
+            server.startNioServer(loops);
+        } else if (virtual) {
+            server.startVirtualThreadServer();
+        } else {
+            server.startServer();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,126 @@
+package jogo;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import javax.crypto.*;
+import javax.crypto.spec.*;
+
+/**
+ * Session tokens: what a player presents with RETOMAR to get its seat back
+ * on a new connection. A token is the player ID plus an HMAC of it under a
+ * server secret, e.g. "42-9f86d081884c7d65", so the server stores nothing
+ * per player and can still check a token after a restart, as long as the
+ * secret survives; with a journal it is kept in a file next to it.
+ */
+final class SessionTokens {
+    static final String SECRET_FILE = "sessoes.segredo";
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int SECRET_BYTES = 32;
+    // 64 bits of the MAC are plenty to stop guessing over a network
+    private static final int MAC_BYTES = 8;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private final Mac mac;
+    
+    private SessionTokens(byte[] secret) {
+        try {
+            mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(secret, ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            // Every Java runtime is required to provide HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Tokens that only this process will accept.
+     */
+    static SessionTokens ephemeral() {
+        byte[] secret = new byte[SECRET_BYTES];
+        new SecureRandom().nextBytes(secret);
+        return new SessionTokens(secret);
+    }
+    
+    /**
+     * Tokens under the secret kept in the given directory, created on first
+     * use, so they stay valid across restarts. Several servers may share the
+     * directory, and may start at the same time: whichever creates the file
+     * first wins and the others read its secret.
+     */
+    static SessionTokens persistent(Path directory) throws IOException {
+        Path file = directory.resolve(SECRET_FILE);
+        byte[] secret;
+        if (Files.exists(file)) {
+            secret = Files.readAllBytes(file);
+        } else {
+            secret = new byte[SECRET_BYTES];
+            new SecureRandom().nextBytes(secret);
+            Path temporary = Files.createTempFile(directory, SECRET_FILE, ".tmp");
+            try {
+                Files.write(temporary, secret);
+                // Unlike a rename, a link never replaces a secret somebody else already wrote
+                Files.createLink(file, temporary);
+            } catch (FileAlreadyExistsException e) {
+                secret = Files.readAllBytes(file);
+            } finally {
+                Files.delete(temporary);
+            }
+        }
+        if (secret.length < SECRET_BYTES) {
+            throw new IOException("segredo das sessões corrompido em " + file);
+        }
+        return new SessionTokens(secret);
+    }
+    
+    public String issue(int playerId) {
+        return playerId + "-" + hex(sign(playerId));
+    }
+    
+    /**
+     * Returns the player a token was issued to, or 0 if it is not one of
+     * ours.
+     */
+    public int verify(String token) {
+        int playerId = playerOf(token);
+        if (playerId <= 0) return 0;
+        int dash = token.indexOf('-');
+        byte[] expected = hex(sign(playerId)).getBytes(StandardCharsets.US_ASCII);
+        byte[] given = token.substring(dash + 1).getBytes(StandardCharsets.US_ASCII);
+        // Constant time, so the MAC cannot be found byte by byte
+        return MessageDigest.isEqual(expected, given) ? playerId : 0;
+    }
+    
+    /**
+     * The player a token claims to be for, without checking it; 0 if it is
+     * not even shaped like a token. Enough for the Gateway to pick the node
+     * that can check it.
+     */
+    static int playerOf(String token) {
+        int dash = token.indexOf('-');
+        if (dash <= 0) return 0;
+        try {
+            return Integer.parseInt(token.substring(0, dash));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    
+    private synchronized byte[] sign(int playerId) {
+        byte[] digest = mac.doFinal(new byte[] {
+                (byte) (playerId >>> 24), (byte) (playerId >>> 16), (byte) (playerId >>> 8), (byte) playerId});
+        byte[] truncated = new byte[MAC_BYTES];
+        System.arraycopy(digest, 0, truncated, 0, MAC_BYTES);
+        return truncated;
+    }
+    
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,138 @@
+package jogo;
+
+import java.nio.*;
+
+/**
+ * One room event encoded at most once per wire protocol, shared by every
+ * player and spectator of the room instead of being encoded again for each
+ * of them.
+ *
+ * A room owns a single frame and reuses it for every event: it is filled
+ * and fanned out under the room lock, and each receiver copies the bytes
+ * into its outbound queue, or writes them straight to its socket, before
+ * the next event overwrites them.
+ *
+ * The encode methods only record the event; each protocol's bytes are
+ * written the first time a receiver on that protocol asks for them, so a
+ * room where nobody negotiated BINARIO never encodes the binary form. The
+ * board of a snapshot is read then too, which is still under the room lock.
+ */
+final class SharedFrame {
+    private static final int INT = 0;
+    private static final int MOVE = 1;
+    private static final int SNAPSHOT = 2;
+    private static final int TEXT = 3;
+    
+    private final ByteBuffer textBuffer;
+    private final ByteBuffer binaryBuffer;
+    // What the current event went into: the buffers above, or one-offs for
+    // an unusually large one; null until a receiver asks for that protocol
+    private ByteBuffer text;
+    private ByteBuffer binary;
+    
+    // The current event
+    private MessageType type;
+    private int kind;
+    private int capacity;
+    // The int of INT, the seq of MOVE and SNAPSHOT
+    private int value;
+    private int playerId;
+    private int row;
+    private int col;
+    private char symbol;
+    private Board board;
+    private String message;
+    
+    /**
+     * @param capacity bytes each encoding can take without allocating; a
+     *                 room sizes it to fit its own board snapshot
+     */
+    public SharedFrame(int capacity) {
+        textBuffer = ByteBuffer.allocate(capacity);
+        binaryBuffer = ByteBuffer.allocate(capacity);
+    }
+    
+    public void encodeInt(MessageType type, int value) {
+        begin(type, INT, 32);
+        this.value = value;
+    }
+    
+    public void encodeMove(int playerId, int row, int col, char symbol, int seq) {
+        begin(MessageType.MOVIMENTO, MOVE, 64);
+        this.playerId = playerId;
+        this.row = row;
+        this.col = col;
+        this.symbol = symbol;
+        this.value = seq;
+    }
+    
+    public void encodeSnapshot(int seq, Board board) {
+        begin(MessageType.ESTADO, SNAPSHOT, WireProtocol.snapshotCapacity(board));
+        this.board = board;
+        this.value = seq;
+    }
+    
+    public void encodeText(MessageType type, String message) {
+        begin(type, TEXT, WireProtocol.textCapacity(message));
+        this.message = message;
+    }
+    
+    /**
+     * The current event as encoded for a connection on the given protocol,
+     * ready for reading, encoding it on the first call for that protocol. A
+     * receiver may move its position while sending but must put it back,
+     * since the next receiver reads the same bytes.
+     */
+    public ByteBuffer encodedFor(WireProtocol protocol) {
+        if (protocol == BinaryProtocol.INSTANCE) {
+            if (binary == null) binary = encode(protocol, binaryBuffer);
+            return binary;
+        }
+        if (text == null) text = encode(protocol, textBuffer);
+        return text;
+    }
+    
+    // What kind of message the current event is
+    public MessageType type() {
+        return type;
+    }
+    
+    private void begin(MessageType type, int kind, int capacity) {
+        this.type = type;
+        this.kind = kind;
+        this.capacity = capacity;
+        // Not kept past the event they belong to
+        board = null;
+        message = null;
+        text = null;
+        binary = null;
+    }
+    
+    private ByteBuffer encode(WireProtocol protocol, ByteBuffer reusable) {
+        ByteBuffer out = buffer(reusable, capacity);
+        switch (kind) {
+            case INT:
+                protocol.writeInt(out, type, value);
+                break;
+            case MOVE:
+                protocol.writeMove(out, playerId, row, col, symbol, value);
+                break;
+            case SNAPSHOT:
+                protocol.writeSnapshot(out, value, board);
+                break;
+            default:
+                protocol.writeText(out, type, message);
+                break;
+        }
+        out.flip();
+        return out;
+    }
+    
+    private static ByteBuffer buffer(ByteBuffer reusable, int capacity) {
+        if (capacity > reusable.capacity()) {
+            return ByteBuffer.allocate(capacity);
+        }
+        reusable.clear();
+        return reusable;
+    }
+}
\ No newline at end of file
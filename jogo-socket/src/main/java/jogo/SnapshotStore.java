@@ -0,0 +1,291 @@
+package jogo;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Periodic snapshots of every room with a match, and the crash recovery
+ * that reads the latest one back. A snapshot holds, per room, its players,
+ * board, sequence number and whose turn it is; the MoveJournal holds every
+ * move since. Together they give the state of every room at the moment the
+ * server died: recovery loads the snapshot and replays only the journal
+ * from the point the snapshot was taken, so it takes time proportional to
+ * the number of rooms plus a few seconds of moves, not to the whole history.
+ *
+ * Snapshots are written on a thread of their own, room by room under each
+ * room's lock, to a temporary file that then replaces the previous
+ * snapshot, so there is always one complete snapshot on disk.
+ *
+ * File layout, big-endian: a header (magic, version, journal run, journal
+ * position, last match, player and room IDs handed out), then one record
+ * per room (see GameRoom.snapshot) and a room ID of 0 at the end.
+ */
+final class SnapshotStore implements Closeable {
+    static final String FILE = "salas.instantaneo";
+    static final long DEFAULT_INTERVAL_MILLIS = 10_000;
+    private static final int MAGIC = 0x4A56534E;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Fixed part of a room record; the board follows
+    static final int ROOM_HEADER_SIZE = 24;
+    
+    private final Path directory;
+    private final MoveJournal journal;
+    private final RoomRegistry rooms;
+    private final IdSequence playerIds;
+    private final ScheduledExecutorService executor;
+    // Reused for every room; only the snapshot thread touches it
+    private final ByteBuffer record = ByteBuffer.allocate(ROOM_HEADER_SIZE + BoardSpec.MAX_SIZE * BoardSpec.MAX_SIZE);
+    
+    /**
+     * A room as recovered: the last snapshot of it with the journal applied.
+     */
+    static final class RoomState {
+        int roomId;
+        int matchId;
+        int seq;
+        int playerX;
+        int playerO;
+        BoardSpec spec;
+        char currentPlayer;
+        // False between matches, when the next one was about to start
+        boolean active;
+        // Row by row, 'X', 'O' or '-'
+        byte[] cells;
+    }
+    
+    /**
+     * What recovery found: the rooms to restore and where numbering carries on.
+     */
+    static final class Recovered {
+        String run;
+        int nextSegment;
+        int lastMatch;
+        int lastPlayerId;
+        int lastRoomId;
+        final Map<Integer, RoomState> rooms = new HashMap<>();
+    }
+    
+    /**
+     * @param playerIds the server's player IDs, the last of which is saved
+     *                  with every snapshot so a recovered server does not
+     *                  hand out IDs that still have seats
+     */
+    public SnapshotStore(Path directory, MoveJournal journal, RoomRegistry rooms, IdSequence playerIds) {
+        this.directory = directory;
+        this.journal = journal;
+        this.rooms = rooms;
+        this.playerIds = playerIds;
+        this.executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    public void start(long intervalMillis) {
+        executor.scheduleWithFixedDelay(this::writeQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    private void writeQuietly() {
+        try {
+            write();
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Erro ao gravar o instantâneo das salas: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Writes a snapshot of every room and returns how many rooms it holds.
+     */
+    int write() throws IOException {
+        // Taken first: whatever the journal gets from here on is replayed over the snapshot
+        long position = journal.position();
+        if (position < 0) return 0;
+        Path temporary = directory.resolve(FILE + ".tmp");
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(journal.getRun());
+            out.writeLong(position);
+            out.writeInt(journal.lastMatch());
+            out.writeInt(playerIds.last());
+            out.writeInt(rooms.lastRoomId());
+            int[] written = new int[1];
+            rooms.forEach(room -> {
+                record.clear();
+                if (room.snapshot(record)) {
+                    try {
+                        out.write(record.array(), 0, record.position());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    written[0]++;
+                }
+            });
+            count = written[0];
+            out.writeInt(0);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+    
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+    
+    /**
+     * Rebuilds the rooms that had a match when the last run in the directory
+     * stopped: its latest snapshot plus the journal after it, or the whole
+     * journal if the run died before its first snapshot. Returns null if
+     * there is no journal at all.
+     */
+    static Recovered recover(Path directory) throws IOException {
+        SortedMap<String, List<Path>> runs = MoveJournal.runs(directory);
+        if (runs.isEmpty()) return null;
+        Recovered recovered = new Recovered();
+        recovered.run = runs.lastKey();
+        List<Path> files = runs.get(recovered.run);
+        recovered.nextSegment = MoveJournal.segmentIndex(files.get(files.size() - 1)) + 1;
+        
+        long position = readSnapshot(directory.resolve(FILE), recovered);
+        int fromSegment = (int) (position >>> 32);
+        int fromRecord = (int) position;
+        MoveJournal.Visitor visitor = (type, detail, cell, match, roomId, seq, player, other, time) -> {
+            recovered.lastMatch = Math.max(recovered.lastMatch, match);
+            recovered.lastRoomId = Math.max(recovered.lastRoomId, roomId);
+            apply(recovered.rooms, type, detail, cell, match, roomId, seq, player, other);
+            if (type == MoveJournal.MATCH_STARTED) {
+                // Bots are numbered apart from players and must not push the players' counter up
+                if (!BotPlayer.isBotId(player)) recovered.lastPlayerId = Math.max(recovered.lastPlayerId, player);
+                if (!BotPlayer.isBotId(other)) recovered.lastPlayerId = Math.max(recovered.lastPlayerId, other);
+            }
+        };
+        for (Path file : files) {
+            int index = MoveJournal.segmentIndex(file);
+            if (index < fromSegment) continue;
+            MoveJournal.read(file, index == fromSegment ? fromRecord : 0, visitor);
+        }
+        return recovered;
+    }
+    
+    /**
+     * Loads the snapshot if it belongs to the run being recovered and
+     * returns the journal position to replay from; 0 (the very start) if
+     * there is no usable snapshot.
+     */
+    private static long readSnapshot(Path file, Recovered recovered) throws IOException {
+        if (!Files.exists(file)) return 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.err.println("Instantâneo das salas ignorado: formato desconhecido");
+                return 0;
+            }
+            // A snapshot of an older run is of no use for this one
+            if (!in.readUTF().equals(recovered.run)) return 0;
+            long position = in.readLong();
+            recovered.lastMatch = in.readInt();
+            recovered.lastPlayerId = in.readInt();
+            recovered.lastRoomId = in.readInt();
+            while (true) {
+                int roomId = in.readInt();
+                if (roomId == 0) break;
+                recovered.rooms.put(roomId, readRoom(roomId, in));
+            }
+            return position;
+        } catch (EOFException e) {
+            // Cannot happen with the rename, but a truncated file must not stop the server
+            System.err.println("Instantâneo das salas incompleto; recuperando só pelo diário");
+            recovered.rooms.clear();
+            recovered.lastMatch = 0;
+            recovered.lastPlayerId = 0;
+            recovered.lastRoomId = 0;
+            return 0;
+        }
+    }
+    
+    /**
+     * Reads the rest of a room record (see GameRoom.snapshot) after its room
+     * ID, from a snapshot file or from a room handed over by another node.
+     */
+    static RoomState readRoom(int roomId, DataInput in) throws IOException {
+        RoomState state = new RoomState();
+        state.roomId = roomId;
+        state.matchId = in.readInt();
+        state.seq = in.readInt();
+        state.playerX = in.readInt();
+        state.playerO = in.readInt();
+        int size = in.readUnsignedByte();
+        state.spec = new BoardSpec(size, in.readUnsignedByte());
+        state.currentPlayer = (char) in.readUnsignedByte();
+        state.active = in.readBoolean();
+        state.cells = new byte[size * size];
+        in.readFully(state.cells);
+        return state;
+    }
+    
+    /**
+     * Applies one journal record. Records the snapshot already reflects
+     * are recognised by their match number and sequence and skipped, so it
+     * does not matter that the replay starts a little early.
+     */
+    private static void apply(Map<Integer, RoomState> rooms, byte type, byte detail, int cell, int match,
+                              int roomId, int seq, int player, int other) {
+        RoomState state = rooms.get(roomId);
+        switch (type) {
+            case MoveJournal.MATCH_STARTED:
+                if (state != null && state.matchId >= match) return;
+                state = new RoomState();
+                state.roomId = roomId;
+                state.matchId = match;
+                state.seq = seq;
+                state.playerX = player;
+                state.playerO = other;
+                state.spec = new BoardSpec(detail, cell);
+                state.currentPlayer = 'X';
+                state.active = true;
+                state.cells = new byte[detail * detail];
+                Arrays.fill(state.cells, (byte) '-');
+                rooms.put(roomId, state);
+                break;
+            case MoveJournal.PLACED:
+                // Only onto the board the match arrived with, before any move of its own
+                if (state == null || state.matchId != match || seq != state.seq) return;
+                state.cells[cell] = detail;
+                state.currentPlayer = (char) other;
+                break;
+            case MoveJournal.MOVE:
+                if (state == null || state.matchId != match || seq <= state.seq) return;
+                state.cells[cell] = detail;
+                state.seq = seq;
+                state.currentPlayer = detail == 'X' ? 'O' : 'X';
+                break;
+            case MoveJournal.MATCH_ENDED:
+                if (state == null || state.matchId != match) return;
+                if (detail == MoveJournal.RESULT_INTERRUPTED) {
+                    // A player left mid-match and the room closed
+                    rooms.remove(roomId);
+                } else {
+                    state.active = false;
+                }
+                break;
+            case MoveJournal.ROOM_CLOSED:
+                if (state != null && state.matchId <= match) {
+                    rooms.remove(roomId);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+}
\ No newline at end of file
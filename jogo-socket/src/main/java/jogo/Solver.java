@@ -0,0 +1,505 @@
+package jogo;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Move search for BotPlayer: negamax with alpha-beta pruning over one
+ * transposition table shared by every room and every search thread.
+ *
+ * Positions are keyed by a Zobrist hash folded over the eight symmetries of
+ * the square board: eight hashes are kept up to date move by move, one per
+ * rotation or reflection, and the smallest is the key, so a position and
+ * its mirror images share an entry. Best moves are stored in that canonical
+ * orientation and turned back on the way out. Boards up to 4x4 are searched
+ * over every empty cell and, once the end is in reach, to the end of the
+ * game; those entries are marked solved and never give way to shallower
+ * ones. On the 3x3 board the first search solves the game, and from then
+ * on a bot's move is a single lookup.
+ *
+ * Bigger boards cannot be searched to the end. There the search deepens a
+ * ply at a time up to a depth limit and under a node budget, looks only at
+ * empty cells next to a symbol, and scores the leaves by the lines of
+ * winLength cells each player still has open.
+ *
+ * The table is two plain long arrays written without locks: an entry is
+ * stored as key ^ data next to data, so one torn by two threads writing at
+ * once fails the key check and is just a miss.
+ */
+final class Solver {
+    static final int DEFAULT_DEPTH = 4;
+    static final int DEFAULT_NODE_BUDGET = 200_000;
+    // 2^17 buckets of two entries, 4 MB in all
+    static final int DEFAULT_TABLE_BITS = 17;
+    // Boards up to this size are searched over every empty cell
+    private static final int FULL_WIDTH_SIZE = 4;
+    private static final int WIN = 1 << 30;
+    // Scores beyond this are forced wins or losses, a ply closer to zero for every ply away from the node
+    private static final int WIN_BOUND = WIN - BoardSpec.MAX_SIZE * BoardSpec.MAX_SIZE - 1;
+    private static final int EXACT = 0;
+    private static final int LOWER = 1;
+    private static final int UPPER = 2;
+    // Depth stored for a position searched to the end of the game
+    private static final int SOLVED = 0xFF;
+    private static final int NO_MOVE = 0x3FF;
+    // Never a stored entry: its flag bits hold a value no entry uses
+    private static final long MISSING = -1L;
+    // Leaf score of a line holding n symbols of one player and none of the other
+    private static final int[] WEIGHTS = new int[BoardSpec.MAX_SIZE + 2];
+    
+    static {
+        for (int n = 1; n < WEIGHTS.length; n++) {
+            WEIGHTS[n] = 1 << (3 * Math.min(n, 6) - 3);
+        }
+    }
+    
+    private final long[] keys;
+    private final long[] data;
+    private final int bucketMask;
+    private final int depthLimit;
+    private final int nodeBudget;
+    private final ConcurrentHashMap<BoardSpec, Geometry> geometries = new ConcurrentHashMap<>();
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    
+    public Solver() {
+        this(DEFAULT_TABLE_BITS, DEFAULT_DEPTH, DEFAULT_NODE_BUDGET);
+    }
+    
+    /**
+     * @param tableBits  the table holds 2^tableBits buckets of two entries
+     * @param depthLimit plies searched on boards that cannot be searched to the end
+     * @param nodeBudget positions one move may visit; the deepest search
+     *                   finished within it gives the move
+     */
+    public Solver(int tableBits, int depthLimit, int nodeBudget) {
+        this.keys = new long[2 << tableBits];
+        this.data = new long[2 << tableBits];
+        this.bucketMask = (1 << tableBits) - 1;
+        this.depthLimit = depthLimit;
+        this.nodeBudget = nodeBudget;
+    }
+    
+    /**
+     * Picks a move for the player whose turn it is. The board is given row
+     * by row as 'X', 'O' or '-'. Returns the cell index, or -1 if the board
+     * is full or already won.
+     */
+    public int bestMove(BoardSpec spec, byte[] cells, char symbol) {
+        Search search = new Search(geometries.computeIfAbsent(spec, Geometry::new), cells, symbol);
+        try {
+            return search.root();
+        } finally {
+            probes.add(search.probes);
+            hits.add(search.hits);
+        }
+    }
+    
+    long getProbes() {
+        return probes.sum();
+    }
+    
+    long getHits() {
+        return hits.sum();
+    }
+    
+    private static long pack(int score, int depth, int flag, int move) {
+        return (score & 0xFFFFFFFFL) | (long) depth << 32 | (long) flag << 40 | (long) move << 42;
+    }
+    
+    private static int score(long entry) {
+        return (int) entry;
+    }
+    
+    private static int depth(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+    
+    private static int flag(long entry) {
+        return (int) (entry >>> 40) & 0x3;
+    }
+    
+    private static int move(long entry) {
+        return (int) (entry >>> 42) & NO_MOVE;
+    }
+    
+    /**
+     * The entry for the key, or MISSING. The first slot of a bucket keeps
+     * the deepest search, the second always takes the latest. Each slot's
+     * data is read once, so the entry returned is the one that was checked.
+     */
+    private long probe(long key) {
+        int slot = ((int) key & bucketMask) << 1;
+        long entry = data[slot];
+        if ((keys[slot] ^ entry) == key) return entry;
+        entry = data[slot + 1];
+        if ((keys[slot + 1] ^ entry) == key) return entry;
+        return MISSING;
+    }
+    
+    private void store(long key, long entry) {
+        int slot = ((int) key & bucketMask) << 1;
+        long current = data[slot];
+        if ((keys[slot] ^ current) == key || depth(entry) >= depth(current)) {
+            data[slot] = entry;
+            keys[slot] = key ^ entry;
+        } else {
+            data[slot + 1] = entry;
+            keys[slot + 1] = key ^ entry;
+        }
+    }
+    
+    /**
+     * What a board spec looks like to the search, built once per spec: the
+     * Zobrist keys, the eight symmetries as cell maps, and every line of
+     * winLength cells with the lines through each cell.
+     */
+    private static final class Geometry {
+        final int size;
+        final int cellCount;
+        final int winLength;
+        final boolean fullWidth;
+        // zobrist[p][cell] for player p (0 for X, 1 for O)
+        final long[][] zobrist;
+        // symmetry[s][cell] is where symmetry s takes the cell; inverse undoes it
+        final int[][] symmetry;
+        final int[][] inverse;
+        // Cells of each line
+        final int[][] lineCells;
+        // Lines through each cell
+        final int[][] cellLines;
+        // Cells next to each cell, diagonals included
+        final int[][] neighbours;
+        
+        Geometry(BoardSpec spec) {
+            size = spec.getSize();
+            cellCount = size * size;
+            winLength = spec.getWinLength();
+            fullWidth = size <= FULL_WIDTH_SIZE;
+            
+            SplittableRandom random = new SplittableRandom(spec.hashCode());
+            zobrist = new long[2][cellCount];
+            for (long[] keys : zobrist) {
+                for (int i = 0; i < cellCount; i++) {
+                    keys[i] = random.nextLong();
+                }
+            }
+            
+            symmetry = new int[8][cellCount];
+            inverse = new int[8][cellCount];
+            int last = size - 1;
+            for (int r = 0; r < size; r++) {
+                for (int c = 0; c < size; c++) {
+                    int[] images = {
+                        r * size + c, c * size + last - r, (last - r) * size + last - c, (last - c) * size + r,
+                        r * size + last - c, (last - r) * size + c, c * size + r, (last - c) * size + last - r
+                    };
+                    for (int s = 0; s < 8; s++) {
+                        symmetry[s][r * size + c] = images[s];
+                        inverse[s][images[s]] = r * size + c;
+                    }
+                }
+            }
+            
+            List<int[]> lines = new ArrayList<>();
+            int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+            for (int[] direction : directions) {
+                for (int r = 0; r < size; r++) {
+                    for (int c = 0; c < size; c++) {
+                        int endRow = r + direction[0] * (winLength - 1);
+                        int endCol = c + direction[1] * (winLength - 1);
+                        if (endRow >= size || endCol < 0 || endCol >= size) continue;
+                        int[] line = new int[winLength];
+                        for (int i = 0; i < winLength; i++) {
+                            line[i] = (r + direction[0] * i) * size + c + direction[1] * i;
+                        }
+                        lines.add(line);
+                    }
+                }
+            }
+            lineCells = lines.toArray(new int[0][]);
+            int[] through = new int[cellCount];
+            for (int[] line : lineCells) {
+                for (int cell : line) through[cell]++;
+            }
+            cellLines = new int[cellCount][];
+            for (int cell = 0; cell < cellCount; cell++) {
+                cellLines[cell] = new int[through[cell]];
+                through[cell] = 0;
+            }
+            for (int l = 0; l < lineCells.length; l++) {
+                for (int cell : lineCells[l]) {
+                    cellLines[cell][through[cell]++] = l;
+                }
+            }
+            
+            neighbours = new int[cellCount][];
+            for (int r = 0; r < size; r++) {
+                for (int c = 0; c < size; c++) {
+                    int[] next = new int[8];
+                    int count = 0;
+                    for (int dr = -1; dr <= 1; dr++) {
+                        for (int dc = -1; dc <= 1; dc++) {
+                            int nr = r + dr;
+                            int nc = c + dc;
+                            if ((dr != 0 || dc != 0) && nr >= 0 && nr < size && nc >= 0 && nc < size) {
+                                next[count++] = nr * size + nc;
+                            }
+                        }
+                    }
+                    neighbours[r * size + c] = Arrays.copyOf(next, count);
+                }
+            }
+        }
+    }
+    
+    /**
+     * One move's search, on a private copy of the board. Players are 1 for X
+     * and 2 for O.
+     */
+    private final class Search {
+        private final Geometry geometry;
+        private final byte[] board;
+        // Symbols of each player in each line: X at 2 * line, O at 2 * line + 1
+        private final int[] counts;
+        // Symbols next to each cell, for the cells worth trying on a big board
+        private final int[] near;
+        private final long[] hashes = new long[8];
+        private final int[][] moves;
+        private final int[][] priorities;
+        private int empties;
+        private int toMove;
+        // Sum of the open lines' weights, positive for X
+        private int score;
+        private int ply;
+        private int nodes;
+        private boolean aborted;
+        private boolean won;
+        private int rootMove;
+        long probes;
+        long hits;
+        
+        Search(Geometry geometry, byte[] cells, char symbol) {
+            this.geometry = geometry;
+            this.board = new byte[geometry.cellCount];
+            this.counts = new int[2 * geometry.lineCells.length];
+            this.near = new int[geometry.cellCount];
+            int plies = (geometry.fullWidth ? geometry.cellCount : depthLimit) + 1;
+            this.moves = new int[plies][geometry.cellCount];
+            this.priorities = new int[plies][geometry.cellCount];
+            empties = geometry.cellCount;
+            for (int cell = 0; cell < cells.length; cell++) {
+                if (cells[cell] == 'X' || cells[cell] == 'O') {
+                    won |= place(cell, cells[cell] == 'X' ? 1 : 2);
+                }
+            }
+            toMove = symbol == 'X' ? 1 : 2;
+        }
+        
+        int root() {
+            if (empties == 0 || won) return -1;
+            int target = geometry.fullWidth ? empties : Math.min(depthLimit, empties);
+            
+            // A position seen before at this depth or deeper needs no search at all
+            int symmetryUsed = canonical();
+            probes++;
+            long entry = probe(hashes[symmetryUsed]);
+            if (entry != MISSING) {
+                if (flag(entry) == EXACT && depth(entry) >= target && move(entry) != NO_MOVE) {
+                    int cell = geometry.inverse[symmetryUsed][move(entry)];
+                    if (board[cell] == 0) {
+                        hits++;
+                        return cell;
+                    }
+                }
+            }
+            
+            int best = -1;
+            for (int depth = 1; depth <= target; depth++) {
+                rootMove = -1;
+                int value = negamax(depth, -WIN - 1, WIN + 1);
+                if (aborted) break;
+                best = rootMove;
+                // A forced result does not change with more depth; small boards still go
+                // to the end, so the root is stored as solved and never searched again
+                if (!geometry.fullWidth && (value > WIN_BOUND || value < -WIN_BOUND)) break;
+            }
+            if (best < 0) {
+                // Budget spent before even one ply: any sensible cell will do
+                best = generate(moves[0], priorities[0], -1) > 0 ? moves[0][0] : -1;
+            }
+            return best;
+        }
+        
+        private int negamax(int depth, int alpha, int beta) {
+            if (++nodes > nodeBudget) {
+                aborted = true;
+                return 0;
+            }
+            if (empties == 0) return 0;
+            
+            int symmetryUsed = canonical();
+            long key = hashes[symmetryUsed];
+            int hinted = -1;
+            probes++;
+            long entry = probe(key);
+            if (entry != MISSING) {
+                if (move(entry) != NO_MOVE) {
+                    hinted = geometry.inverse[symmetryUsed][move(entry)];
+                    if (board[hinted] != 0) hinted = -1;
+                }
+                if (depth(entry) >= depth && (ply > 0 || hinted >= 0)) {
+                    hits++;
+                    int value = score(entry);
+                    int flag = flag(entry);
+                    if (flag == EXACT) {
+                        if (ply == 0) rootMove = hinted;
+                        return value;
+                    }
+                    if (flag == LOWER) alpha = Math.max(alpha, value);
+                    if (flag == UPPER) beta = Math.min(beta, value);
+                    if (alpha >= beta) {
+                        if (ply == 0) rootMove = hinted;
+                        return value;
+                    }
+                }
+            }
+            if (depth == 0) {
+                return toMove == 1 ? score : -score;
+            }
+            
+            boolean solved = geometry.fullWidth && depth >= empties;
+            int[] list = moves[ply];
+            int count = generate(list, priorities[ply], hinted);
+            int originalAlpha = alpha;
+            int best = -WIN - 1;
+            int bestMove = -1;
+            for (int i = 0; i < count; i++) {
+                int cell = list[i];
+                int player = toMove;
+                int value;
+                if (place(cell, player)) {
+                    value = WIN;
+                } else {
+                    toMove = 3 - player;
+                    ply++;
+                    value = -negamax(depth - 1, -beta, -alpha);
+                    ply--;
+                    toMove = player;
+                }
+                remove(cell, player);
+                if (aborted) return 0;
+                
+                if (value > WIN_BOUND) {
+                    value--;
+                } else if (value < -WIN_BOUND) {
+                    value++;
+                }
+                if (value > best) {
+                    best = value;
+                    bestMove = cell;
+                }
+                if (best > alpha) alpha = best;
+                if (alpha >= beta) break;
+            }
+            
+            if (bestMove < 0) return 0;
+            int flag = best <= originalAlpha ? UPPER : best >= beta ? LOWER : EXACT;
+            store(key, pack(best, solved ? SOLVED : depth, flag, geometry.symmetry[symmetryUsed][bestMove]));
+            if (ply == 0) rootMove = bestMove;
+            return best;
+        }
+        
+        /**
+         * Fills the list with the cells to try, the hinted one first and the
+         * rest by how many open lines they extend or block. Returns how many
+         * there are.
+         */
+        private int generate(int[] list, int[] priority, int hinted) {
+            int count = 0;
+            if (hinted >= 0) {
+                list[count++] = hinted;
+            }
+            int first = count;
+            for (int cell = 0; cell < geometry.cellCount; cell++) {
+                if (board[cell] != 0 || cell == hinted) continue;
+                if (!geometry.fullWidth && near[cell] == 0 && empties < geometry.cellCount) continue;
+                // Insertion sort; the lists are short
+                int value = priority(cell);
+                int i = count++;
+                while (i > first && priority[i - 1] < value) {
+                    list[i] = list[i - 1];
+                    priority[i] = priority[i - 1];
+                    i--;
+                }
+                list[i] = cell;
+                priority[i] = value;
+            }
+            return count;
+        }
+        
+        private int priority(int cell) {
+            int value = 0;
+            for (int line : geometry.cellLines[cell]) {
+                int x = counts[2 * line];
+                int o = counts[2 * line + 1];
+                if (o == 0) value += WEIGHTS[x + 1];
+                if (x == 0) value += WEIGHTS[o + 1];
+            }
+            return value;
+        }
+        
+        // Index of the symmetry whose hash is the key of the current position
+        private int canonical() {
+            int best = 0;
+            for (int s = 1; s < 8; s++) {
+                if (hashes[s] < hashes[best]) best = s;
+            }
+            return best;
+        }
+        
+        // Puts the player on the cell and returns whether that completed a line
+        private boolean place(int cell, int player) {
+            board[cell] = (byte) player;
+            empties--;
+            for (int s = 0; s < 8; s++) {
+                hashes[s] ^= geometry.zobrist[player - 1][geometry.symmetry[s][cell]];
+            }
+            for (int next : geometry.neighbours[cell]) {
+                near[next]++;
+            }
+            boolean line = false;
+            for (int l : geometry.cellLines[cell]) {
+                score -= lineScore(l);
+                line |= ++counts[2 * l + player - 1] == geometry.winLength;
+                score += lineScore(l);
+            }
+            return line;
+        }
+        
+        private void remove(int cell, int player) {
+            board[cell] = 0;
+            empties++;
+            for (int s = 0; s < 8; s++) {
+                hashes[s] ^= geometry.zobrist[player - 1][geometry.symmetry[s][cell]];
+            }
+            for (int next : geometry.neighbours[cell]) {
+                near[next]--;
+            }
+            for (int l : geometry.cellLines[cell]) {
+                score -= lineScore(l);
+                counts[2 * l + player - 1]--;
+                score += lineScore(l);
+            }
+        }
+        
+        private int lineScore(int line) {
+            int x = counts[2 * line];
+            int o = counts[2 * line + 1];
+            if (o == 0) return WEIGHTS[x];
+            if (x == 0) return -WEIGHTS[o];
+            return 0;
+        }
+    }
+}
\ No newline at end of file
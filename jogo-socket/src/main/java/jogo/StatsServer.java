@@ -0,0 +1,100 @@
+package jogo;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves the server's counters as plain text on a port of the loopback
+ * interface. Whoever connects gets the current numbers and the connection
+ * is closed; a request starting with GET is answered as HTTP, so both nc
+ * and curl (or a Prometheus scraper) can read it. One thread serves the
+ * requests one after the other.
+ */
+final class StatsServer implements Runnable {
+    // How long to wait for an HTTP request before answering a bare connection
+    private static final int REQUEST_TIMEOUT_MILLIS = 200;
+    private static final int MAX_REQUEST_BYTES = 8192;
+    private static final byte[] GET = "GET ".getBytes(StandardCharsets.US_ASCII);
+    
+    private final Servidor server;
+    private final ServerSocket serverSocket;
+    
+    public StatsServer(Servidor server, int port) throws IOException {
+        this.server = server;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+    
+    public void start() {
+        Thread thread = new Thread(this, "stats");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    public void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar a porta de estatísticas: " + e.getMessage());
+        }
+    }
+    
+    @Override
+    public void run() {
+        while (!serverSocket.isClosed()) {
+            try (Socket client = serverSocket.accept()) {
+                serve(client);
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Erro na porta de estatísticas: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    private void serve(Socket client) throws IOException {
+        client.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+        boolean http = readRequest(client.getInputStream());
+        byte[] body = server.renderStats().getBytes(StandardCharsets.UTF_8);
+        OutputStream out = client.getOutputStream();
+        if (http) {
+            String header = "HTTP/1.0 200 OK\r\n"
+                    + "Content-Type: text/plain; version=0.0.4; charset=utf-8\r\n"
+                    + "Content-Length: " + body.length + "\r\n"
+                    + "Connection: close\r\n\r\n";
+            out.write(header.getBytes(StandardCharsets.US_ASCII));
+        }
+        out.write(body);
+        out.flush();
+    }
+    
+    /**
+     * Reads an HTTP request up to its blank line, so closing afterwards does
+     * not reset the connection under the reply. Returns false for a client
+     * that sent nothing, or anything other than a GET.
+     */
+    private static boolean readRequest(InputStream in) throws IOException {
+        byte[] request = new byte[MAX_REQUEST_BYTES];
+        int length = 0;
+        try {
+            while (length < request.length) {
+                int read = in.read(request, length, request.length - length);
+                if (read < 0) break;
+                length += read;
+                if (endsHeaders(request, length)) break;
+            }
+        } catch (SocketTimeoutException e) {
+            // A bare connection (nc) just wants the numbers
+        }
+        if (length < GET.length) return false;
+        for (int i = 0; i < GET.length; i++) {
+            if (request[i] != GET[i]) return false;
+        }
+        return true;
+    }
+    
+    private static boolean endsHeaders(byte[] request, int length) {
+        return length >= 4 && request[length - 4] == '\r' && request[length - 3] == '\n'
+                && request[length - 2] == '\r' && request[length - 1] == '\n';
+    }
+}
\ No newline at end of file
@@ -0,0 +1,456 @@
+package jogo;
+
+import java.nio.*;
+import java.nio.charset.*;
+
+/**
+ * The original newline-terminated protocol: COMMAND|arg|arg. Still the
+ * default for every connection, so old clients keep working.
+ *
+ * Nothing here goes through String on the hot path: commands are matched
+ * byte by byte, numbers are parsed and printed digit by digit straight off
+ * and onto the buffer, and only free text (chat and the like) is turned
+ * into a String. A move and the turn change it causes are decoded and
+ * encoded without allocating.
+ */
+final class TextProtocol implements WireProtocol {
+    static final TextProtocol INSTANCE = new TextProtocol();
+    
+    /**
+     * Line a client sends to switch its connection to binary frames; the
+     * server answers BINARIO|OK and switches right after it.
+     */
+    static final String BINARY_REQUEST = "BINARIO";
+    
+    private static final Charset CHARSET = Charset.defaultCharset();
+    
+    private static final byte SEPARATOR = '|';
+    private static final byte CELL_SEPARATOR = ',';
+    private static final byte NEWLINE = '\n';
+    
+    private static final byte[] JOGADA = ascii("JOGADA");
+    private static final byte[] CHAT = ascii("CHAT");
+    private static final byte[] TABULEIRO = ascii("TABULEIRO");
+    private static final byte[] RESYNC = ascii("RESYNC");
+    private static final byte[] ASSISTIR = ascii("ASSISTIR");
+    private static final byte[] PING = ascii("PING");
+    private static final byte[] PONG = ascii("PONG");
+    private static final byte[] RETOMAR = ascii("RETOMAR");
+    private static final byte[] BINARIO = ascii(BINARY_REQUEST);
+    
+    // values() copies the array on every call, so keep our own
+    private static final MessageType[] TYPES = MessageType.values();
+    private static final byte[][] TYPE_NAMES = new byte[TYPES.length][];
+    
+    static {
+        for (MessageType type : TYPES) {
+            TYPE_NAMES[type.ordinal()] = ascii(type.name());
+        }
+    }
+    
+    private TextProtocol() {
+    }
+    
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+    
+    // Encoding
+    
+    private static void putCommand(ByteBuffer out, byte[] command) {
+        out.put(command);
+        out.put(SEPARATOR);
+    }
+    
+    private static void putCommand(ByteBuffer out, MessageType type) {
+        putCommand(out, TYPE_NAMES[type.ordinal()]);
+    }
+    
+    /**
+     * Writes the decimal digits of value, as Integer.toString would, without
+     * building the string.
+     */
+    static void putInt(ByteBuffer out, int value) {
+        if (value < 0) {
+            out.put((byte) '-');
+            if (value == Integer.MIN_VALUE) {
+                // Its magnitude does not fit in an int; peel off the last digit first
+                putInt(out, -(value / 10));
+                out.put((byte) ('0' + -(value % 10)));
+                return;
+            }
+            value = -value;
+        }
+        int divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            out.put((byte) ('0' + value / divisor));
+            value %= divisor;
+            divisor /= 10;
+        }
+    }
+    
+    private static void putText(ByteBuffer out, String text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                // Rare: fall back to the charset for whatever is left
+                out.put(text.substring(i).getBytes(CHARSET));
+                return;
+            }
+            out.put((byte) c);
+        }
+    }
+    
+    @Override
+    public void writeInt(ByteBuffer out, MessageType type, int value) {
+        putCommand(out, type);
+        putInt(out, value);
+        out.put(NEWLINE);
+    }
+    
+    @Override
+    public void writeSymbol(ByteBuffer out, char symbol) {
+        putCommand(out, MessageType.SIMBOLO);
+        out.put((byte) symbol);
+        out.put(NEWLINE);
+    }
+    
+    @Override
+    public void writeMove(ByteBuffer out, int playerId, int row, int col, char symbol, int seq) {
+        putCommand(out, MessageType.MOVIMENTO);
+        putInt(out, playerId);
+        out.put(SEPARATOR);
+        putInt(out, row);
+        out.put(SEPARATOR);
+        putInt(out, col);
+        out.put(SEPARATOR);
+        out.put((byte) symbol);
+        out.put(SEPARATOR);
+        putInt(out, seq);
+        out.put(NEWLINE);
+    }
+    
+    @Override
+    public void writeSnapshot(ByteBuffer out, int seq, Board board) {
+        // Rows separated by '|' and cells by ',', written cell by cell
+        putCommand(out, MessageType.ESTADO);
+        putInt(out, seq);
+        int size = board.size();
+        for (int i = 0; i < size; i++) {
+            out.put(SEPARATOR);
+            for (int j = 0; j < size; j++) {
+                if (j > 0) out.put(CELL_SEPARATOR);
+                out.put((byte) board.cellAt(i, j));
+            }
+        }
+        out.put(NEWLINE);
+    }
+    
+    @Override
+    public void writeText(ByteBuffer out, MessageType type, String text) {
+        putCommand(out, type);
+        putText(out, text);
+        out.put(NEWLINE);
+    }
+    
+    @Override
+    public void writeJogada(ByteBuffer out, int row, int col) {
+        putCommand(out, JOGADA);
+        putInt(out, row);
+        out.put(SEPARATOR);
+        putInt(out, col);
+        out.put(NEWLINE);
+    }
+    
+    @Override
+    public void writeChat(ByteBuffer out, String text) {
+        putCommand(out, CHAT);
+        putText(out, text);
+        out.put(NEWLINE);
+    }
+    
+    @Override
+    public void writeBoardRequest(ByteBuffer out, int size, int winLength) {
+        putCommand(out, TABULEIRO);
+        putInt(out, size);
+        out.put(SEPARATOR);
+        putInt(out, winLength);
+        out.put(NEWLINE);
+    }
+    
+    @Override
+    public void writeResync(ByteBuffer out) {
+        out.put(RESYNC);
+        out.put(NEWLINE);
+    }
+    
+    @Override
+    public void writeWatch(ByteBuffer out, int roomId) {
+        // A bare ASSISTIR asks for any match in progress
+        if (roomId > 0) {
+            putCommand(out, ASSISTIR);
+            putInt(out, roomId);
+        } else {
+            out.put(ASSISTIR);
+        }
+        out.put(NEWLINE);
+    }
+    
+    @Override
+    public void writePing(ByteBuffer out, int token) {
+        putCommand(out, PING);
+        putInt(out, token);
+        out.put(NEWLINE);
+    }
+    
+    @Override
+    public void writePong(ByteBuffer out, int token) {
+        putCommand(out, PONG);
+        putInt(out, token);
+        out.put(NEWLINE);
+    }
+    
+    @Override
+    public void writeResume(ByteBuffer out, String token, int lastSeq) {
+        putCommand(out, RETOMAR);
+        putText(out, token);
+        out.put(SEPARATOR);
+        putInt(out, lastSeq);
+        out.put(NEWLINE);
+    }
+    
+    public void writeBinaryRequest(ByteBuffer out) {
+        out.put(BINARIO);
+        out.put(NEWLINE);
+    }
+    
+    // Tokenizing. A line is split lazily: each field runs from a start index
+    // up to the next '|' or the end of the line, found with fieldEnd.
+    
+    /**
+     * Returns the index of the '\n' ending the first line in the buffer, or
+     * -1 if the line has not fully arrived.
+     */
+    private static int lineEnd(ByteBuffer in) {
+        for (int i = in.position(); i < in.limit(); i++) {
+            if (in.get(i) == NEWLINE) return i;
+        }
+        return -1;
+    }
+    
+    private static int fieldEnd(ByteBuffer in, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (in.get(i) == SEPARATOR) return i;
+        }
+        return end;
+    }
+    
+    private static boolean fieldEquals(ByteBuffer in, int start, int end, byte[] expected) {
+        if (end - start != expected.length) return false;
+        for (int i = 0; i < expected.length; i++) {
+            if (in.get(start + i) != expected[i]) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Parses a decimal field the way Integer.parseInt would, throwing
+     * NumberFormatException for anything else.
+     */
+    static int parseInt(ByteBuffer in, int start, int end) {
+        if (start >= end) throw new NumberFormatException("campo vazio");
+        boolean negative = in.get(start) == '-';
+        int i = negative || in.get(start) == '+' ? start + 1 : start;
+        if (i == end) throw new NumberFormatException("sem dígitos");
+        // Accumulate negatively so Integer.MIN_VALUE parses too
+        long limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = in.get(i) - '0';
+            if (digit < 0 || digit > 9) throw new NumberFormatException("dígito inválido");
+            result = result * 10 - digit;
+            if (result < limit) throw new NumberFormatException("fora do intervalo");
+        }
+        return (int) (negative ? result : -result);
+    }
+    
+    private static String string(ByteBuffer in, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = in.get(start + i);
+        }
+        return new String(bytes, CHARSET);
+    }
+    
+    private static MessageType typeOf(ByteBuffer in, int start, int end) {
+        for (MessageType type : TYPES) {
+            if (fieldEquals(in, start, end, TYPE_NAMES[type.ordinal()])) {
+                return type;
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public boolean decodeEvent(ByteBuffer in, EventHandler handler) {
+        int newline = lineEnd(in);
+        if (newline < 0) return false;
+        
+        int start = in.position();
+        int end = newline > start && in.get(newline - 1) == '\r' ? newline - 1 : newline;
+        // Consume the line up front; the callbacks may switch protocols
+        in.position(newline + 1);
+        
+        int commandEnd = fieldEnd(in, start, end);
+        MessageType type = typeOf(in, start, commandEnd);
+        // A command with nothing after it is not a message we understand
+        if (type == null || commandEnd + 1 >= end) {
+            handler.onUnknown(string(in, start, end));
+            return true;
+        }
+        
+        int f1 = commandEnd + 1;
+        int e1 = fieldEnd(in, f1, end);
+        try {
+            switch (type) {
+                case ID_JOGADOR:
+                    handler.onPlayerId(parseInt(in, f1, e1));
+                    break;
+                case TURNO:
+                    handler.onTurn(parseInt(in, f1, e1));
+                    break;
+                case PING:
+                    handler.onPing(parseInt(in, f1, e1));
+                    break;
+                case PONG:
+                    handler.onPong(parseInt(in, f1, e1));
+                    break;
+                case SIMBOLO:
+                    handler.onSymbol((char) in.get(f1));
+                    break;
+                case ESTADO:
+                    // ESTADO|seq|row|row|... where each row is "c,c,c"
+                    int seq = parseInt(in, f1, e1);
+                    int rows = 0;
+                    for (int i = e1; i < end; i++) {
+                        if (in.get(i) == SEPARATOR) rows++;
+                    }
+                    char[][] cells = new char[rows][];
+                    int rowStart = e1 + 1;
+                    for (int r = 0; r < rows; r++) {
+                        int rowEnd = fieldEnd(in, rowStart, end);
+                        cells[r] = new char[(rowEnd - rowStart + 1) / 2];
+                        for (int c = 0; c < cells[r].length; c++) {
+                            cells[r][c] = (char) in.get(rowStart + 2 * c);
+                        }
+                        rowStart = rowEnd + 1;
+                    }
+                    handler.onSnapshot(seq, cells);
+                    break;
+                case MOVIMENTO:
+                    // MOVIMENTO|player|row|col|symbol[|seq]
+                    int f2 = e1 + 1;
+                    int e2 = fieldEnd(in, f2, end);
+                    int f3 = e2 + 1;
+                    int e3 = fieldEnd(in, f3, end);
+                    int f4 = e3 + 1;
+                    int e4 = fieldEnd(in, f4, end);
+                    if (f4 < e4) {
+                        int f5 = e4 + 1;
+                        int moveSeq = f5 < end ? parseInt(in, f5, fieldEnd(in, f5, end)) : -1;
+                        handler.onMove(parseInt(in, f1, e1), parseInt(in, f2, e2),
+                                parseInt(in, f3, e3), (char) in.get(f4), moveSeq);
+                    }
+                    break;
+                default:
+                    handler.onText(type, string(in, f1, e1));
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            handler.onUnknown(string(in, start, end));
+        }
+        return true;
+    }
+    
+    @Override
+    public boolean decodeCommand(ByteBuffer in, CommandHandler handler) {
+        int newline = lineEnd(in);
+        if (newline < 0) return false;
+        
+        int start = in.position();
+        int end = newline > start && in.get(newline - 1) == '\r' ? newline - 1 : newline;
+        // Consume the line up front; BINARIO switches protocols for what follows
+        in.position(newline + 1);
+        
+        int commandEnd = fieldEnd(in, start, end);
+        int f1 = commandEnd + 1;
+        int e1 = f1 < end ? fieldEnd(in, f1, end) : end;
+        int f2 = e1 + 1;
+        int e2 = f2 < end ? fieldEnd(in, f2, end) : end;
+        boolean twoFields = f2 < end;
+        
+        if (fieldEquals(in, start, commandEnd, JOGADA)) {
+            if (twoFields) {
+                try {
+                    handler.onMove(parseInt(in, f1, e1), parseInt(in, f2, e2));
+                } catch (NumberFormatException e) {
+                    handler.onInvalid("Formato de jogada inválido!");
+                }
+            }
+        } else if (fieldEquals(in, start, commandEnd, TABULEIRO)) {
+            if (twoFields) {
+                try {
+                    handler.onBoardRequest(parseInt(in, f1, e1), parseInt(in, f2, e2));
+                } catch (NumberFormatException e) {
+                    handler.onInvalid("Formato de tabuleiro inválido!");
+                }
+            }
+        } else if (fieldEquals(in, start, commandEnd, RESYNC)) {
+            handler.onResync();
+        } else if (fieldEquals(in, start, commandEnd, ASSISTIR)) {
+            try {
+                handler.onWatch(f1 < end ? parseInt(in, f1, e1) : 0);
+            } catch (NumberFormatException e) {
+                handler.onInvalid("Número de sala inválido!");
+            }
+        } else if (fieldEquals(in, start, commandEnd, PING)) {
+            try {
+                handler.onPing(f1 < end ? parseInt(in, f1, e1) : 0);
+            } catch (NumberFormatException e) {
+                handler.onPing(0);
+            }
+        } else if (fieldEquals(in, start, commandEnd, PONG)) {
+            try {
+                handler.onPong(f1 < end ? parseInt(in, f1, e1) : 0);
+            } catch (NumberFormatException e) {
+                handler.onPong(0);
+            }
+        } else if (fieldEquals(in, start, commandEnd, RETOMAR)) {
+            if (f1 < end) {
+                // RETOMAR|token[|seq]
+                int lastSeq;
+                try {
+                    lastSeq = f2 < end ? parseInt(in, f2, e2) : -1;
+                } catch (NumberFormatException e) {
+                    lastSeq = -1;
+                }
+                handler.onResume(string(in, f1, e1), lastSeq);
+            } else {
+                handler.onInvalid("Informe o token da sessão!");
+            }
+        } else if (fieldEquals(in, start, commandEnd, BINARIO)) {
+            handler.onBinaryRequest();
+        } else if (fieldEquals(in, start, commandEnd, CHAT)) {
+            if (f1 < end) {
+                handler.onChat(string(in, f1, e1));
+            }
+        } else {
+            handler.onUnknown(string(in, start, commandEnd));
+        }
+        return true;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,110 @@
+package jogo;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Hashed timing wheel for the server's many coarse deadlines: idle
+ * connections and turn clocks. One task on the shared scheduler ticks it;
+ * there is no thread and no scheduled task per connection or room.
+ *
+ * Deadlines are checked lazily. An entry does not tell the wheel when its
+ * deadline moves (a move, a read); it just updates its own fields, and when
+ * the wheel reaches the slot it was filed under it is asked what its
+ * deadline is now and filed again. Each entry therefore costs one check per
+ * period instead of one timer operation per event.
+ */
+final class TimerWheel {
+    /**
+     * Returned by Timed.expire to leave the wheel.
+     */
+    static final long DONE = Long.MIN_VALUE;
+    
+    /**
+     * Something with a deadline. Only the wheel's own thread calls expire.
+     */
+    interface Timed {
+        /**
+         * Called once the deadline this was filed under has passed, or
+         * earlier if it was just added or is further away than one turn of
+         * the wheel. Acts on whatever has expired and returns the next
+         * deadline, in System.nanoTime() terms, or DONE.
+         */
+        long expire(long now);
+    }
+    
+    private final long tickNanos;
+    private final long startNanos;
+    private final ArrayDeque<Timed>[] slots;
+    private final int mask;
+    // Entries added from other threads, filed by the next tick
+    private final ConcurrentLinkedQueue<Timed> added;
+    // Last tick processed; only touched by the ticking thread
+    private long currentTick;
+    
+    /**
+     * @param tickMillis how often tick() will be called, i.e. the precision
+     * @param slots      number of slots, rounded up to a power of two
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(long tickMillis, int slots) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.startNanos = System.nanoTime();
+        int size = Integer.highestOneBit(Math.max(slots - 1, 1)) << 1;
+        this.slots = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) {
+            this.slots[i] = new ArrayDeque<>();
+        }
+        this.mask = size - 1;
+        this.added = new ConcurrentLinkedQueue<>();
+    }
+    
+    /**
+     * Puts an entry on the wheel; it is first checked on the next tick.
+     * Safe from any thread. The entry must not already be on it.
+     */
+    public void add(Timed timed) {
+        added.offer(timed);
+    }
+    
+    /**
+     * Runs every entry whose slot has come up since the last call. Meant to
+     * be run at a fixed rate by a single thread; a late run catches up.
+     */
+    public void tick() {
+        long now = System.nanoTime();
+        Timed timed;
+        while ((timed = added.poll()) != null) {
+            expire(timed, now);
+        }
+        
+        long target = (now - startNanos) / tickNanos;
+        if (target - currentTick > slots.length) {
+            // After a long stall one pass over every slot reaches every entry
+            currentTick = target - slots.length;
+        }
+        while (currentTick < target) {
+            currentTick++;
+            ArrayDeque<Timed> slot = slots[(int) (currentTick & mask)];
+            // Entries filed back into this same slot wait for the next turn
+            for (int n = slot.size(); n > 0; n--) {
+                expire(slot.poll(), now);
+            }
+        }
+    }
+    
+    private void expire(Timed timed, long now) {
+        long deadline;
+        try {
+            deadline = timed.expire(now);
+        } catch (RuntimeException e) {
+            // One broken entry must not stop the wheel for everyone else
+            System.err.println("Erro ao processar prazo: " + e);
+            return;
+        }
+        if (deadline == DONE) return;
+        
+        long tick = Math.max((deadline - startNanos + tickNanos - 1) / tickNanos, currentTick + 1);
+        slots[(int) (tick & mask)].add(timed);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,83 @@
+package jogo;
+
+import java.nio.*;
+
+/**
+ * One way of putting messages on the wire. Connections start on the text
+ * protocol and may switch to binary frames; both directions (server to
+ * client and client to server) live here so Servidor and Cliente share them.
+ *
+ * Encoders append one complete message at the buffer's position. Decoders
+ * read at most one message from the buffer's position, leave the position
+ * untouched if the message is not complete yet and return whether they
+ * consumed one. Callers loop so that a protocol switch takes effect right
+ * at the message that asked for it.
+ */
+interface WireProtocol {
+    /**
+     * Largest message either side will buffer before giving up on a peer.
+     */
+    int MAX_MESSAGE_SIZE = 8192;
+    
+    // Server to client
+    
+    void writeInt(ByteBuffer out, MessageType type, int value);
+    
+    void writeSymbol(ByteBuffer out, char symbol);
+    
+    void writeMove(ByteBuffer out, int playerId, int row, int col, char symbol, int seq);
+    
+    void writeSnapshot(ByteBuffer out, int seq, Board board);
+    
+    void writeText(ByteBuffer out, MessageType type, String text);
+    
+    boolean decodeEvent(ByteBuffer in, EventHandler handler);
+    
+    // Client to server
+    
+    void writeJogada(ByteBuffer out, int row, int col);
+    
+    void writeChat(ByteBuffer out, String text);
+    
+    void writeBoardRequest(ByteBuffer out, int size, int winLength);
+    
+    void writeResync(ByteBuffer out);
+    
+    void writeWatch(ByteBuffer out, int roomId);
+    
+    void writePing(ByteBuffer out, int token);
+    
+    void writePong(ByteBuffer out, int token);
+    
+    void writeResume(ByteBuffer out, String token, int lastSeq);
+    
+    boolean decodeCommand(ByteBuffer in, CommandHandler handler);
+    
+    /**
+     * Makes sure a compacted read buffer has room for more bytes, doubling it
+     * up to the largest message we accept. Returns null if a single message
+     * would not fit even then.
+     */
+    static ByteBuffer ensureSpace(ByteBuffer buffer) {
+        if (buffer.hasRemaining()) return buffer;
+        if (buffer.capacity() >= MAX_MESSAGE_SIZE) return null;
+        ByteBuffer larger = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, MAX_MESSAGE_SIZE));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+    
+    /**
+     * Upper bound on the bytes a text message takes in either protocol.
+     */
+    static int textCapacity(String text) {
+        return 32 + text.length() * 4;
+    }
+    
+    /**
+     * Upper bound on the bytes a board snapshot takes in either protocol.
+     */
+    static int snapshotCapacity(Board board) {
+        return 32 + board.size() * board.size() * 2;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,65 @@
+package jogo;
+
+import java.util.*;
+
+/**
+ * Holds back socket writes for one unit of work on one thread: one read
+ * handled, one event loop turn, one scheduler task, one matchmaker round.
+ * While a batch is open, what ClientHandler sends is only queued; end()
+ * then flushes each connection that got something once, so a move that
+ * produces MOVIMENTO and TURNO for both players costs each of them one
+ * write call and usually one TCP segment instead of two.
+ *
+ * Batches nest; only the outermost end() flushes, so whatever is sent in a
+ * batch waits for its end. A thread may block inside one (the NIO loop
+ * selects inside its batch, since the ready keys are handled within
+ * select) as long as it has queued nothing it still owes a flush for.
+ */
+final class WriteBatch {
+    // No initial value: threads that never open a batch never get one
+    private static final ThreadLocal<WriteBatch> CURRENT = new ThreadLocal<>();
+    
+    private final ArrayList<ClientHandler> touched = new ArrayList<>();
+    private int depth;
+    
+    private WriteBatch() {
+    }
+    
+    /**
+     * Opens a batch on the calling thread, or joins the one already open.
+     * Every begin() must be paired with an end() in a finally block.
+     */
+    static WriteBatch begin() {
+        WriteBatch batch = CURRENT.get();
+        if (batch == null) {
+            batch = new WriteBatch();
+            CURRENT.set(batch);
+        }
+        batch.depth++;
+        return batch;
+    }
+    
+    /**
+     * The batch open on the calling thread, or null if writes go out right away.
+     */
+    static WriteBatch current() {
+        WriteBatch batch = CURRENT.get();
+        return batch != null && batch.depth > 0 ? batch : null;
+    }
+    
+    /**
+     * Registers a handler with queued output. The handler calls this at most
+     * once until it is flushed, whichever batch flushes it.
+     */
+    void add(ClientHandler client) {
+        touched.add(client);
+    }
+    
+    public void end() {
+        if (--depth > 0) return;
+        for (int i = 0; i < touched.size(); i++) {
+            touched.get(i).flush();
+        }
+        touched.clear();
+    }
+}
\ No newline at end of file
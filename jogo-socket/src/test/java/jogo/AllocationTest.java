@@ -0,0 +1,126 @@
+package jogo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.*;
+import java.nio.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * A move on the wire allocates nothing once the JVM is warm: decoding the
+ * JOGADA and encoding the MOVIMENTO and TURNO it produces, in both
+ * protocols. Measured with the JVM's count of bytes this thread allocated.
+ */
+class AllocationTest {
+    private static final int WARM_UP = 200_000;
+    private static final int MOVES = 100_000;
+    // Room for the odd allocation by the JVM itself, far below a byte per move
+    private static final long SLACK_BYTES = 4096;
+    
+    private static com.sun.management.ThreadMXBean threads;
+    
+    @BeforeAll
+    static void findCounter() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "no allocation counter");
+        threads = (com.sun.management.ThreadMXBean) bean;
+        Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported(), "no allocation counter");
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+    
+    @Test
+    void textMoveAllocatesNothing() {
+        assertMoveAllocatesNothing(TextProtocol.INSTANCE);
+    }
+    
+    @Test
+    void binaryMoveAllocatesNothing() {
+        assertMoveAllocatesNothing(BinaryProtocol.INSTANCE);
+    }
+    
+    private static void assertMoveAllocatesNothing(WireProtocol protocol) {
+        ByteBuffer in = ByteBuffer.allocate(64);
+        protocol.writeJogada(in, 12, 7);
+        in.flip();
+        ByteBuffer out = ByteBuffer.allocate(128);
+        Moves moves = new Moves();
+        play(protocol, in, out, moves, WARM_UP);
+        
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        play(protocol, in, out, moves, MOVES);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        
+        assertEquals((long) (WARM_UP + MOVES) * (12 + 7), moves.sum);
+        assertTrue(allocated < SLACK_BYTES, allocated + " bytes for " + MOVES + " moves");
+    }
+    
+    private static void play(WireProtocol protocol, ByteBuffer in, ByteBuffer out, Moves moves, int count) {
+        for (int i = 0; i < count; i++) {
+            in.rewind();
+            protocol.decodeCommand(in, moves);
+            out.clear();
+            protocol.writeMove(out, 1_000_001, 12, 7, 'X', i);
+            protocol.writeInt(out, MessageType.TURNO, 1_000_002);
+        }
+    }
+    
+    private static final class Moves implements CommandHandler {
+        long sum;
+        
+        @Override
+        public void onMove(int row, int col) {
+            sum += row + col;
+        }
+        
+        @Override
+        public void onChat(String text) {
+            fail(text);
+        }
+        
+        @Override
+        public void onBoardRequest(int size, int winLength) {
+            fail("TABULEIRO");
+        }
+        
+        @Override
+        public void onResync() {
+            fail("RESYNC");
+        }
+        
+        @Override
+        public void onWatch(int roomId) {
+            fail("ASSISTIR");
+        }
+        
+        @Override
+        public void onPing(int token) {
+            fail("PING");
+        }
+        
+        @Override
+        public void onPong(int token) {
+            fail("PONG");
+        }
+        
+        @Override
+        public void onResume(String token, int lastSeq) {
+            fail("RETOMAR");
+        }
+        
+        @Override
+        public void onBinaryRequest() {
+            fail("BINARIO");
+        }
+        
+        @Override
+        public void onInvalid(String reason) {
+            fail(reason);
+        }
+        
+        @Override
+        public void onUnknown(String command) {
+            fail(command);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,116 @@
+package jogo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.*;
+import java.nio.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Two nodes on one box, over a LoopbackBus.
+ */
+class ClusterTest {
+    private static final long WAIT_SECONDS = 5;
+    
+    private Cluster first;
+    private Cluster second;
+    private final Events firstEvents = new Events();
+    private final Events secondEvents = new Events();
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        int basePort;
+        try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            basePort = socket.getLocalPort();
+        }
+        first = new Cluster(0, 2, new LoopbackBus(basePort, 0, 2));
+        second = new Cluster(1, 2, new LoopbackBus(basePort, 1, 2));
+        first.start(firstEvents);
+        second.start(secondEvents);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        first.close();
+        second.close();
+    }
+    
+    @Test
+    void handsOffARoomAndHearsItAdopted() throws Exception {
+        // The first node only hands rooms to a node it has heard from
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(WAIT_SECONDS);
+        while (!first.isLive(1) && System.nanoTime() - deadline < 0) {
+            second.publishLobby(0, false);
+            Thread.sleep(10);
+        }
+        assertEquals(1, first.successorFor(8));
+        
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        try {
+            GameRoom room = new GameRoom(8, BoardSpec.CLASSIC, scheduler, new TimerWheel(100, 64), 0,
+                    new Metrics(), null);
+            SnapshotStore.RoomState sent = new SnapshotStore.RoomState();
+            sent.roomId = 8;
+            sent.matchId = 3;
+            sent.seq = 4;
+            sent.playerX = 101;
+            sent.playerO = 102;
+            sent.spec = BoardSpec.CLASSIC;
+            sent.currentPlayer = 'O';
+            sent.active = true;
+            sent.cells = "X---O---X".getBytes();
+            room.restore(sent);
+            ByteBuffer record = ByteBuffer.allocate(SnapshotStore.ROOM_HEADER_SIZE + 9);
+            assertTrue(room.snapshot(record));
+            record.flip();
+            
+            // Addressed to another node: the second one lets it pass
+            first.publishHandOff(0, record.duplicate());
+            first.publishHandOff(1, record);
+        } finally {
+            scheduler.shutdownNow();
+        }
+        
+        SnapshotStore.RoomState received = secondEvents.handOffs.poll(WAIT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(received);
+        assertEquals(8, received.roomId);
+        assertEquals(4, received.seq);
+        assertEquals(101, received.playerX);
+        assertEquals(102, received.playerO);
+        assertEquals('O', received.currentPlayer);
+        assertTrue(received.active);
+        assertEquals("X---O---X", new String(received.cells));
+        assertNull(secondEvents.handOffs.poll(100, TimeUnit.MILLISECONDS));
+        
+        second.publishAdopted(received.roomId, received.playerX, received.playerO);
+        assertEquals("1 8 101 102", firstEvents.adopted.poll(WAIT_SECONDS, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    void carriesLobbyChat() throws Exception {
+        first.publishChat(7, "olá, alguém aí?");
+        assertEquals("7: olá, alguém aí?", secondEvents.chat.poll(WAIT_SECONDS, TimeUnit.SECONDS));
+    }
+    
+    private static final class Events implements Cluster.Listener {
+        final BlockingQueue<String> chat = new LinkedBlockingQueue<>();
+        final BlockingQueue<SnapshotStore.RoomState> handOffs = new LinkedBlockingQueue<>();
+        final BlockingQueue<String> adopted = new LinkedBlockingQueue<>();
+        
+        @Override
+        public void onLobbyChat(int playerId, String text) {
+            chat.add(playerId + ": " + text);
+        }
+        
+        @Override
+        public void onHandOff(SnapshotStore.RoomState state) {
+            handOffs.add(state);
+        }
+        
+        @Override
+        public void onAdopted(int node, int roomId, int playerX, int playerO) {
+            adopted.add(node + " " + roomId + " " + playerX + " " + playerO);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+package jogo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.*;
+
+/**
+ * Two Servidor nodes and a Gateway on localhost, with players talking the
+ * text protocol through the gateway as the Cliente does.
+ */
+class GatewayTest {
+    @TempDir
+    Path secret;
+    
+    private final List<Servidor> nodes = new ArrayList<>();
+    private final List<TextPlayer> players = new ArrayList<>();
+    private Gateway gateway;
+    private int gatewayPort;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        int busPort;
+        try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            busPort = socket.getLocalPort();
+        }
+        InetSocketAddress[] addresses = new InetSocketAddress[2];
+        for (int node = 0; node < addresses.length; node++) {
+            int port = freePort();
+            Servidor server = new Servidor();
+            server.setPort(port);
+            server.shareSessionSecret(secret.toFile());
+            server.joinCluster(node, addresses.length, new LoopbackBus(busPort, node, addresses.length + 1));
+            addresses[node] = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+            nodes.add(server);
+            background(server::startServer);
+        }
+        gatewayPort = freePort();
+        gateway = new Gateway(gatewayPort, addresses, new LoopbackBus(busPort, addresses.length, addresses.length + 1));
+        background(() -> {
+            try {
+                gateway.start();
+            } catch (IOException e) {
+                System.err.println("Erro no gateway: " + e.getMessage());
+            }
+        });
+    }
+    
+    @AfterEach
+    void tearDown() {
+        for (TextPlayer player : players) {
+            player.close();
+        }
+        gateway.stop();
+        for (Servidor server : nodes) {
+            server.stopServer();
+        }
+    }
+    
+    @Test
+    void resumesThroughTheGatewayOnTheNodeThatHasTheSeat() throws Exception {
+        // The gateway sends the first two players to the same node, so they meet there
+        TextPlayer a = connect();
+        TextPlayer b = connect();
+        int node = Cluster.nodeOf(a.playerId, nodes.size());
+        assertEquals(node, Cluster.nodeOf(b.playerId, nodes.size()));
+        TextPlayer x = "X".equals(a.await("SIMBOLO|")) ? a : b;
+        TextPlayer o = x == a ? b : a;
+        int playerO = o.playerId;
+        x.send("JOGADA|1|1");
+        o.await("MOVIMENTO|");
+        
+        // Dropped and back: the new connection lands on the idle node, and RETOMAR moves it
+        a.close();
+        b.await("AGUARDANDO|O jogador " + a.playerId + " perdeu");
+        TextPlayer back = connect();
+        assertNotEquals(node, Cluster.nodeOf(back.playerId, nodes.size()));
+        back.send("RETOMAR|" + a.token + "|-1");
+        assertEquals(a.token, back.await("SESSAO|"));
+        assertTrue(back.await("ESTADO|").endsWith("|-,-,-|-,X,-|-,-,-"));
+        back.await("RESULTADO|Partida retomada!");
+        // The greeting of the node it moved to never reaches the client, only the ID it resumed
+        assertEquals(Arrays.asList("" + back.playerId, "" + a.playerId), back.all("ID_JOGADOR|"));
+        
+        // The node shuts down: its room goes to the other one, and both players follow it there
+        nodes.get(node).drain();
+        back.close();
+        b.close();
+        for (TextPlayer player : new TextPlayer[] {a, b}) {
+            TextPlayer resumed = connect();
+            resumed.send("RETOMAR|" + player.token + "|-1");
+            assertEquals(player.token, resumed.await("SESSAO|"));
+            assertTrue(resumed.await("ESTADO|").endsWith("|-,-,-|-,X,-|-,-,-"));
+            if (player == o) o = resumed;
+            else x = resumed;
+        }
+        x.await("RESULTADO|Partida retomada!");
+        o.send("JOGADA|0|0");
+        assertTrue(x.await("MOVIMENTO|").startsWith(playerO + "|0|0|O|"));
+    }
+    
+    private TextPlayer connect() throws IOException {
+        TextPlayer player = new TextPlayer(gatewayPort);
+        players.add(player);
+        return player;
+    }
+    
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+    
+    private static void background(Runnable task) {
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,112 @@
+package jogo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * A player who drops in the middle of a match and comes back with RETOMAR,
+ * against a server on localhost.
+ */
+class HeldSeatTest {
+    private static final long WINDOW_MILLIS = 2000;
+    
+    private final List<TextPlayer> players = new ArrayList<>();
+    private Servidor server;
+    private int port;
+    private TextPlayer x;
+    private TextPlayer o;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new Servidor();
+        server.setPort(port);
+        server.setReconnectWindow(WINDOW_MILLIS);
+        Thread thread = new Thread(server::startServer);
+        thread.setDaemon(true);
+        thread.start();
+        
+        // A seat is only held once the match has a move
+        TextPlayer first = connect();
+        TextPlayer second = connect();
+        x = "X".equals(first.await("SIMBOLO|")) ? first : second;
+        o = x == first ? second : first;
+        x.send("JOGADA|1|1");
+        x.await("MOVIMENTO|");
+        o.await("MOVIMENTO|");
+    }
+    
+    @AfterEach
+    void tearDown() {
+        for (TextPlayer player : players) {
+            player.close();
+        }
+        server.stopServer();
+    }
+    
+    @Test
+    void resumesTheHeldSeat() throws Exception {
+        o.close();
+        x.await("AGUARDANDO|O jogador " + o.playerId + " perdeu a conex");
+        TextPlayer back = resume(o);
+        assertEquals("" + o.playerId, back.await("ID_JOGADOR|"));
+        assertEquals("O", back.await("SIMBOLO|"));
+        assertTrue(back.await("ESTADO|").endsWith("|-,-,-|-,X,-|-,-,-"));
+        assertEquals("Partida retomada!", back.await("RESULTADO|"));
+        assertEquals("Partida retomada!", x.await("RESULTADO|"));
+        back.send("JOGADA|0|0");
+        assertTrue(x.await("MOVIMENTO|").startsWith(o.playerId + "|0|0|O|"));
+    }
+    
+    @Test
+    void givesUpTheSeatWhenTheWindowPasses() throws Exception {
+        o.close();
+        x.await("JOGADOR_SAIU|O jogador " + o.playerId + " n");
+        TextPlayer late = resume(o);
+        assertTrue(late.await("RESULTADO|").startsWith("Nenhuma partida para retomar"));
+    }
+    
+    @Test
+    void dropAfterResumingGetsAWholeWindow() throws Exception {
+        long firstDrop = System.nanoTime();
+        o.close();
+        x.await("AGUARDANDO|O jogador " + o.playerId + " perdeu a conex");
+        // Back once the timer wheel has filed the first hold under its deadline
+        sleepUntil(firstDrop + TimeUnit.MILLISECONDS.toNanos(WINDOW_MILLIS / 4));
+        TextPlayer back = resume(o);
+        assertEquals("Partida retomada!", back.await("RESULTADO|"));
+        
+        // Drops again halfway through the first window, then comes back after it ended
+        sleepUntil(firstDrop + TimeUnit.MILLISECONDS.toNanos(WINDOW_MILLIS / 2));
+        back.close();
+        x.await("AGUARDANDO|O jogador " + o.playerId + " perdeu a conex");
+        sleepUntil(firstDrop + TimeUnit.MILLISECONDS.toNanos(WINDOW_MILLIS + WINDOW_MILLIS / 5));
+        TextPlayer again = resume(o);
+        assertEquals("Partida retomada!", again.await("RESULTADO|"));
+        assertEquals(Collections.emptyList(), x.all("JOGADOR_SAIU|"));
+    }
+    
+    private TextPlayer connect() throws IOException {
+        TextPlayer player = new TextPlayer(port);
+        players.add(player);
+        return player;
+    }
+    
+    private TextPlayer resume(TextPlayer player) throws IOException {
+        TextPlayer back = connect();
+        back.send("RETOMAR|" + player.token + "|-1");
+        return back;
+    }
+    
+    private static void sleepUntil(long nanoTime) throws InterruptedException {
+        long left = nanoTime - System.nanoTime();
+        if (left > 0) TimeUnit.NANOSECONDS.sleep(left);
+    }
+}
\ No newline at end of file
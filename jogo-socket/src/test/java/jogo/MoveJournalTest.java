@@ -0,0 +1,86 @@
+package jogo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.*;
+
+class MoveJournalTest {
+    @TempDir
+    Path directory;
+    
+    @Test
+    void readsBackWhatWasAppended() throws Exception {
+        MoveJournal journal = new MoveJournal(directory);
+        int match = journal.matchStarted(7, 1, BoardSpec.CLASSIC, 101, 102);
+        journal.move(match, 7, 2, 101, 4, 'X');
+        journal.matchEnded(match, 7, 2, MoveJournal.RESULT_INTERRUPTED, 0);
+        journal.close();
+        
+        List<String> records = new ArrayList<>();
+        for (Path file : files()) {
+            MoveJournal.read(file, 0, (type, detail, cell, id, roomId, seq, player, other, time) ->
+                    records.add(type + " " + (char) detail + " " + cell + " " + id + " " + roomId
+                            + " " + seq + " " + player + " " + other));
+        }
+        assertEquals(Arrays.asList(
+                MoveJournal.MATCH_STARTED + " " + (char) 3 + " 3 1 7 1 101 102",
+                MoveJournal.MOVE + " X 4 1 7 2 101 0",
+                MoveJournal.MATCH_ENDED + " I 0 1 7 2 0 0"), records);
+    }
+    
+    @Test
+    void keepsEveryRecordWhileSegmentsRollOver() throws Exception {
+        // Tiny segments and a flush that never rests, so writers fill a
+        // segment while the flush is mapping the next one
+        MoveJournal journal = new MoveJournal(directory, 32 * MoveJournal.RECORD_SIZE);
+        int writers = 4;
+        int perWriter = 100_000;
+        // Both creating the same file shows up as an error on either side
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(errors, true));
+        AtomicBoolean done = new AtomicBoolean();
+        Thread flusher = new Thread(() -> {
+            while (!done.get()) journal.flush();
+        });
+        flusher.start();
+        Thread[] threads = new Thread[writers];
+        for (int t = 0; t < writers; t++) {
+            int roomId = t + 1;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < perWriter; i++) {
+                    journal.move(1, roomId, i, 1, 0, 'X');
+                }
+            });
+            threads[t].start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            done.set(true);
+            flusher.join();
+            journal.close();
+        } finally {
+            System.setErr(err);
+        }
+        assertEquals("", errors.toString());
+        
+        long[] counts = new long[writers + 1];
+        for (Path file : files()) {
+            MoveJournal.read(file, 0, (type, detail, cell, id, roomId, seq, player, other, time) -> counts[roomId]++);
+        }
+        for (int t = 1; t <= writers; t++) {
+            assertEquals(perWriter, counts[t]);
+        }
+    }
+    
+    private List<Path> files() throws Exception {
+        return MoveJournal.runs(directory).values().iterator().next();
+    }
+}
\ No newline at end of file
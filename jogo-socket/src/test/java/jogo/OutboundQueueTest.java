@@ -0,0 +1,100 @@
+package jogo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.*;
+import java.nio.charset.*;
+import org.junit.jupiter.api.*;
+
+class OutboundQueueTest {
+    @Test
+    void refusesWhatWouldPassTheLimit() {
+        OutboundQueue queue = new OutboundQueue(10);
+        assertTrue(queue.offer(bytes("123456")));
+        ByteBuffer message = bytes("abcde");
+        assertFalse(queue.offer(message));
+        assertEquals(5, message.remaining());
+        assertEquals(6, queue.size());
+    }
+    
+    @Test
+    void partialWritesResumeWhereTheyStopped() {
+        OutboundQueue queue = new OutboundQueue(4096);
+        queue.offer(bytes("TURNO|1\n"));
+        queue.offer(bytes("CHAT|oi\n"));
+        StringBuilder sent = new StringBuilder();
+        // A socket that takes three bytes per write
+        while (!queue.isEmpty()) {
+            ByteBuffer head = queue.peek();
+            int taken = Math.min(3, head.remaining());
+            for (int i = 0; i < taken; i++) {
+                sent.append((char) head.get());
+            }
+            queue.written(taken);
+        }
+        assertEquals("TURNO|1\nCHAT|oi\n", sent.toString());
+        assertEquals(0, queue.size());
+    }
+    
+    @Test
+    void gathersSeveralChunks() {
+        OutboundQueue queue = new OutboundQueue(8 * OutboundQueue.CHUNK_SIZE);
+        for (int i = 0; i < 3; i++) {
+            queue.offer(ByteBuffer.allocate(OutboundQueue.CHUNK_SIZE - 10));
+        }
+        ByteBuffer[] chunks = new ByteBuffer[8];
+        assertEquals(3, queue.gather(chunks));
+        // The first chunk and part of the second go out
+        chunks[0].position(chunks[0].limit());
+        chunks[1].position(100);
+        queue.written(OutboundQueue.CHUNK_SIZE - 10 + 100);
+        assertEquals(2 * (OutboundQueue.CHUNK_SIZE - 10) - 100, queue.size());
+        assertEquals(2, queue.gather(chunks));
+        assertEquals(100, chunks[0].position());
+    }
+    
+    @Test
+    void clearDropsWhatWasNotStarted() {
+        OutboundQueue queue = new OutboundQueue(4096);
+        queue.offer(bytes("TURNO|1\n"));
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+    }
+    
+    @Test
+    void clearKeepsAHalfSentChunkWhole() {
+        OutboundQueue queue = new OutboundQueue(8 * OutboundQueue.CHUNK_SIZE);
+        queue.offer(bytes("MOVIMENTO|1|0|0|X|2\n"));
+        ByteBuffer head = queue.peek();
+        head.position(4);
+        queue.written(4);
+        // Goes to a chunk of its own, which nobody has started on
+        queue.offer(ByteBuffer.allocate(OutboundQueue.CHUNK_SIZE));
+        queue.clear();
+        assertEquals("MOVIMENTO|1|0|0|X|2\n".length() - 4, queue.size());
+        StringBuilder sent = new StringBuilder();
+        head = queue.peek();
+        while (head.hasRemaining()) {
+            sent.append((char) head.get());
+        }
+        queue.written(sent.length());
+        assertEquals("MENTO|1|0|0|X|2\n", sent.toString());
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+    }
+    
+    @Test
+    void remainderIsTakenWhateverTheLimit() {
+        OutboundQueue queue = new OutboundQueue(4);
+        queue.offerRemainder(bytes("ESTADO|1|X,-,-\n"));
+        assertEquals(15, queue.size());
+        // Begun on the socket already, so clear must not drop it
+        queue.clear();
+        assertEquals(15, queue.size());
+    }
+    
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,60 @@
+package jogo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.*;
+import org.junit.jupiter.api.*;
+
+class SharedFrameTest {
+    private static final WireProtocol[] PROTOCOLS = {TextProtocol.INSTANCE, BinaryProtocol.INSTANCE};
+    
+    private final SharedFrame frame = new SharedFrame(64);
+    
+    @Test
+    void encodesEachEventLikeTheProtocol() {
+        Board board = new BoardSpec(15, 5).newBoard();
+        board.place(7, 7, 'X');
+        for (WireProtocol protocol : PROTOCOLS) {
+            ByteBuffer expected = ByteBuffer.allocate(WireProtocol.snapshotCapacity(board));
+            
+            frame.encodeInt(MessageType.TURNO, 8);
+            protocol.writeInt(expected, MessageType.TURNO, 8);
+            assertEncoded(expected, protocol);
+            
+            frame.encodeMove(7, 1, 2, 'O', 6);
+            protocol.writeMove(expected, 7, 1, 2, 'O', 6);
+            assertEncoded(expected, protocol);
+            
+            // Larger than the frame's own buffers
+            frame.encodeSnapshot(5, board);
+            protocol.writeSnapshot(expected, 5, board);
+            assertEncoded(expected, protocol);
+            
+            frame.encodeText(MessageType.CHAT, "[sala] 7: oi, tudo bem?");
+            protocol.writeText(expected, MessageType.CHAT, "[sala] 7: oi, tudo bem?");
+            assertEncoded(expected, protocol);
+        }
+    }
+    
+    @Test
+    void encodesEachProtocolOncePerEvent() {
+        frame.encodeInt(MessageType.TURNO, 8);
+        ByteBuffer text = frame.encodedFor(TextProtocol.INSTANCE);
+        assertSame(text, frame.encodedFor(TextProtocol.INSTANCE));
+        ByteBuffer binary = frame.encodedFor(BinaryProtocol.INSTANCE);
+        assertSame(binary, frame.encodedFor(BinaryProtocol.INSTANCE));
+        
+        // The next event is encoded afresh, into the same buffers
+        frame.encodeInt(MessageType.TURNO, 9);
+        ByteBuffer expected = ByteBuffer.allocate(32);
+        BinaryProtocol.INSTANCE.writeInt(expected, MessageType.TURNO, 9);
+        assertEncoded(expected, BinaryProtocol.INSTANCE);
+        assertSame(binary, frame.encodedFor(BinaryProtocol.INSTANCE));
+    }
+    
+    private void assertEncoded(ByteBuffer expected, WireProtocol protocol) {
+        expected.flip();
+        assertEquals(expected, frame.encodedFor(protocol));
+        expected.clear();
+    }
+}
\ No newline at end of file
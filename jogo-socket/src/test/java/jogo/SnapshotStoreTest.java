@@ -0,0 +1,101 @@
+package jogo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.*;
+
+class SnapshotStoreTest {
+    @TempDir
+    Path directory;
+    
+    private ScheduledThreadPoolExecutor scheduler;
+    private RoomRegistry rooms;
+    
+    @BeforeEach
+    void setUp() {
+        scheduler = new ScheduledThreadPoolExecutor(1);
+        rooms = new RoomRegistry(4, scheduler, new TimerWheel(100, 64), 0, new Metrics());
+    }
+    
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+    
+    @Test
+    void recoversFromSnapshotAndJournalTail() throws Exception {
+        MoveJournal journal = new MoveJournal(directory);
+        SnapshotStore snapshots = new SnapshotStore(directory, journal, rooms, new IdSequence());
+        
+        // Journaled before the snapshot but not in it: recovery must go by the snapshot
+        journal.matchStarted(4, 1, BoardSpec.CLASSIC, 107, 108);
+        // Room 1 has two moves when the snapshot is taken
+        int first = journal.matchStarted(1, 1, BoardSpec.CLASSIC, 101, 102);
+        journal.move(first, 1, 2, 101, 4, 'X');
+        journal.move(first, 1, 3, 102, 0, 'O');
+        rooms.restore(state(1, first, 3, 101, 102, 'X', "O---X----"));
+        assertEquals(1, snapshots.write());
+        
+        // After it: another move in room 1, a match in room 2, and one that ends in room 3
+        journal.move(first, 1, 4, 101, 8, 'X');
+        int second = journal.matchStarted(2, 1, BoardSpec.CLASSIC, 103, 104);
+        journal.move(second, 2, 2, 103, 2, 'X');
+        int third = journal.matchStarted(3, 1, BoardSpec.CLASSIC, 105, 106);
+        journal.matchEnded(third, 3, 1, MoveJournal.RESULT_INTERRUPTED, 0);
+        journal.close();
+        snapshots.close();
+        
+        SnapshotStore.Recovered recovered = SnapshotStore.recover(directory);
+        assertEquals(journal.getRun(), recovered.run);
+        assertEquals(third, recovered.lastMatch);
+        assertEquals(106, recovered.lastPlayerId);
+        assertEquals(2, recovered.rooms.size());
+        
+        SnapshotStore.RoomState room = recovered.rooms.get(1);
+        assertEquals(first, room.matchId);
+        assertEquals(4, room.seq);
+        assertEquals('O', room.currentPlayer);
+        assertEquals("O---X---X", new String(room.cells));
+        
+        room = recovered.rooms.get(2);
+        assertEquals(2, room.seq);
+        assertEquals(103, room.playerX);
+        assertEquals(104, room.playerO);
+        assertEquals("--X------", new String(room.cells));
+    }
+    
+    @Test
+    void recoversAdoptedMatchWithoutSnapshot() throws Exception {
+        MoveJournal journal = new MoveJournal(directory);
+        // Handed over at seq 5 with three pieces on the board and O to move
+        int match = journal.matchStarted(9, 5, BoardSpec.CLASSIC, 101, 102);
+        journal.placed(match, 9, 5, 0, 'X', 'O');
+        journal.placed(match, 9, 5, 4, 'O', 'O');
+        journal.placed(match, 9, 5, 8, 'X', 'O');
+        journal.move(match, 9, 6, 102, 2, 'O');
+        journal.close();
+        
+        SnapshotStore.RoomState room = SnapshotStore.recover(directory).rooms.get(9);
+        assertEquals(6, room.seq);
+        assertEquals('X', room.currentPlayer);
+        assertEquals("X-O-O---X", new String(room.cells));
+    }
+    
+    private static SnapshotStore.RoomState state(int roomId, int matchId, int seq, int playerX, int playerO,
+                                                 char currentPlayer, String cells) {
+        SnapshotStore.RoomState state = new SnapshotStore.RoomState();
+        state.roomId = roomId;
+        state.matchId = matchId;
+        state.seq = seq;
+        state.playerX = playerX;
+        state.playerO = playerO;
+        state.spec = BoardSpec.CLASSIC;
+        state.currentPlayer = currentPlayer;
+        state.active = true;
+        state.cells = cells.getBytes();
+        return state;
+    }
+}
\ No newline at end of file
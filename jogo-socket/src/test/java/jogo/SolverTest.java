@@ -0,0 +1,94 @@
+package jogo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.*;
+
+class SolverTest {
+    private static final int[][] LINES = {
+            {0, 1, 2}, {3, 4, 5}, {6, 7, 8}, {0, 3, 6}, {1, 4, 7}, {2, 5, 8}, {0, 4, 8}, {2, 4, 6}};
+    
+    private final Solver solver = new Solver();
+    
+    @Test
+    void neverLosesAsX() {
+        byte[] cells = emptyBoard();
+        int games = play(cells, 'X', 'X');
+        assertTrue(games > 0);
+    }
+    
+    @Test
+    void neverLosesAsO() {
+        byte[] cells = emptyBoard();
+        int games = play(cells, 'X', 'O');
+        assertTrue(games > 0);
+    }
+    
+    @Test
+    void drawsAgainstItself() {
+        byte[] cells = emptyBoard();
+        char turn = 'X';
+        for (int move = 0; move < 9; move++) {
+            int cell = solver.bestMove(BoardSpec.CLASSIC, cells, turn);
+            assertEquals('-', cells[cell]);
+            cells[cell] = (byte) turn;
+            assertFalse(wins(cells, turn));
+            turn = turn == 'X' ? 'O' : 'X';
+        }
+        assertEquals(-1, solver.bestMove(BoardSpec.CLASSIC, cells, turn));
+    }
+    
+    @Test
+    void takesAnImmediateWin() {
+        assertEquals(2, solver.bestMove(BoardSpec.CLASSIC, "XX-OO----".getBytes(), 'X'));
+        // Blocking X at 2 would not lose either, but only 5 wins
+        assertEquals(5, solver.bestMove(BoardSpec.CLASSIC, "XX-OO-X--".getBytes(), 'O'));
+    }
+    
+    /**
+     * Plays every game the opponent can make against the solver from this
+     * position and fails on any the opponent wins. Returns how many games
+     * were played to the end.
+     */
+    private int play(byte[] cells, char turn, char bot) {
+        char other = turn == 'X' ? 'O' : 'X';
+        if (turn == bot) {
+            int cell = solver.bestMove(BoardSpec.CLASSIC, cells, bot);
+            assertTrue(cell >= 0 && cells[cell] == '-', "illegal move " + cell + " on " + new String(cells));
+            cells[cell] = (byte) bot;
+            int games = wins(cells, bot) || full(cells) ? 1 : play(cells, other, bot);
+            cells[cell] = '-';
+            return games;
+        }
+        int games = 0;
+        for (int cell = 0; cell < cells.length; cell++) {
+            if (cells[cell] != '-') continue;
+            cells[cell] = (byte) turn;
+            assertFalse(wins(cells, turn), "lost on " + new String(cells));
+            games += full(cells) ? 1 : play(cells, other, bot);
+            cells[cell] = '-';
+        }
+        return games;
+    }
+    
+    private static byte[] emptyBoard() {
+        byte[] cells = new byte[9];
+        Arrays.fill(cells, (byte) '-');
+        return cells;
+    }
+    
+    private static boolean wins(byte[] cells, char symbol) {
+        for (int[] line : LINES) {
+            if (cells[line[0]] == symbol && cells[line[1]] == symbol && cells[line[2]] == symbol) return true;
+        }
+        return false;
+    }
+    
+    private static boolean full(byte[] cells) {
+        for (byte cell : cells) {
+            if (cell == '-') return false;
+        }
+        return true;
+    }
+}
\ No newline at end of file
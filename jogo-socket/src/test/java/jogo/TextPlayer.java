@@ -0,0 +1,90 @@
+package jogo;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A player on the text protocol for the tests that run a real server.
+ * Lines are kept as they arrive, and await takes the first one that
+ * matches, wherever it is among them.
+ */
+final class TextPlayer {
+    private static final int TIMEOUT_MILLIS = 5000;
+    
+    private final Socket socket;
+    private final BufferedReader in;
+    private final Writer out;
+    private final List<String> unread = new ArrayList<>();
+    private final List<String> seen = new ArrayList<>();
+    final int playerId;
+    final String token;
+    
+    TextPlayer(int port) throws IOException {
+        socket = connectWhenUp(port);
+        socket.setSoTimeout(TIMEOUT_MILLIS);
+        // The server writes text in the platform's charset, as the Cliente reads it
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), Charset.defaultCharset()));
+        out = new OutputStreamWriter(socket.getOutputStream(), Charset.defaultCharset());
+        playerId = Integer.parseInt(await("ID_JOGADOR|"));
+        token = await("SESSAO|");
+    }
+    
+    // The servers under test start on their own threads
+    private static Socket connectWhenUp(int port) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while (true) {
+            try {
+                return new Socket(InetAddress.getLoopbackAddress(), port);
+            } catch (ConnectException e) {
+                if (System.nanoTime() - deadline > 0) throw e;
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+    
+    void send(String line) throws IOException {
+        out.write(line + "\n");
+        out.flush();
+    }
+    
+    // Returns the rest of the first line starting with prefix
+    String await(String prefix) throws IOException {
+        while (true) {
+            for (Iterator<String> lines = unread.iterator(); lines.hasNext(); ) {
+                String line = lines.next();
+                if (line.startsWith(prefix)) {
+                    lines.remove();
+                    return line.substring(prefix.length());
+                }
+            }
+            String line = in.readLine();
+            if (line == null) throw new EOFException("no " + prefix + " after " + seen);
+            unread.add(line);
+            seen.add(line);
+        }
+    }
+    
+    // The rest of every line received so far starting with prefix
+    List<String> all(String prefix) {
+        List<String> matching = new ArrayList<>();
+        for (String line : seen) {
+            if (line.startsWith(prefix)) matching.add(line.substring(prefix.length()));
+        }
+        return matching;
+    }
+    
+    void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to do with it
+        }
+    }
+}
\ No newline at end of file
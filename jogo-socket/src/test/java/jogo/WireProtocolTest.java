@@ -0,0 +1,254 @@
+package jogo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+
+class WireProtocolTest {
+    private static final List<String> EVENTS = Arrays.asList(
+            "ID_JOGADOR 7", "SIMBOLO O", "ESTADO 5 X--|-O-|---", "MOVIMENTO 7 1 2 O 6", "TURNO 8",
+            "PING 41", "PONG 42", "JOGO_INICIADO Jogo iniciado na sala 3", "CHAT [sala] 7: oi, tudo bem?",
+            "SESSAO 7-0123456789abcdef");
+    
+    private static final List<String> COMMANDS = Arrays.asList(
+            "JOGADA 1 2", "CHAT oi, tudo bem?", "TABULEIRO 5 4", "RESYNC", "ASSISTIR 42", "PING 41", "PONG 42",
+            "RETOMAR 7-0123456789abcdef 17");
+    
+    @Test
+    void textEventsRoundTrip() {
+        assertEquals(EVENTS, decodeEvents(TextProtocol.INSTANCE, encodeEvents(TextProtocol.INSTANCE)));
+    }
+    
+    @Test
+    void binaryEventsRoundTrip() {
+        assertEquals(EVENTS, decodeEvents(BinaryProtocol.INSTANCE, encodeEvents(BinaryProtocol.INSTANCE)));
+    }
+    
+    @Test
+    void textCommandsRoundTrip() {
+        assertEquals(COMMANDS, decodeCommands(TextProtocol.INSTANCE, encodeCommands(TextProtocol.INSTANCE)));
+    }
+    
+    @Test
+    void binaryCommandsRoundTrip() {
+        assertEquals(COMMANDS, decodeCommands(BinaryProtocol.INSTANCE, encodeCommands(BinaryProtocol.INSTANCE)));
+    }
+    
+    @Test
+    void binaryTextIsUtf8() {
+        ByteBuffer out = ByteBuffer.allocate(64);
+        BinaryProtocol.INSTANCE.writeText(out, MessageType.RESULTADO, "Vitória do jogador X!");
+        out.flip();
+        assertEquals(Collections.singletonList("RESULTADO Vitória do jogador X!"),
+                decodeEvents(BinaryProtocol.INSTANCE, out));
+    }
+    
+    @Test
+    void binaryShortFramesAreRejectedWhole() {
+        ByteBuffer out = ByteBuffer.allocate(64);
+        // TURNO with two bytes of its int, then ESTADO of a 3x3 board with four cells
+        out.put(new byte[] {0, 3, MessageType.TURNO.opcode, 0, 7});
+        out.put(new byte[] {0, 10, MessageType.ESTADO.opcode, 0, 0, 0, 1, 3, 'X', '-', '-', 'O'});
+        BinaryProtocol.INSTANCE.writeInt(out, MessageType.TURNO, 8);
+        out.flip();
+        assertEquals(Arrays.asList("unknown quadro TURNO curto demais", "unknown quadro ESTADO curto demais",
+                "TURNO 8"), decodeEvents(BinaryProtocol.INSTANCE, out));
+        
+        out.clear();
+        out.put(new byte[] {0, 2, BinaryProtocol.OP_JOGADA, 1});
+        out.put(new byte[] {0, 3, BinaryProtocol.OP_ASSISTIR, 0, 0});
+        BinaryProtocol.INSTANCE.writeJogada(out, 2, 0);
+        out.flip();
+        assertEquals(Arrays.asList("invalid Formato de jogada inválido!", "invalid Número de sala inválido!",
+                "JOGADA 2 0"), decodeCommands(BinaryProtocol.INSTANCE, out));
+    }
+    
+    @Test
+    void textAcceptsLinesTypedByHand() {
+        ByteBuffer in = ByteBuffer.wrap("JOGADA|0|2\r\nJOGADA|x|2\nSAIR\n".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(Arrays.asList("JOGADA 0 2", "invalid Formato de jogada inválido!", "unknown SAIR"),
+                decodeCommands(TextProtocol.INSTANCE, in));
+    }
+    
+    private static ByteBuffer encodeEvents(WireProtocol protocol) {
+        Board board = BoardSpec.CLASSIC.newBoard();
+        board.place(0, 0, 'X');
+        board.place(1, 1, 'O');
+        ByteBuffer out = ByteBuffer.allocate(1024);
+        protocol.writeInt(out, MessageType.ID_JOGADOR, 7);
+        protocol.writeSymbol(out, 'O');
+        protocol.writeSnapshot(out, 5, board);
+        protocol.writeMove(out, 7, 1, 2, 'O', 6);
+        protocol.writeInt(out, MessageType.TURNO, 8);
+        protocol.writeInt(out, MessageType.PING, 41);
+        protocol.writeInt(out, MessageType.PONG, 42);
+        protocol.writeText(out, MessageType.JOGO_INICIADO, "Jogo iniciado na sala 3");
+        protocol.writeText(out, MessageType.CHAT, "[sala] 7: oi, tudo bem?");
+        protocol.writeText(out, MessageType.SESSAO, "7-0123456789abcdef");
+        out.flip();
+        return out;
+    }
+    
+    private static ByteBuffer encodeCommands(WireProtocol protocol) {
+        ByteBuffer out = ByteBuffer.allocate(1024);
+        protocol.writeJogada(out, 1, 2);
+        protocol.writeChat(out, "oi, tudo bem?");
+        protocol.writeBoardRequest(out, 5, 4);
+        protocol.writeResync(out);
+        protocol.writeWatch(out, 42);
+        protocol.writePing(out, 41);
+        protocol.writePong(out, 42);
+        protocol.writeResume(out, "7-0123456789abcdef", 17);
+        out.flip();
+        return out;
+    }
+    
+    /**
+     * Decodes what arrives one byte at a time, as a slow socket would hand
+     * it over, so every message is first seen incomplete.
+     */
+    private static List<String> decodeEvents(WireProtocol protocol, ByteBuffer wire) {
+        Events events = new Events();
+        ByteBuffer in = ByteBuffer.allocate(wire.remaining());
+        while (wire.hasRemaining()) {
+            in.put(wire.get());
+            in.flip();
+            while (protocol.decodeEvent(in, events)) {
+                // One message per call
+            }
+            in.compact();
+        }
+        assertEquals(0, in.position(), "bytes left over");
+        return events.decoded;
+    }
+    
+    private static List<String> decodeCommands(WireProtocol protocol, ByteBuffer wire) {
+        Commands commands = new Commands();
+        ByteBuffer in = ByteBuffer.allocate(wire.remaining());
+        while (wire.hasRemaining()) {
+            in.put(wire.get());
+            in.flip();
+            while (protocol.decodeCommand(in, commands)) {
+                // One message per call
+            }
+            in.compact();
+        }
+        assertEquals(0, in.position(), "bytes left over");
+        return commands.decoded;
+    }
+    
+    private static final class Events implements EventHandler {
+        final List<String> decoded = new ArrayList<>();
+        
+        @Override
+        public void onPlayerId(int playerId) {
+            decoded.add("ID_JOGADOR " + playerId);
+        }
+        
+        @Override
+        public void onSymbol(char symbol) {
+            decoded.add("SIMBOLO " + symbol);
+        }
+        
+        @Override
+        public void onSnapshot(int seq, char[][] cells) {
+            StringJoiner rows = new StringJoiner("|");
+            for (char[] row : cells) {
+                rows.add(new String(row));
+            }
+            decoded.add("ESTADO " + seq + " " + rows);
+        }
+        
+        @Override
+        public void onMove(int playerId, int row, int col, char symbol, int seq) {
+            decoded.add("MOVIMENTO " + playerId + " " + row + " " + col + " " + symbol + " " + seq);
+        }
+        
+        @Override
+        public void onTurn(int playerId) {
+            decoded.add("TURNO " + playerId);
+        }
+        
+        @Override
+        public void onPing(int token) {
+            decoded.add("PING " + token);
+        }
+        
+        @Override
+        public void onPong(int token) {
+            decoded.add("PONG " + token);
+        }
+        
+        @Override
+        public void onText(MessageType type, String text) {
+            decoded.add(type + " " + text);
+        }
+        
+        @Override
+        public void onUnknown(String message) {
+            decoded.add("unknown " + message);
+        }
+    }
+    
+    private static final class Commands implements CommandHandler {
+        final List<String> decoded = new ArrayList<>();
+        
+        @Override
+        public void onMove(int row, int col) {
+            decoded.add("JOGADA " + row + " " + col);
+        }
+        
+        @Override
+        public void onChat(String text) {
+            decoded.add("CHAT " + text);
+        }
+        
+        @Override
+        public void onBoardRequest(int size, int winLength) {
+            decoded.add("TABULEIRO " + size + " " + winLength);
+        }
+        
+        @Override
+        public void onResync() {
+            decoded.add("RESYNC");
+        }
+        
+        @Override
+        public void onWatch(int roomId) {
+            decoded.add("ASSISTIR " + roomId);
+        }
+        
+        @Override
+        public void onPing(int token) {
+            decoded.add("PING " + token);
+        }
+        
+        @Override
+        public void onPong(int token) {
+            decoded.add("PONG " + token);
+        }
+        
+        @Override
+        public void onResume(String token, int lastSeq) {
+            decoded.add("RETOMAR " + token + " " + lastSeq);
+        }
+        
+        @Override
+        public void onBinaryRequest() {
+            decoded.add("BINARIO");
+        }
+        
+        @Override
+        public void onInvalid(String reason) {
+            decoded.add("invalid " + reason);
+        }
+        
+        @Override
+        public void onUnknown(String command) {
+            decoded.add("unknown " + command);
+        }
+    }
+}
\ No newline at end of file